@@ -23,9 +23,9 @@ import io.getlime.security.powerauth.crypto.lib.model.ActivationStatusBlobInfo;
 import io.getlime.security.powerauth.crypto.lib.model.ActivationVersion;
 import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
 import io.getlime.security.powerauth.crypto.lib.util.AESEncryptionUtils;
+import io.getlime.security.powerauth.crypto.lib.util.ECDSASignatureVerifier;
 import io.getlime.security.powerauth.crypto.lib.util.ECPublicKeyFingerprint;
 import io.getlime.security.powerauth.crypto.lib.util.HMACHashUtilities;
-import io.getlime.security.powerauth.crypto.lib.util.SignatureUtils;
 import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
 
 import javax.crypto.SecretKey;
@@ -48,7 +48,11 @@ import java.util.Arrays;
  */
 public class PowerAuthClientActivation {
 
-    private final SignatureUtils signatureUtils = new SignatureUtils();
+    /**
+     * Verifier of the last used Master Public Key, kept so that repeated verifications with the same key
+     * reuse the initialized signature engines.
+     */
+    private volatile ECDSASignatureVerifier masterPublicKeyVerifier;
 
     /**
      * Verify the signature of activation code using Master Public Key.
@@ -62,8 +66,23 @@ public class PowerAuthClientActivation {
      * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
      */
     public boolean verifyActivationCodeSignature(String activationCode, byte[] signature, PublicKey masterPublicKey) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
+        return verifyActivationCodeSignature(activationCode, signature, getMasterPublicKeyVerifier(masterPublicKey));
+    }
+
+    /**
+     * Verify the signature of activation code using a verifier of Master Public Key. Use the verifier when
+     * signatures of many activation codes are verified with the same Master Public Key.
+     *
+     * @param activationCode Activation code.
+     * @param signature Activation data signature.
+     * @param masterPublicKeyVerifier Signature verifier of Master Public Key.
+     * @return Returns "true" if the signature matches activation data, "false" otherwise.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public boolean verifyActivationCodeSignature(String activationCode, byte[] signature, ECDSASignatureVerifier masterPublicKeyVerifier) throws GenericCryptoException, CryptoProviderException {
         byte[] bytes = activationCode.getBytes(StandardCharsets.UTF_8);
-        return signatureUtils.validateECDSASignature(bytes, signature, masterPublicKey);
+        return masterPublicKeyVerifier.verify(bytes, signature);
     }
 
     /**
@@ -159,11 +178,44 @@ public class PowerAuthClientActivation {
      * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
      */
     public boolean verifyServerDataSignature(String activationId, byte[] C_serverPublicKey, byte[] signature, PublicKey masterPublicKey) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
+        return verifyServerDataSignature(activationId, C_serverPublicKey, signature, getMasterPublicKeyVerifier(masterPublicKey));
+    }
+
+    /**
+     * Verify signature of the encrypted activation ID and server public key
+     * using a verifier of Master Public Key.
+     *
+     * @param activationId Activation ID
+     * @param C_serverPublicKey Encrypted server public key.
+     * @param signature Encrypted server public key signature.
+     * @param masterPublicKeyVerifier Signature verifier of Master Public Key.
+     * @return Returns "true" if signature matches encrypted data, "false" otherwise.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public boolean verifyServerDataSignature(String activationId, byte[] C_serverPublicKey, byte[] signature, ECDSASignatureVerifier masterPublicKeyVerifier) throws GenericCryptoException, CryptoProviderException {
         byte[] activationIdBytes = activationId.getBytes(StandardCharsets.UTF_8);
         String activationIdBytesBase64 = BaseEncoding.base64().encode(activationIdBytes);
         String C_serverPublicKeyBase64 = BaseEncoding.base64().encode(C_serverPublicKey);
         byte[] result = (activationIdBytesBase64 + "&" + C_serverPublicKeyBase64).getBytes(StandardCharsets.UTF_8);
-        return signatureUtils.validateECDSASignature(result, signature, masterPublicKey);
+        return masterPublicKeyVerifier.verify(result, signature);
+    }
+
+    /**
+     * Get a verifier of Master Public Key, the verifier of the last used key is reused.
+     *
+     * @param masterPublicKey Master Public Key.
+     * @return Signature verifier of Master Public Key.
+     * @throws InvalidKeyException If provided master public key is invalid.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    private ECDSASignatureVerifier getMasterPublicKeyVerifier(PublicKey masterPublicKey) throws InvalidKeyException, CryptoProviderException {
+        ECDSASignatureVerifier verifier = masterPublicKeyVerifier;
+        if (verifier == null || !verifier.getPublicKey().equals(masterPublicKey)) {
+            verifier = new ECDSASignatureVerifier(masterPublicKey);
+            masterPublicKeyVerifier = verifier;
+        }
+        return verifier;
     }
 
     /**
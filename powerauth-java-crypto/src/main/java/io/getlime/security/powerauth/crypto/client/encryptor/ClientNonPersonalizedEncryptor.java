@@ -44,7 +44,7 @@ public class ClientNonPersonalizedEncryptor {
 
         final KeyGenerator generator = new KeyGenerator();
         byte[] sessionIndex = generator.generateRandomBytes(16);
-        KeyPair ephemeralKeyPair = generator.generateKeyPair();
+        KeyPair ephemeralKeyPair = generator.generateEphemeralKeyPair();
         final SecretKey ephemeralSecretKey = generator.computeSharedKey(ephemeralKeyPair.getPrivate(), masterPublicKey);
         final SecretKey sessionRelatedSecretKey = generator.deriveSecretKeyHmac(ephemeralSecretKey, sessionIndex);
 
@@ -18,6 +18,7 @@ package io.getlime.security.powerauth.crypto.client.keyfactory;
 
 import io.getlime.security.powerauth.crypto.lib.enums.PowerAuthDerivedKey;
 import io.getlime.security.powerauth.crypto.lib.enums.PowerAuthSignatureTypes;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyDerivationEngine;
 import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
 import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
 import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
@@ -100,42 +101,45 @@ public class PowerAuthClientKeyFactory {
 
         List<SecretKey> signatureKeys = new ArrayList<>();
 
+        // Expand the master secret key only once for all signature keys
+        KeyDerivationEngine keyDerivation = new KeyDerivationEngine(masterSecretKey);
+
         if (signatureType.equals(PowerAuthSignatureTypes.POSSESSION)) {
 
-            SecretKey signatureKey = generateClientSignaturePossessionKey(masterSecretKey);
+            SecretKey signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_POSSESSION.getIndex());
             signatureKeys.add(signatureKey);
 
         } else if (signatureType.equals(PowerAuthSignatureTypes.KNOWLEDGE)) {
 
-            SecretKey signatureKey = generateClientSignatureKnowledgeKey(masterSecretKey);
+            SecretKey signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_KNOWLEDGE.getIndex());
             signatureKeys.add(signatureKey);
 
         } else if (signatureType.equals(PowerAuthSignatureTypes.BIOMETRY)) {
 
-            SecretKey signatureKey = generateClientSignatureBiometryKey(masterSecretKey);
+            SecretKey signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_BIOMETRY.getIndex());
             signatureKeys.add(signatureKey);
 
         } else if (signatureType.equals(PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE)) {
 
-            SecretKey signatureKey = generateClientSignaturePossessionKey(masterSecretKey);
+            SecretKey signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_POSSESSION.getIndex());
             signatureKeys.add(signatureKey);
-            signatureKey = generateClientSignatureKnowledgeKey(masterSecretKey);
+            signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_KNOWLEDGE.getIndex());
             signatureKeys.add(signatureKey);
 
         } else if (signatureType.equals(PowerAuthSignatureTypes.POSSESSION_BIOMETRY)) {
 
-            SecretKey signatureKey = generateClientSignaturePossessionKey(masterSecretKey);
+            SecretKey signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_POSSESSION.getIndex());
             signatureKeys.add(signatureKey);
-            signatureKey = generateClientSignatureBiometryKey(masterSecretKey);
+            signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_BIOMETRY.getIndex());
             signatureKeys.add(signatureKey);
 
         } else if (signatureType.equals(PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE_BIOMETRY)) {
 
-            SecretKey signatureKey = generateClientSignaturePossessionKey(masterSecretKey);
+            SecretKey signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_POSSESSION.getIndex());
             signatureKeys.add(signatureKey);
-            signatureKey = generateClientSignatureKnowledgeKey(masterSecretKey);
+            signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_KNOWLEDGE.getIndex());
             signatureKeys.add(signatureKey);
-            signatureKey = generateClientSignatureBiometryKey(masterSecretKey);
+            signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_BIOMETRY.getIndex());
             signatureKeys.add(signatureKey);
 
         }
@@ -16,6 +16,7 @@
  */
 package io.getlime.security.powerauth.crypto.lib.config;
 
+import io.getlime.security.powerauth.crypto.lib.generator.KeyPairPool;
 import io.getlime.security.powerauth.provider.CryptoProviderUtil;
 
 /**
@@ -55,6 +56,27 @@ public enum PowerAuthConfiguration {
         return keyConvertor;
     }
 
+    /**
+     * Optional pool of pre-generated ephemeral key pairs.
+     */
+    private volatile KeyPairPool keyPairPool;
+
+    /**
+     * Set pool of pre-generated ephemeral key pairs, null disables the pool.
+     * @param keyPairPool Key pair pool instance
+     */
+    public void setKeyPairPool(KeyPairPool keyPairPool) {
+        this.keyPairPool = keyPairPool;
+    }
+
+    /**
+     * Get pool of pre-generated ephemeral key pairs.
+     * @return Key pair pool instance, or null in case the pool is not used
+     */
+    public KeyPairPool getKeyPairPool() {
+        return keyPairPool;
+    }
+
     /**
      * How many iterations should be used for PBKDF2 key derivation.
      */
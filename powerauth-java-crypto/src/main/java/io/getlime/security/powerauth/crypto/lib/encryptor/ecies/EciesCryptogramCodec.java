@@ -0,0 +1,256 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.lib.encryptor.ecies;
+
+import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.exception.EciesException;
+import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.model.EciesCryptogram;
+import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.model.EciesCryptogramView;
+
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Compact binary encoding of ECIES cryptograms for service-to-service communication where both sides use this
+ * library. The encoding avoids the size and parsing overhead of Base64 encoded JSON fields and it can be decoded
+ * without copying the encrypted data.
+ *
+ * <p>Encoding (all numbers are unsigned big-endian):
+ * <ul>
+ *     <li>1 byte: version, currently 1</li>
+ *     <li>1 byte: flags, bit 0 is set when ephemeral public key is present, bit 1 is set when sharedInfo2 is present</li>
+ *     <li>1 byte + N bytes: ephemeral public key length and bytes, present only when the flag is set</li>
+ *     <li>1 byte + N bytes: MAC length and bytes</li>
+ *     <li>2 bytes + N bytes: sharedInfo2 length and bytes, present only when the flag is set</li>
+ *     <li>4 bytes + N bytes: encrypted data length and bytes</li>
+ * </ul>
+ *
+ * <p>The encoding is not a replacement of the public API format, it is meant only for hops between services.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class EciesCryptogramCodec {
+
+    private static final byte VERSION = 1;
+    private static final int FLAG_EPHEMERAL_PUBLIC_KEY = 0x01;
+    private static final int FLAG_SHARED_INFO_2 = 0x02;
+    private static final int MAX_SHORT_FIELD_LENGTH = 0xFF;
+    private static final int MAX_SHARED_INFO_2_LENGTH = 0xFFFF;
+
+    /**
+     * Get length of binary encoding of a cryptogram.
+     *
+     * @param cryptogram ECIES cryptogram.
+     * @param sharedInfo2 Parameter sharedInfo2 to be transported with the cryptogram, may be null.
+     * @return Length of the encoded cryptogram.
+     * @throws EciesException In case the cryptogram cannot be encoded.
+     */
+    public int getEncodedLength(EciesCryptogram cryptogram, byte[] sharedInfo2) throws EciesException {
+        if (cryptogram == null || cryptogram.getEncryptedData() == null) {
+            throw new EciesException("Parameter cryptogram for encoding is invalid");
+        }
+        return getEncodedLength(cryptogram.getEphemeralPublicKey(), cryptogram.getMac(), sharedInfo2, cryptogram.getEncryptedData().length);
+    }
+
+    /**
+     * Encode a cryptogram.
+     *
+     * @param cryptogram ECIES cryptogram.
+     * @return Encoded cryptogram.
+     * @throws EciesException In case the cryptogram cannot be encoded.
+     */
+    public byte[] encode(EciesCryptogram cryptogram) throws EciesException {
+        return encode(cryptogram, null);
+    }
+
+    /**
+     * Encode a cryptogram together with parameter sharedInfo2.
+     *
+     * @param cryptogram ECIES cryptogram.
+     * @param sharedInfo2 Parameter sharedInfo2 to be transported with the cryptogram, may be null.
+     * @return Encoded cryptogram.
+     * @throws EciesException In case the cryptogram cannot be encoded.
+     */
+    public byte[] encode(EciesCryptogram cryptogram, byte[] sharedInfo2) throws EciesException {
+        final ByteBuffer output = ByteBuffer.allocate(getEncodedLength(cryptogram, sharedInfo2));
+        encode(cryptogram, sharedInfo2, output);
+        return output.array();
+    }
+
+    /**
+     * Encode a cryptogram together with parameter sharedInfo2 into the output buffer. The position of the output
+     * buffer is advanced by the length of the encoded cryptogram. The byte order of the output buffer is ignored.
+     *
+     * @param cryptogram ECIES cryptogram.
+     * @param sharedInfo2 Parameter sharedInfo2 to be transported with the cryptogram, may be null.
+     * @param output Buffer for the encoded cryptogram.
+     * @throws EciesException In case the cryptogram cannot be encoded or the output buffer is too small.
+     */
+    public void encode(EciesCryptogram cryptogram, byte[] sharedInfo2, ByteBuffer output) throws EciesException {
+        if (cryptogram == null || cryptogram.getEncryptedData() == null) {
+            throw new EciesException("Parameter cryptogram for encoding is invalid");
+        }
+        encode(cryptogram.getEphemeralPublicKey(), cryptogram.getMac(), sharedInfo2, ByteBuffer.wrap(cryptogram.getEncryptedData()), output);
+    }
+
+    /**
+     * Encode a cryptogram with encrypted data in a buffer, for example data encrypted by
+     * {@link EciesEncryptor#encryptRequest(ByteBuffer, ByteBuffer)}, into the output buffer. All remaining bytes
+     * of the encrypted data buffer are encoded and its position is advanced to its limit. The position of the
+     * output buffer is advanced by the length of the encoded cryptogram. The byte order of the output buffer
+     * is ignored.
+     *
+     * @param ephemeralPublicKey Ephemeral public key, may be null for responses.
+     * @param mac MAC computed for key and data.
+     * @param sharedInfo2 Parameter sharedInfo2 to be transported with the cryptogram, may be null.
+     * @param encryptedData Buffer with encrypted data.
+     * @param output Buffer for the encoded cryptogram.
+     * @throws EciesException In case the cryptogram cannot be encoded or the output buffer is too small.
+     */
+    public void encode(byte[] ephemeralPublicKey, byte[] mac, byte[] sharedInfo2, ByteBuffer encryptedData, ByteBuffer output) throws EciesException {
+        if (encryptedData == null || output == null) {
+            throw new EciesException("Parameter cryptogram for encoding is invalid");
+        }
+        if (output.remaining() < getEncodedLength(ephemeralPublicKey, mac, sharedInfo2, encryptedData.remaining())) {
+            throw new EciesException("Output buffer is too small");
+        }
+        int flags = 0;
+        if (ephemeralPublicKey != null) {
+            flags |= FLAG_EPHEMERAL_PUBLIC_KEY;
+        }
+        if (sharedInfo2 != null) {
+            flags |= FLAG_SHARED_INFO_2;
+        }
+        output.put(VERSION);
+        output.put((byte) flags);
+        if (ephemeralPublicKey != null) {
+            output.put((byte) ephemeralPublicKey.length);
+            output.put(ephemeralPublicKey);
+        }
+        output.put((byte) mac.length);
+        output.put(mac);
+        if (sharedInfo2 != null) {
+            putUnsignedShort(output, sharedInfo2.length);
+            output.put(sharedInfo2);
+        }
+        putInt(output, encryptedData.remaining());
+        output.put(encryptedData);
+    }
+
+    /**
+     * Decode a cryptogram from the input buffer. The encrypted data is not copied, the returned view refers
+     * to the content of the input buffer. The position of the input buffer is advanced by the length of the
+     * encoded cryptogram, so that several cryptograms can be decoded from a single buffer. The byte order
+     * of the input buffer is ignored.
+     *
+     * @param input Buffer with encoded cryptogram.
+     * @return View of the decoded cryptogram.
+     * @throws EciesException In case the encoded cryptogram is invalid.
+     */
+    public EciesCryptogramView decode(ByteBuffer input) throws EciesException {
+        if (input == null) {
+            throw new EciesException("Parameter input for decoding is null");
+        }
+        // Parse a view of the input to keep input position unchanged in case the encoding is invalid
+        final ByteBuffer encoded = input.duplicate().order(ByteOrder.BIG_ENDIAN);
+        try {
+            if (encoded.get() != VERSION) {
+                throw new EciesException("Unsupported cryptogram encoding version");
+            }
+            final int flags = encoded.get() & 0xFF;
+            if ((flags & ~(FLAG_EPHEMERAL_PUBLIC_KEY | FLAG_SHARED_INFO_2)) != 0) {
+                throw new EciesException("Invalid cryptogram encoding flags");
+            }
+            final byte[] ephemeralPublicKey = (flags & FLAG_EPHEMERAL_PUBLIC_KEY) != 0 ? readBytes(encoded, encoded.get() & 0xFF) : null;
+            final byte[] mac = readBytes(encoded, encoded.get() & 0xFF);
+            final byte[] sharedInfo2 = (flags & FLAG_SHARED_INFO_2) != 0 ? readBytes(encoded, encoded.getShort() & 0xFFFF) : null;
+            final int encryptedDataLength = encoded.getInt();
+            if (encryptedDataLength < 0 || encryptedDataLength > encoded.remaining()) {
+                throw new EciesException("Invalid cryptogram encoding length");
+            }
+            final ByteBuffer encryptedData = encoded.slice().asReadOnlyBuffer();
+            ((Buffer) encryptedData).limit(encryptedDataLength);
+            ((Buffer) input).position(encoded.position() + encryptedDataLength);
+            return new EciesCryptogramView(ephemeralPublicKey, mac, sharedInfo2, encryptedData);
+        } catch (BufferUnderflowException ex) {
+            throw new EciesException("Invalid cryptogram encoding length", ex);
+        }
+    }
+
+    /**
+     * Decode a cryptogram from a byte array.
+     *
+     * @param encoded Encoded cryptogram.
+     * @return Decoded cryptogram.
+     * @throws EciesException In case the encoded cryptogram is invalid.
+     */
+    public EciesCryptogram decode(byte[] encoded) throws EciesException {
+        if (encoded == null) {
+            throw new EciesException("Parameter input for decoding is null");
+        }
+        final ByteBuffer input = ByteBuffer.wrap(encoded);
+        final EciesCryptogramView view = decode(input);
+        if (input.hasRemaining()) {
+            throw new EciesException("Invalid cryptogram encoding length");
+        }
+        return view.toCryptogram();
+    }
+
+    private int getEncodedLength(byte[] ephemeralPublicKey, byte[] mac, byte[] sharedInfo2, int encryptedDataLength) throws EciesException {
+        if (mac == null || mac.length > MAX_SHORT_FIELD_LENGTH) {
+            throw new EciesException("Invalid MAC length");
+        }
+        if (ephemeralPublicKey != null && ephemeralPublicKey.length > MAX_SHORT_FIELD_LENGTH) {
+            throw new EciesException("Invalid ephemeral public key length");
+        }
+        if (sharedInfo2 != null && sharedInfo2.length > MAX_SHARED_INFO_2_LENGTH) {
+            throw new EciesException("Invalid sharedInfo2 length");
+        }
+        long length = 2L + 1 + mac.length + 4 + encryptedDataLength;
+        if (ephemeralPublicKey != null) {
+            length += 1 + ephemeralPublicKey.length;
+        }
+        if (sharedInfo2 != null) {
+            length += 2 + sharedInfo2.length;
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new EciesException("Cryptogram is too large");
+        }
+        return (int) length;
+    }
+
+    private void putUnsignedShort(ByteBuffer output, int value) {
+        // Lengths are always big-endian, regardless of the byte order of the output buffer
+        output.put((byte) (value >>> 8));
+        output.put((byte) value);
+    }
+
+    private void putInt(ByteBuffer output, int value) {
+        output.put((byte) (value >>> 24));
+        output.put((byte) (value >>> 16));
+        output.put((byte) (value >>> 8));
+        output.put((byte) value);
+    }
+
+    private byte[] readBytes(ByteBuffer input, int length) {
+        final byte[] bytes = new byte[length];
+        input.get(bytes);
+        return bytes;
+    }
+
+}
@@ -16,7 +16,6 @@
  */
 package io.getlime.security.powerauth.crypto.lib.encryptor.ecies;
 
-import com.google.common.primitives.Bytes;
 import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
 import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.exception.EciesException;
 import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.model.EciesCryptogram;
@@ -27,10 +26,14 @@ import io.getlime.security.powerauth.provider.CryptoProviderUtil;
 import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
 
 import javax.crypto.SecretKey;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.PublicKey;
 import java.security.interfaces.ECPublicKey;
-import java.util.Arrays;
 
 /**
  * Class implementing an ECIES encryptor.
@@ -40,6 +43,8 @@ import java.util.Arrays;
  */
 public class EciesEncryptor {
 
+    private static final String AES_CIPHER = "AES/CBC/PKCS7Padding";
+
     // Underlying implementation classes.
     private final AESEncryptionUtils aes = new AESEncryptionUtils();
     private final HMACHashUtilities hmac = new HMACHashUtilities();
@@ -116,6 +121,54 @@ public class EciesEncryptor {
         return encrypt(data);
     }
 
+    /**
+     * Encrypt request data from a buffer into a caller-provided output buffer and return MAC of the encrypted data.
+     * The ephemeral public key for the request is available in {@link #getEnvelopeKey()}. Buffers may be heap or
+     * direct buffers. All remaining bytes of the data buffer are processed and its position is advanced to its limit,
+     * the position of the output buffer is advanced by the number of encrypted bytes. The output buffer must have
+     * at least one block (16 bytes) more space remaining than the length of the data.
+     *
+     * @param data Buffer with request data.
+     * @param output Buffer for the encrypted data.
+     * @return MAC of the encrypted data.
+     * @throws EciesException In case request encryption fails.
+     */
+    public byte[] encryptRequest(ByteBuffer data, ByteBuffer output) throws EciesException {
+        if (data == null || output == null) {
+            throw new EciesException("Parameter data for request encryption is null");
+        }
+        if (!canEncryptRequest()) {
+            throw new EciesException("Request encryption is not allowed");
+        }
+        envelopeKey = EciesEnvelopeKey.fromPublicKey(publicKey, sharedInfo1);
+        return encrypt(data, output);
+    }
+
+    /**
+     * Encrypt request data from a stream into an output stream and return MAC of the encrypted data, for large
+     * payloads which should not be kept in memory at once. The ephemeral public key for the request is available
+     * in {@link #getEnvelopeKey()}. The streams are not closed.
+     *
+     * @param data Stream with request data.
+     * @param output Stream for the encrypted data.
+     * @return MAC of the encrypted data.
+     * @throws EciesException In case request encryption fails.
+     */
+    public byte[] encryptRequest(InputStream data, OutputStream output) throws EciesException {
+        if (data == null || output == null) {
+            throw new EciesException("Parameter data for request encryption is null");
+        }
+        if (!canEncryptRequest()) {
+            throw new EciesException("Request encryption is not allowed");
+        }
+        envelopeKey = EciesEnvelopeKey.fromPublicKey(publicKey, sharedInfo1);
+        // Invalidate this encryptor for encryption
+        canEncryptData = false;
+        final byte[] mac = EciesStreamCipher.encrypt(envelopeKey, sharedInfo2, data, output);
+        canDecryptData = true;
+        return mac;
+    }
+
     /**
      * Decrypt response data.
      *
@@ -133,6 +186,71 @@ public class EciesEncryptor {
         return decrypt(cryptogram);
     }
 
+    /**
+     * Decrypt response data from a buffer into a caller-provided output buffer. The encrypted data is not copied
+     * and the MAC is verified before any data is decrypted. All remaining bytes of the encrypted data buffer are
+     * processed and its position is advanced to its limit, the position of the output buffer is advanced by the
+     * number of decrypted bytes. The output buffer must have at least as much space remaining as the length of the
+     * encrypted data. In case decryption fails, the content of the output buffer is undefined.
+     *
+     * @param mac MAC of the encrypted data.
+     * @param encryptedData Buffer with encrypted data.
+     * @param output Buffer for the decrypted data.
+     * @return Number of decrypted bytes stored in the output buffer.
+     * @throws EciesException In case response decryption fails.
+     */
+    public int decryptResponse(byte[] mac, ByteBuffer encryptedData, ByteBuffer output) throws EciesException {
+        if (mac == null || encryptedData == null || output == null) {
+            throw new EciesException("Parameter cryptogram for response decryption is invalid");
+        }
+        if (!canDecryptResponse()) {
+            throw new EciesException("Response decryption is not allowed");
+        }
+        return decrypt(mac, encryptedData, output);
+    }
+
+    /**
+     * Decrypt response data from a stream into an output stream, for large payloads which should not be kept in
+     * memory at once. The decrypted data is written to the output stream only after the MAC of all encrypted data
+     * is verified, the encrypted data is spooled in memory up to 1 MB and into a temporary file above it. At most
+     * 2 GB of encrypted data is accepted.
+     *
+     * @param mac MAC of the encrypted data.
+     * @param encryptedData Stream with encrypted data.
+     * @param output Stream for the decrypted data.
+     * @return Number of decrypted bytes written to the output stream.
+     * @throws EciesException In case response decryption fails.
+     */
+    public long decryptResponse(byte[] mac, InputStream encryptedData, OutputStream output) throws EciesException {
+        return decryptResponse(mac, encryptedData, output, EciesStreamCipher.DEFAULT_SPOOL_THRESHOLD);
+    }
+
+    /**
+     * Decrypt response data from a stream into an output stream, for large payloads which should not be kept in
+     * memory at once. The decrypted data is written to the output stream only after the MAC of all encrypted data
+     * is verified, the encrypted data is spooled in memory up to given threshold and into a temporary file above it.
+     * At most 2 GB of encrypted data is accepted. The streams are not closed.
+     *
+     * @param mac MAC of the encrypted data.
+     * @param encryptedData Stream with encrypted data.
+     * @param output Stream for the decrypted data.
+     * @param spoolThreshold Maximum number of encrypted bytes spooled in memory, must be positive.
+     * @return Number of decrypted bytes written to the output stream.
+     * @throws EciesException In case response decryption fails.
+     */
+    public long decryptResponse(byte[] mac, InputStream encryptedData, OutputStream output, int spoolThreshold) throws EciesException {
+        if (mac == null || encryptedData == null || output == null) {
+            throw new EciesException("Parameter cryptogram for response decryption is invalid");
+        }
+        if (!canDecryptResponse()) {
+            throw new EciesException("Response decryption is not allowed");
+        }
+        return EciesStreamCipher.decrypt(envelopeKey, sharedInfo2, mac, encryptedData, output, spoolThreshold, () -> {
+            // Invalidate the encryptor
+            canDecryptData = false;
+        });
+    }
+
     /**
      * Get parameter sharedInfo2 for ECIES.
      * @return Parameter sharedInfo2 for ECIES.
@@ -183,8 +301,7 @@ public class EciesEncryptor {
             final byte[] encryptedData = aes.encrypt(data, iv, encKey);
 
             // Compute MAC of the data
-            final byte[] macData = (sharedInfo2 == null ? encryptedData : Bytes.concat(encryptedData, sharedInfo2));
-            final byte[] mac = hmac.hash(envelopeKey.getMacKey(), macData);
+            final byte[] mac = computeMac(encryptedData);
 
             // Invalidate this encryptor for encryption
             canEncryptData = false;
@@ -197,6 +314,38 @@ public class EciesEncryptor {
         }
     }
 
+    /**
+     * Encrypt data from a buffer into the output buffer using ECIES and compute MAC of the encrypted data.
+     *
+     * @param data Buffer with data to be encrypted.
+     * @param output Buffer for the encrypted data.
+     * @return MAC of the encrypted data.
+     * @throws EciesException In case AES encryption fails.
+     */
+    private byte[] encrypt(ByteBuffer data, ByteBuffer output) throws EciesException {
+        try {
+            // Encrypt the data with AES using zero IV
+            final byte[] encKeyBytes = envelopeKey.getEncKey();
+            final SecretKey encKey = keyConverter.convertBytesToSharedSecretKey(encKeyBytes);
+            final byte[] iv = new byte[16];
+            final int encryptedDataOffset = output.position();
+            final int encryptedDataLength = aes.encrypt(data, output, iv, encKey, AES_CIPHER);
+
+            // Compute MAC of the data written to the output buffer
+            final ByteBuffer encryptedData = output.duplicate();
+            ((Buffer) encryptedData).position(encryptedDataOffset).limit(encryptedDataOffset + encryptedDataLength);
+            final byte[] mac = computeMac(encryptedData);
+
+            // Invalidate this encryptor for encryption
+            canEncryptData = false;
+            canDecryptData = true;
+
+            return mac;
+        } catch (InvalidKeyException | GenericCryptoException | CryptoProviderException ex) {
+            throw new EciesException("Request encryption failed", ex);
+        }
+    }
+
     /**
      * Decrypt provided payload using ECIES algorithm and the same secret key as in previous encrypt call, useful for
      * request-response cycle.
@@ -208,9 +357,8 @@ public class EciesEncryptor {
     private byte[] decrypt(EciesCryptogram cryptogram) throws EciesException {
         try {
             // Validate data MAC value
-            final byte[] macData = (sharedInfo2 == null ? cryptogram.getEncryptedData() : Bytes.concat(cryptogram.getEncryptedData(), sharedInfo2));
-            final byte[] mac = hmac.hash(envelopeKey.getMacKey(), macData);
-            if (!Arrays.equals(mac, cryptogram.getMac())) {
+            final byte[] mac = computeMac(cryptogram.getEncryptedData());
+            if (!MessageDigest.isEqual(mac, cryptogram.getMac())) {
                 throw new EciesException("Invalid MAC");
             }
 
@@ -228,4 +376,66 @@ public class EciesEncryptor {
         }
     }
 
+    /**
+     * Decrypt encrypted data from a buffer into the output buffer after the MAC value is verified.
+     *
+     * @param mac Expected MAC value.
+     * @param encryptedData Buffer with encrypted data.
+     * @param output Buffer for the decrypted data.
+     * @return Number of decrypted bytes.
+     * @throws EciesException In case MAC value is invalid or AES decryption fails.
+     */
+    private int decrypt(byte[] mac, ByteBuffer encryptedData, ByteBuffer output) throws EciesException {
+        try {
+            // Validate data MAC value, the MAC is computed over a view of the buffer to keep its position
+            if (!MessageDigest.isEqual(computeMac(encryptedData.duplicate()), mac)) {
+                throw new EciesException("Invalid MAC");
+            }
+
+            // Decrypt the data with AES using zero IV
+            final byte[] encKeyBytes = envelopeKey.getEncKey();
+            final SecretKey encKey = keyConverter.convertBytesToSharedSecretKey(encKeyBytes);
+            final byte[] iv = new byte[16];
+
+            // Invalidate the encryptor
+            canDecryptData = false;
+
+            return aes.decrypt(encryptedData, output, iv, encKey, AES_CIPHER);
+        } catch (InvalidKeyException | GenericCryptoException | CryptoProviderException ex) {
+            throw new EciesException("Response decryption failed", ex);
+        }
+    }
+
+    /**
+     * Compute MAC of encrypted data and parameter sharedInfo2. The data are not concatenated, the MAC
+     * is computed over both parts directly.
+     *
+     * @param encryptedData Encrypted data.
+     * @return MAC value.
+     * @throws EciesException In case MAC key is not valid.
+     * @throws GenericCryptoException In case MAC computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    private byte[] computeMac(byte[] encryptedData) throws EciesException, GenericCryptoException, CryptoProviderException {
+        return computeMac(ByteBuffer.wrap(encryptedData));
+    }
+
+    /**
+     * Compute MAC of encrypted data in a buffer and parameter sharedInfo2. The position of the buffer
+     * is advanced to its limit.
+     *
+     * @param encryptedData Buffer with encrypted data.
+     * @return MAC value.
+     * @throws EciesException In case MAC key is not valid.
+     * @throws GenericCryptoException In case MAC computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    private byte[] computeMac(ByteBuffer encryptedData) throws EciesException, GenericCryptoException, CryptoProviderException {
+        final byte[] macKey = envelopeKey.getMacKey();
+        if (sharedInfo2 == null) {
+            return hmac.hash(macKey, encryptedData);
+        }
+        return hmac.hash(macKey, encryptedData, ByteBuffer.wrap(sharedInfo2));
+    }
+
 }
@@ -25,13 +25,13 @@ import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoExc
 import io.getlime.security.powerauth.provider.CryptoProviderUtil;
 import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
 
-import javax.crypto.SecretKey;
 import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
 
 /**
  * The ECIES Envelope Key represents a temporary key for ECIES encryption and decryption
@@ -73,7 +73,7 @@ public class EciesEnvelopeKey {
     static EciesEnvelopeKey fromPublicKey(PublicKey publicKey, byte[] sharedInfo1) throws EciesException {
         try {
             // Generate ephemeral key pair
-            final KeyPair ephemeralKeyPair = keyGenerator.generateKeyPair();
+            final KeyPair ephemeralKeyPair = keyGenerator.generateEphemeralKeyPair();
             final PrivateKey ephemeralPrivateKey = ephemeralKeyPair.getPrivate();
             final PublicKey ephemeralPublicKey = ephemeralKeyPair.getPublic();
 
@@ -81,13 +81,14 @@ public class EciesEnvelopeKey {
             final byte[] ephemeralPublicKeyBytes = keyConverter.convertPublicKeyToBytes(ephemeralPublicKey);
 
             // Compute ephemeral secret key using ECDH key agreement
-            final SecretKey ephemeralSecretKey = keyGenerator.computeSharedKey(ephemeralPrivateKey, publicKey, true);
+            final byte[] ephemeralSecret = keyGenerator.computeSharedSecret(ephemeralPrivateKey, publicKey, true);
 
             // Construct final data for parameter sharedInfo1
             byte[] info1Data = sharedInfo1 == null ? ephemeralPublicKeyBytes : Bytes.concat(sharedInfo1, ephemeralPublicKeyBytes);
 
             // Derive secret key using KDF function
-            byte[] secretKey = KdfX9_63.derive(keyConverter.convertSharedSecretKeyToBytes(ephemeralSecretKey), info1Data, ENVELOPE_KEY_SIZE);
+            byte[] secretKey = KdfX9_63.derive(ephemeralSecret, info1Data, ENVELOPE_KEY_SIZE);
+            Arrays.fill(ephemeralSecret, (byte) 0);
 
             // Return envelope key with derived secret key and ephemeral public key bytes
             return new EciesEnvelopeKey(secretKey, ephemeralPublicKeyBytes);
@@ -111,13 +112,14 @@ public class EciesEnvelopeKey {
             final PublicKey ephemeralPublicKey = keyConverter.convertBytesToPublicKey(ephemeralPublicKeyBytes);
 
             // Compute ephemeral secret key using ECDH key agreement
-            final SecretKey ephemeralSecretKey = keyGenerator.computeSharedKey(ephemeralKeyPrivate, ephemeralPublicKey, true);
+            final byte[] ephemeralSecret = keyGenerator.computeSharedSecret(ephemeralKeyPrivate, ephemeralPublicKey, true);
 
             // Construct final data for parameter sharedInfo1
             byte[] info1Data = sharedInfo1 == null ? ephemeralPublicKeyBytes : Bytes.concat(sharedInfo1, ephemeralPublicKeyBytes);
 
             // Derive secret key using KDF function
-            byte[] secretKey = KdfX9_63.derive(keyConverter.convertSharedSecretKeyToBytes(ephemeralSecretKey), info1Data, ENVELOPE_KEY_SIZE);
+            byte[] secretKey = KdfX9_63.derive(ephemeralSecret, info1Data, ENVELOPE_KEY_SIZE);
+            Arrays.fill(ephemeralSecret, (byte) 0);
 
             // Return envelope key with derived secret key and ephemeral public key bytes
             return new EciesEnvelopeKey(secretKey, ephemeralPublicKeyBytes);
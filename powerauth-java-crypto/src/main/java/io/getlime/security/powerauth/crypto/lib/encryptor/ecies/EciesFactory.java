@@ -25,6 +25,7 @@ import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
 
 import java.security.interfaces.ECPrivateKey;
 import java.security.interfaces.ECPublicKey;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Factory for obtaining initialized ECIES encryptor and decryptor instances.
@@ -33,6 +34,11 @@ import java.security.interfaces.ECPublicKey;
  */
 public class EciesFactory {
 
+    /**
+     * Default time since the last use of an activation after which its cached sharedInfo2 parameter is removed.
+     */
+    public static final long DEFAULT_ACTIVATION_EXPIRATION_MINUTES = 10;
+
     private final HMACHashUtilities hmacHashUtilities = new HMACHashUtilities();
 
     /**
@@ -183,4 +189,50 @@ public class EciesFactory {
         }
     }
 
+    /**
+     * Get ECIES server context for application scope. The context can be shared by all requests of the application
+     * with the same sharedInfo1 parameter, see {@link EciesServerContext}.
+     *
+     * @param privateKey Application master private key used for ECIES.
+     * @param applicationSecret Application secret.
+     * @param sharedInfo1 Additional information for sharedInfo1 parameter using pre-defined constants.
+     * @return ECIES server context.
+     */
+    public EciesServerContext getEciesServerContextForApplication(ECPrivateKey privateKey, byte[] applicationSecret, EciesSharedInfo1 sharedInfo1) {
+        byte[] sharedInfo1Value = sharedInfo1 == null ? EciesSharedInfo1.APPLICATION_SCOPE_GENERIC.value() : sharedInfo1.value();
+        return new EciesServerContext(privateKey, applicationSecret, sharedInfo1Value);
+    }
+
+    /**
+     * Get ECIES server context for activation scope. The context can be shared by all requests of activations
+     * of the application with the same sharedInfo1 parameter, see {@link EciesServerContext}. Cached sharedInfo2
+     * parameter of an activation is removed after {@value #DEFAULT_ACTIVATION_EXPIRATION_MINUTES} minutes since
+     * its last use.
+     *
+     * @param applicationSecret Application secret.
+     * @param sharedInfo1 Additional information for sharedInfo1 parameter using pre-defined constants.
+     * @param maximumActivations Maximum number of activations with cached sharedInfo2 parameter.
+     * @return ECIES server context.
+     */
+    public EciesServerContext getEciesServerContextForActivation(byte[] applicationSecret, EciesSharedInfo1 sharedInfo1, long maximumActivations) {
+        return getEciesServerContextForActivation(applicationSecret, sharedInfo1, maximumActivations, DEFAULT_ACTIVATION_EXPIRATION_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Get ECIES server context for activation scope with given expiration of cached activations. The context can
+     * be shared by all requests of activations of the application with the same sharedInfo1 parameter, see
+     * {@link EciesServerContext}.
+     *
+     * @param applicationSecret Application secret.
+     * @param sharedInfo1 Additional information for sharedInfo1 parameter using pre-defined constants.
+     * @param maximumActivations Maximum number of activations with cached sharedInfo2 parameter.
+     * @param expireAfterAccess Time since the last use of an activation after which its sharedInfo2 parameter is removed.
+     * @param timeUnit Time unit of the expiration time.
+     * @return ECIES server context.
+     */
+    public EciesServerContext getEciesServerContextForActivation(byte[] applicationSecret, EciesSharedInfo1 sharedInfo1, long maximumActivations, long expireAfterAccess, TimeUnit timeUnit) {
+        byte[] sharedInfo1Value = sharedInfo1 == null ? EciesSharedInfo1.ACTIVATION_SCOPE_GENERIC.value() : sharedInfo1.value();
+        return new EciesServerContext(applicationSecret, sharedInfo1Value, maximumActivations, expireAfterAccess, timeUnit);
+    }
+
 }
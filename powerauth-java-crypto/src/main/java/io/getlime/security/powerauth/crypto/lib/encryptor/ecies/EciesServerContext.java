@@ -0,0 +1,220 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.lib.encryptor.ecies;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.model.EciesScope;
+import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
+import io.getlime.security.powerauth.crypto.lib.util.HMACHashUtilities;
+import io.getlime.security.powerauth.crypto.lib.util.Hash;
+import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
+
+import java.security.MessageDigest;
+import java.security.interfaces.ECPrivateKey;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable server-side ECIES context shared by all requests with the same parameters. The context computes
+ * parameter sharedInfo2 once instead of for each request and creates lightweight decryptors which handle
+ * a single request and response.
+ *
+ * <p>In application scope the context is bound to the application master private key, sharedInfo1 and application
+ * secret. In activation scope the private key and transport key differ for each activation, so the context is bound
+ * to sharedInfo1 and application secret only and it caches sharedInfo2 values of recently used activations.
+ * Transport keys are not kept in the cache, only their SHA-256 digests are stored to detect a change of the
+ * transport key, and activations which are not used for the configured time are removed from the cache.
+ *
+ * <p>The context is thread-safe. Decryptors created by the context are not thread-safe and they must be used only
+ * while processing a single request. Byte arrays are copied when passed to the context and when obtained from it,
+ * so that callers cannot modify the shared parameters.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public final class EciesServerContext {
+
+    private final HMACHashUtilities hmacHashUtilities = new HMACHashUtilities();
+
+    private final EciesScope eciesScope;
+    private final ECPrivateKey privateKey;
+    private final byte[] applicationSecret;
+    private final byte[] sharedInfo1;
+    private final byte[] sharedInfo2;
+    private final Cache<String, ActivationSharedInfo2> activationSharedInfo2Cache;
+
+    /**
+     * Construct an application scope context.
+     *
+     * @param privateKey Application master private key.
+     * @param applicationSecret Application secret.
+     * @param sharedInfo1 Parameter sharedInfo1 in bytes.
+     */
+    EciesServerContext(ECPrivateKey privateKey, byte[] applicationSecret, byte[] sharedInfo1) {
+        this.eciesScope = EciesScope.APPLICATION_SCOPE;
+        this.privateKey = privateKey;
+        this.applicationSecret = applicationSecret.clone();
+        this.sharedInfo1 = sharedInfo1.clone();
+        // Compute hash from APP_SECRET as sharedInfo2
+        this.sharedInfo2 = Hash.sha256(applicationSecret);
+        this.activationSharedInfo2Cache = null;
+    }
+
+    /**
+     * Construct an activation scope context.
+     *
+     * @param applicationSecret Application secret.
+     * @param sharedInfo1 Parameter sharedInfo1 in bytes.
+     * @param maximumActivations Maximum number of activations with cached sharedInfo2 parameter.
+     * @param expireAfterAccess Time since the last use of an activation after which its sharedInfo2 parameter is removed.
+     * @param timeUnit Time unit of the expiration time.
+     */
+    EciesServerContext(byte[] applicationSecret, byte[] sharedInfo1, long maximumActivations, long expireAfterAccess, TimeUnit timeUnit) {
+        this.eciesScope = EciesScope.ACTIVATION_SCOPE;
+        this.privateKey = null;
+        this.applicationSecret = applicationSecret.clone();
+        this.sharedInfo1 = sharedInfo1.clone();
+        this.sharedInfo2 = null;
+        this.activationSharedInfo2Cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumActivations)
+                .expireAfterAccess(expireAfterAccess, timeUnit)
+                .build();
+    }
+
+    /**
+     * Get ECIES scope of the context.
+     *
+     * @return ECIES scope.
+     */
+    public EciesScope getEciesScope() {
+        return eciesScope;
+    }
+
+    /**
+     * Create a decryptor for a single request in application scope.
+     *
+     * @return Initialized ECIES decryptor.
+     * @throws GenericCryptoException In case the context is not an application scope context.
+     */
+    public EciesDecryptor createDecryptor() throws GenericCryptoException {
+        if (eciesScope != EciesScope.APPLICATION_SCOPE) {
+            throw new GenericCryptoException("Unsupported ECIES scope: " + eciesScope);
+        }
+        return new EciesDecryptor(privateKey, sharedInfo1.clone(), sharedInfo2.clone());
+    }
+
+    /**
+     * Create a decryptor for a single request in activation scope.
+     *
+     * @param activationId Activation ID.
+     * @param privateKey Server private key of the activation.
+     * @param transportKey Transport key of the activation.
+     * @return Initialized ECIES decryptor.
+     * @throws GenericCryptoException In case the context is not an activation scope context or sharedInfo2 computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public EciesDecryptor createDecryptor(String activationId, ECPrivateKey privateKey, byte[] transportKey) throws GenericCryptoException, CryptoProviderException {
+        return new EciesDecryptor(privateKey, sharedInfo1.clone(), getSharedInfo2(activationId, transportKey));
+    }
+
+    /**
+     * Get parameter sharedInfo2 in application scope.
+     *
+     * @return Copy of parameter sharedInfo2.
+     * @throws GenericCryptoException In case the context is not an application scope context.
+     */
+    public byte[] getSharedInfo2() throws GenericCryptoException {
+        if (eciesScope != EciesScope.APPLICATION_SCOPE) {
+            throw new GenericCryptoException("Unsupported ECIES scope: " + eciesScope);
+        }
+        return sharedInfo2.clone();
+    }
+
+    /**
+     * Get parameter sharedInfo2 of an activation in activation scope. The value is cached for the activation
+     * and it is computed again only in case the transport key of the activation changes.
+     *
+     * @param activationId Activation ID.
+     * @param transportKey Transport key of the activation.
+     * @return Copy of parameter sharedInfo2.
+     * @throws GenericCryptoException In case the context is not an activation scope context or sharedInfo2 computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public byte[] getSharedInfo2(String activationId, byte[] transportKey) throws GenericCryptoException, CryptoProviderException {
+        if (eciesScope != EciesScope.ACTIVATION_SCOPE) {
+            throw new GenericCryptoException("Unsupported ECIES scope: " + eciesScope);
+        }
+        if (activationId == null || transportKey == null) {
+            throw new GenericCryptoException("Invalid activation parameters");
+        }
+        final byte[] transportKeyHash = Hash.sha256(transportKey);
+        if (transportKeyHash == null) {
+            throw new CryptoProviderException("SHA-256 digest is not available");
+        }
+        final ActivationSharedInfo2 cached = activationSharedInfo2Cache.getIfPresent(activationId);
+        if (cached != null && cached.matches(transportKeyHash)) {
+            return cached.sharedInfo2.clone();
+        }
+        // The sharedInfo2 is defined as HMAC_SHA256(key: KEY_TRANSPORT, data: APP_SECRET)
+        final byte[] activationSharedInfo2 = hmacHashUtilities.hash(transportKey, applicationSecret);
+        activationSharedInfo2Cache.put(activationId, new ActivationSharedInfo2(transportKeyHash, activationSharedInfo2.clone()));
+        return activationSharedInfo2;
+    }
+
+    /**
+     * Remove cached sharedInfo2 parameter of an activation.
+     *
+     * @param activationId Activation ID.
+     */
+    public void invalidateActivation(String activationId) {
+        if (activationSharedInfo2Cache != null) {
+            activationSharedInfo2Cache.invalidate(activationId);
+        }
+    }
+
+    /**
+     * Get number of activations with cached sharedInfo2 parameter in activation scope. Expired activations
+     * are removed before they are counted.
+     *
+     * @return Number of cached activations, 0 for application scope.
+     */
+    public long getCachedActivationCount() {
+        if (activationSharedInfo2Cache == null) {
+            return 0;
+        }
+        activationSharedInfo2Cache.cleanUp();
+        return activationSharedInfo2Cache.size();
+    }
+
+    /**
+     * Parameter sharedInfo2 of an activation together with SHA-256 digest of the transport key it was computed from.
+     */
+    private static final class ActivationSharedInfo2 {
+
+        private final byte[] transportKeyHash;
+        private final byte[] sharedInfo2;
+
+        ActivationSharedInfo2(byte[] transportKeyHash, byte[] sharedInfo2) {
+            this.transportKeyHash = transportKeyHash;
+            this.sharedInfo2 = sharedInfo2;
+        }
+
+        boolean matches(byte[] transportKeyHash) {
+            return MessageDigest.isEqual(this.transportKeyHash, transportKeyHash);
+        }
+    }
+
+}
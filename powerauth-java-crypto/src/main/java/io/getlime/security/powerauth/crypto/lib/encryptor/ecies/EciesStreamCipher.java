@@ -0,0 +1,263 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.lib.encryptor.ecies;
+
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.exception.EciesException;
+import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Streaming ECIES data encryption and decryption with AES/CBC/PKCS7Padding and HMAC-SHA256 computed over
+ * encrypted data and parameter sharedInfo2. The encrypted data and MAC are the same as in {@link EciesEncryptor}
+ * and {@link EciesDecryptor}, only the data is processed in chunks instead of at once.
+ *
+ * <p>Decrypted data must not be released before the MAC is verified, and the MAC covers all encrypted data.
+ * During decryption the encrypted data is therefore first spooled while the MAC is computed, in memory up to
+ * a threshold and into a temporary file above it, and it is decrypted only after the MAC is verified. Only
+ * encrypted data is ever written to the temporary file, at most {@link #MAX_ENCRYPTED_DATA_LENGTH} bytes, so this
+ * is also the maximum disk space used by a single decryption.
+ *
+ * <p>After the MAC is verified the encrypted data is read back from the temporary file, which is created readable
+ * and writable by its owner only. A process running under the same user could still modify the file between
+ * verification and decryption, therefore the MAC is computed once more while the file is read back, and the
+ * decryption fails with an exception before the final block is written in case the data changed. Data decrypted
+ * before the change is detected is already written to the output stream in that case and must be discarded by
+ * the caller.
+ *
+ * <p>Engines are not taken from the per-thread engine caches, since the caller's streams may use the same
+ * caches while the data is processed.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+final class EciesStreamCipher {
+
+    /**
+     * Default maximum size of encrypted data spooled in memory during decryption.
+     */
+    static final int DEFAULT_SPOOL_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Maximum length of encrypted data accepted by streaming decryption.
+     */
+    static final long MAX_ENCRYPTED_DATA_LENGTH = Integer.MAX_VALUE;
+
+    private static final String AES_CIPHER = "AES/CBC/PKCS7Padding";
+    private static final String HMAC_SHA256_ALGORITHM = "HmacSHA256";
+    private static final int CHUNK_SIZE = 8192;
+
+    private EciesStreamCipher() {
+    }
+
+    /**
+     * Encrypt data from the input stream into the output stream and compute MAC of the encrypted data.
+     *
+     * @param envelopeKey ECIES envelope key.
+     * @param sharedInfo2 Parameter sharedInfo2, may be null.
+     * @param input Stream with data to be encrypted.
+     * @param output Stream for the encrypted data.
+     * @return MAC of the encrypted data.
+     * @throws EciesException In case encryption fails or streams cannot be read or written.
+     */
+    static byte[] encrypt(EciesEnvelopeKey envelopeKey, byte[] sharedInfo2, InputStream input, OutputStream output) throws EciesException {
+        try {
+            final Cipher cipher = getCipher(Cipher.ENCRYPT_MODE, envelopeKey);
+            final Mac mac = getMac(envelopeKey);
+            final byte[] buffer = new byte[CHUNK_SIZE];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                writeAndUpdateMac(cipher.update(buffer, 0, count), mac, output);
+            }
+            writeAndUpdateMac(cipher.doFinal(), mac, output);
+            return finishMac(mac, sharedInfo2);
+        } catch (GeneralSecurityException | CryptoProviderException | IOException ex) {
+            throw new EciesException("Encryption failed", ex);
+        }
+    }
+
+    /**
+     * Decrypt data from the input stream into the output stream. The data is written to the output stream only
+     * after the MAC of all encrypted data is verified.
+     *
+     * @param envelopeKey ECIES envelope key.
+     * @param sharedInfo2 Parameter sharedInfo2, may be null.
+     * @param expectedMac Expected MAC of the encrypted data.
+     * @param input Stream with encrypted data.
+     * @param output Stream for the decrypted data.
+     * @param spoolThreshold Maximum size of encrypted data spooled in memory.
+     * @param macVerified Callback invoked after the MAC is verified and before any data is decrypted.
+     * @return Number of decrypted bytes.
+     * @throws EciesException In case MAC is invalid, decryption fails or streams cannot be read or written.
+     */
+    static long decrypt(EciesEnvelopeKey envelopeKey, byte[] sharedInfo2, byte[] expectedMac, InputStream input, OutputStream output, int spoolThreshold, Runnable macVerified) throws EciesException {
+        if (spoolThreshold < 1) {
+            throw new EciesException("Invalid spool threshold: " + spoolThreshold);
+        }
+        try (Spool spool = new Spool(spoolThreshold)) {
+            // Spool encrypted data and compute its MAC
+            Mac mac = getMac(envelopeKey);
+            final byte[] buffer = new byte[CHUNK_SIZE];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                mac.update(buffer, 0, count);
+                spool.write(buffer, 0, count);
+            }
+            if (!MessageDigest.isEqual(finishMac(mac, sharedInfo2), expectedMac)) {
+                throw new EciesException("Invalid MAC");
+            }
+            macVerified.run();
+
+            // Decrypt spooled data, data read back from the temporary file is verified again
+            final Cipher cipher = getCipher(Cipher.DECRYPT_MODE, envelopeKey);
+            mac = spool.isFile() ? getMac(envelopeKey) : null;
+            long length = 0;
+            try (InputStream encryptedData = spool.openInputStream()) {
+                while ((count = encryptedData.read(buffer)) != -1) {
+                    if (mac != null) {
+                        mac.update(buffer, 0, count);
+                    }
+                    length += write(cipher.update(buffer, 0, count), output);
+                }
+            }
+            if (mac != null && !MessageDigest.isEqual(finishMac(mac, sharedInfo2), expectedMac)) {
+                throw new EciesException("Encrypted data changed during decryption");
+            }
+            length += write(cipher.doFinal(), output);
+            return length;
+        } catch (GeneralSecurityException | CryptoProviderException | IOException ex) {
+            throw new EciesException("Decryption failed", ex);
+        }
+    }
+
+    private static Cipher getCipher(int opmode, EciesEnvelopeKey envelopeKey) throws GeneralSecurityException, CryptoProviderException, EciesException {
+        final SecretKey encKey = PowerAuthConfiguration.INSTANCE.getKeyConvertor().convertBytesToSharedSecretKey(envelopeKey.getEncKey());
+        final Cipher cipher = Cipher.getInstance(AES_CIPHER, PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
+        cipher.init(opmode, encKey, new IvParameterSpec(new byte[16]));
+        return cipher;
+    }
+
+    private static Mac getMac(EciesEnvelopeKey envelopeKey) throws GeneralSecurityException, CryptoProviderException, EciesException {
+        final Mac mac = Mac.getInstance(HMAC_SHA256_ALGORITHM, PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
+        mac.init(new SecretKeySpec(envelopeKey.getMacKey(), HMAC_SHA256_ALGORITHM));
+        return mac;
+    }
+
+    private static byte[] finishMac(Mac mac, byte[] sharedInfo2) {
+        if (sharedInfo2 != null) {
+            mac.update(sharedInfo2);
+        }
+        return mac.doFinal();
+    }
+
+    private static void writeAndUpdateMac(byte[] encryptedData, Mac mac, OutputStream output) throws IOException {
+        if (encryptedData != null) {
+            mac.update(encryptedData);
+            output.write(encryptedData);
+        }
+    }
+
+    private static int write(byte[] data, OutputStream output) throws IOException {
+        if (data == null) {
+            return 0;
+        }
+        output.write(data);
+        return data.length;
+    }
+
+    /**
+     * Storage of encrypted data, kept in memory up to the threshold and moved to a temporary file above it.
+     * The temporary file is deleted when the spool is closed.
+     */
+    private static final class Spool implements AutoCloseable {
+
+        private final int threshold;
+        private MemorySpool memory = new MemorySpool();
+        private Path file;
+        private OutputStream fileOutput;
+        private long size;
+
+        Spool(int threshold) {
+            this.threshold = threshold;
+        }
+
+        void write(byte[] data, int offset, int length) throws IOException, EciesException {
+            size += length;
+            if (size > MAX_ENCRYPTED_DATA_LENGTH) {
+                throw new EciesException("Encrypted data is too large");
+            }
+            if (fileOutput == null && memory.size() + length > threshold) {
+                file = Files.createTempFile("ecies", ".spool");
+                fileOutput = Files.newOutputStream(file);
+                memory.writeTo(fileOutput);
+                memory = null;
+            }
+            if (fileOutput != null) {
+                fileOutput.write(data, offset, length);
+            } else {
+                memory.write(data, offset, length);
+            }
+        }
+
+        boolean isFile() {
+            return fileOutput != null;
+        }
+
+        InputStream openInputStream() throws IOException {
+            if (fileOutput == null) {
+                return memory.openInputStream();
+            }
+            fileOutput.close();
+            return Files.newInputStream(file);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (file != null) {
+                try {
+                    fileOutput.close();
+                } finally {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * In-memory spool which reads the spooled data without copying it.
+     */
+    private static final class MemorySpool extends ByteArrayOutputStream {
+
+        InputStream openInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+
+}
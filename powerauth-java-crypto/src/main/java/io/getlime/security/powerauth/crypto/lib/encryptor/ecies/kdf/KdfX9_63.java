@@ -16,16 +16,20 @@
  */
 package io.getlime.security.powerauth.crypto.lib.encryptor.ecies.kdf;
 
-import com.google.common.primitives.Bytes;
 import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
 import io.getlime.security.powerauth.crypto.lib.util.Hash;
+import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
 
-import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
 import java.util.Arrays;
 
 /**
  * Implementation of X9.63 KDF function with SHA256 digest type.
  *
+ * <p>The output is computed as SHA256(secret || counter || sharedInfo) for counter = 1, 2, ... The values
+ * are streamed into a single digest instance, so that no intermediate round data is built.
+ *
  * @author Petr Dvorak, petr@wultra.com
  */
 public class KdfX9_63 {
@@ -42,36 +46,68 @@ public class KdfX9_63 {
         if (secret == null) {
             throw new GenericCryptoException("Missing secret for KDF X9.63");
         }
-        byte[] result = new byte[0];
-        byte[] round = new byte[secret.length + 4 + (sharedInfo == null ? 0 : sharedInfo.length)];
-        byte[] temp;
-        byte[] counter;
-        int i = 1;
-        while (result.length < outputBytes) {
-            // Copy secret
-            System.arraycopy(secret, 0, round, 0, secret.length);
-            // Copy counter
-            counter = ByteBuffer.allocate(4).putInt(i).array();
-            System.arraycopy(counter, 0, round, secret.length, 4);
-            // Copy additional sharedInfo
-            if (sharedInfo != null) {
-                System.arraycopy(sharedInfo, 0, round, secret.length + 4, sharedInfo.length);
+        if (outputBytes <= 0) {
+            return new byte[0];
+        }
+        final byte[] result = new byte[outputBytes];
+        derive(secret, sharedInfo, result, 0, outputBytes);
+        return result;
+    }
+
+    /**
+     * Derive a new key using X9.63 with SHA256 digest and store it in the output array.
+     * @param secret Secret key to be used as the derivation base key.
+     * @param sharedInfo Extra information used for derived key computation.
+     * @param output Array for the derived key.
+     * @param offset Offset in the output array where the derived key is stored.
+     * @param length Requested size of the key.
+     * @throws GenericCryptoException In case key derivation fails.
+     */
+    public static void derive(byte[] secret, byte[] sharedInfo, byte[] output, int offset, int length) throws GenericCryptoException {
+        if (secret == null) {
+            throw new GenericCryptoException("Missing secret for KDF X9.63");
+        }
+        if (output == null || offset < 0 || length < 0 || output.length - offset < length) {
+            throw new GenericCryptoException("Invalid output for KDF X9.63");
+        }
+        final MessageDigest digest;
+        try {
+            digest = Hash.sha256Digest();
+        } catch (CryptoProviderException ex) {
+            throw new GenericCryptoException(ex.getMessage(), ex);
+        }
+        final byte[] counter = new byte[4];
+        byte[] lastRound = null;
+        int position = offset;
+        final int end = offset + length;
+        try {
+            for (int i = 1; position < end; i++) {
+                counter[0] = (byte) (i >>> 24);
+                counter[1] = (byte) (i >>> 16);
+                counter[2] = (byte) (i >>> 8);
+                counter[3] = (byte) i;
+                digest.update(secret);
+                digest.update(counter);
+                if (sharedInfo != null) {
+                    digest.update(sharedInfo);
+                }
+                if (end - position >= Hash.SHA256_LENGTH) {
+                    // Full round is written directly to the output
+                    position += digest.digest(output, position, Hash.SHA256_LENGTH);
+                } else {
+                    // Last round is trimmed to the requested length
+                    lastRound = digest.digest();
+                    System.arraycopy(lastRound, 0, output, position, end - position);
+                    position = end;
+                }
             }
-            // Hash the value
-            temp = Hash.sha256(round);
-            if (temp == null || temp.length == 0) {
-                result = new byte[0];
-                break;
+        } catch (DigestException ex) {
+            throw new GenericCryptoException(ex.getMessage(), ex);
+        } finally {
+            if (lastRound != null) {
+                Arrays.fill(lastRound, (byte) 0);
             }
-            // Append working batch to result
-            result = Bytes.concat(result, temp);
-            ++i;
         }
-        // Trim the array to the desired length
-        if (result.length > outputBytes) {
-            result = Arrays.copyOf(result, outputBytes);
-        }
-        return result;
     }
 
 }
@@ -0,0 +1,105 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.lib.encryptor.ecies.model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * View of an ECIES cryptogram decoded from binary encoding. The encrypted data is a read-only view of the buffer
+ * the cryptogram was decoded from, it is not copied and it is valid only as long as the content of the original
+ * buffer is not modified.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class EciesCryptogramView {
+
+    private final byte[] ephemeralPublicKey;
+    private final byte[] mac;
+    private final byte[] sharedInfo2;
+    private final ByteBuffer encryptedData;
+
+    /**
+     * Constructor with cryptogram parts.
+     *
+     * @param ephemeralPublicKey Ephemeral public key, null for responses.
+     * @param mac MAC computed for key and data.
+     * @param sharedInfo2 Parameter sharedInfo2, null in case it is not transported with the cryptogram.
+     * @param encryptedData Buffer with encrypted data.
+     */
+    public EciesCryptogramView(byte[] ephemeralPublicKey, byte[] mac, byte[] sharedInfo2, ByteBuffer encryptedData) {
+        this.ephemeralPublicKey = ephemeralPublicKey;
+        this.mac = mac;
+        this.sharedInfo2 = sharedInfo2;
+        this.encryptedData = encryptedData;
+    }
+
+    /**
+     * Get ephemeral public key bytes. The value is optional for response data.
+     *
+     * @return Ephemeral public key bytes.
+     */
+    public byte[] getEphemeralPublicKey() {
+        return ephemeralPublicKey;
+    }
+
+    /**
+     * Get the MAC computed for key and data.
+     *
+     * @return MAC computed for key and data.
+     */
+    public byte[] getMac() {
+        return mac;
+    }
+
+    /**
+     * Get parameter sharedInfo2 transported with the cryptogram.
+     *
+     * @return Parameter sharedInfo2, or null in case it is not transported with the cryptogram.
+     */
+    public byte[] getSharedInfo2() {
+        return sharedInfo2;
+    }
+
+    /**
+     * Get a new read-only view of the encrypted data, positioned at the start of the data.
+     *
+     * @return Buffer with encrypted data.
+     */
+    public ByteBuffer getEncryptedData() {
+        return encryptedData.duplicate();
+    }
+
+    /**
+     * Get the encrypted data length.
+     *
+     * @return Encrypted data length.
+     */
+    public int getEncryptedDataLength() {
+        return encryptedData.remaining();
+    }
+
+    /**
+     * Convert the view to a cryptogram, the encrypted data is copied.
+     *
+     * @return ECIES cryptogram.
+     */
+    public EciesCryptogram toCryptogram() {
+        final byte[] encryptedDataBytes = new byte[encryptedData.remaining()];
+        encryptedData.duplicate().get(encryptedDataBytes);
+        return new EciesCryptogram(ephemeralPublicKey, mac, encryptedDataBytes);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.lib.enums;
+
+/**
+ * Enum with modes of ECDSA signature computation. Signatures computed in any mode are standard ECDSA signatures,
+ * they are validated the same way regardless of the mode used for computing them.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public enum EcdsaSignatureMode {
+
+    /**
+     * Signature nonce is generated using a random number generator.
+     */
+    RANDOM_NONCE("SHA256withECDSA"),
+
+    /**
+     * Signature nonce is derived deterministically from the private key and message hash as specified
+     * by RFC 6979, no random number generator is used while signing.
+     */
+    DETERMINISTIC_NONCE("SHA256withECDDSA");
+
+    private final String algorithm;
+
+    EcdsaSignatureMode(final String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Get JCA algorithm name of the signature mode.
+     * @return Algorithm name.
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+}
@@ -220,7 +220,7 @@ public class IdentifierGenerator {
         final String recoveryCode = generateRecoveryCode(derivedKeyBytes);
 
         // Generate PUK base key using derived recovery key (next 16 bytes)
-        final SecretKey recoveryPukBaseKey = generatePukBaseKey(derivedKeyBytes);
+        final KeyDerivationEngine recoveryPukBaseKey = generatePukBaseKey(derivedKeyBytes);
 
         final Map<Integer, Long> pukDerivationIndexes = new LinkedHashMap<>();
         final Map<Integer, String> puks = new LinkedHashMap<>();
@@ -286,7 +286,7 @@ public class IdentifierGenerator {
         final String recoveryCode = generateRecoveryCode(derivedKeyBytes);
 
         // Generate PUK base key using derived recovery key (next 16 bytes)
-        final SecretKey recoveryPukBaseKey = generatePukBaseKey(derivedKeyBytes);
+        final KeyDerivationEngine recoveryPukBaseKey = generatePukBaseKey(derivedKeyBytes);
 
         // Derive PUKs using derivation indexes
         final Map<Integer, String> puks = new LinkedHashMap<>();
@@ -320,29 +320,30 @@ public class IdentifierGenerator {
     }
 
     /**
-     * Generate base key for generating PUKs using derived key.
+     * Generate base key for generating PUKs using derived key. The base key is returned as a key derivation
+     * engine, so that all PUKs are derived using a single AES key schedule.
      * @param derivedKeyBytes Derived key bytes.
-     * @return PUK base key.
+     * @return Key derivation engine for the PUK base key.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     * @throws InvalidKeyException In case key is invalid.
      */
-    private SecretKey generatePukBaseKey(byte[] derivedKeyBytes) {
+    private KeyDerivationEngine generatePukBaseKey(byte[] derivedKeyBytes) throws CryptoProviderException, InvalidKeyException {
         // Extract bytes 10-25 as recovery puk base key bytes
         final byte[] recoveryPukBaseKeyBytes = new byte[16];
         System.arraycopy(derivedKeyBytes, 10, recoveryPukBaseKeyBytes, 0, 16);
-        return PowerAuthConfiguration.INSTANCE.getKeyConvertor().convertBytesToSharedSecretKey(recoveryPukBaseKeyBytes);
+        final SecretKey recoveryPukBaseKey = PowerAuthConfiguration.INSTANCE.getKeyConvertor().convertBytesToSharedSecretKey(recoveryPukBaseKeyBytes);
+        return new KeyDerivationEngine(recoveryPukBaseKey);
     }
 
     /**
      * Generate recovery PUK using recovery base key and index bytes.
-     * @param recoveryPukBaseKey Recovery base key.
+     * @param recoveryPukBaseKey Key derivation engine for the recovery base key.
      * @param indexBytes PUK index bytes.
      * @return Generated PUK.
      * @throws GenericCryptoException In case of any cryptography error.
-     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
-     * @throws InvalidKeyException In case key is invalid.
      */
-    private String generatePuk(SecretKey recoveryPukBaseKey, byte[] indexBytes) throws CryptoProviderException, InvalidKeyException, GenericCryptoException {
-        SecretKey pukKey = keyGenerator.deriveSecretKey(recoveryPukBaseKey, indexBytes);
-        byte[] pukKeyBytes = PowerAuthConfiguration.INSTANCE.getKeyConvertor().convertSharedSecretKeyToBytes(pukKey);
+    private String generatePuk(KeyDerivationEngine recoveryPukBaseKey, byte[] indexBytes) throws GenericCryptoException {
+        byte[] pukKeyBytes = recoveryPukBaseKey.deriveKeyBytes(indexBytes);
 
         // Extract last 8 bytes from PUK key bytes
         byte[] truncatedBytes = new byte[8];
@@ -0,0 +1,213 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.lib.generator;
+
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
+import io.getlime.security.powerauth.crypto.lib.util.CryptoEngineCache;
+import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
+
+import javax.crypto.*;
+import javax.crypto.spec.SecretKeySpec;
+import javax.security.auth.Destroyable;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.util.Arrays;
+
+/**
+ * Single block AES engine for PowerAuth key derivation. The KDF used by PowerAuth is defined as
+ * KEY_SHARED[INDEX] = AES(INDEX, KEY_MASTER) with AES/CBC/PKCS7Padding and zero IV, truncated to 16 bytes.
+ * The first CBC block with zero IV equals a single AES block encryption, so the engine encrypts exactly one
+ * block using AES/ECB/NoPadding:
+ *
+ * <ul>
+ *     <li>indexes with 16 or more bytes use the first 16 bytes of the index,</li>
+ *     <li>shorter indexes (for example 8 byte PUK indexes) are padded using PKCS#7 padding.</li>
+ * </ul>
+ *
+ * <p>The AES key schedule is expanded only once when the engine is created, so deriving several keys from
+ * the same master key only costs one block encryption per key. Instances are not thread-safe. Call
+ * {@link #destroy()} once the engine is no longer needed to drop the expanded master key.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class KeyDerivationEngine implements Destroyable {
+
+    private static final String AES_ECB_ALGORITHM = "AES/ECB/NoPadding";
+    private static final int BLOCK_SIZE = 16;
+
+    /**
+     * Cache of cipher engines used for one-shot key derivation.
+     */
+    private static final CryptoEngineCache<Cipher> cipherEngines = new CryptoEngineCache<>(Cipher::getInstance);
+
+    private final Cipher cipher;
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private boolean destroyed;
+
+    /**
+     * Construct a key derivation engine for given master key.
+     *
+     * @param masterKey Master key KEY_MASTER used for derivation.
+     * @throws InvalidKeyException In case master key is invalid.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public KeyDerivationEngine(SecretKey masterKey) throws InvalidKeyException, CryptoProviderException {
+        try {
+            cipher = Cipher.getInstance(AES_ECB_ALGORITHM, PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
+            cipher.init(Cipher.ENCRYPT_MODE, masterKey);
+        } catch (NoSuchAlgorithmException | NoSuchProviderException | NoSuchPaddingException ex) {
+            throw new CryptoProviderException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Construct a key derivation engine for given master key bytes.
+     *
+     * @param masterKeyBytes Bytes of master key KEY_MASTER used for derivation.
+     * @throws InvalidKeyException In case master key is invalid.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public KeyDerivationEngine(byte[] masterKeyBytes) throws InvalidKeyException, CryptoProviderException {
+        this(new SecretKeySpec(masterKeyBytes, "AES"));
+    }
+
+    /**
+     * Derive a secret key with given index from the master key.
+     *
+     * @param index A byte array index of the key.
+     * @return A new derived key from the master key with given index.
+     * @throws GenericCryptoException In case key derivation fails.
+     */
+    public SecretKey deriveSecretKey(byte[] index) throws GenericCryptoException {
+        return PowerAuthConfiguration.INSTANCE.getKeyConvertor().convertBytesToSharedSecretKey(deriveKeyBytes(index));
+    }
+
+    /**
+     * Derive bytes of a secret key with given index from the master key.
+     *
+     * @param index A byte array index of the key.
+     * @return Bytes of a new derived key from the master key with given index.
+     * @throws GenericCryptoException In case key derivation fails.
+     */
+    public byte[] deriveKeyBytes(byte[] index) throws GenericCryptoException {
+        final byte[] keyBytes = new byte[BLOCK_SIZE];
+        deriveKeyBytes(index, keyBytes, 0);
+        return keyBytes;
+    }
+
+    /**
+     * Derive bytes of a secret key with given index from the master key and store them in the output array.
+     * The output array must have at least 16 bytes available after the offset.
+     *
+     * @param index A byte array index of the key.
+     * @param output Array for the derived key bytes.
+     * @param outputOffset Offset in the output array where the derived key bytes are stored.
+     * @throws GenericCryptoException In case key derivation fails.
+     */
+    public void deriveKeyBytes(byte[] index, byte[] output, int outputOffset) throws GenericCryptoException {
+        if (destroyed) {
+            throw new GenericCryptoException("Key derivation engine was destroyed");
+        }
+        prepareBlock(index, block, 0);
+        encryptBlock(cipher, block, 0, output, outputOffset);
+    }
+
+    /**
+     * Destroy the engine. The cipher is re-initialized with a zero key, so that the key schedule expanded
+     * from the master key is no longer referenced, and subsequent key derivations fail.
+     */
+    @Override
+    public void destroy() {
+        destroyed = true;
+        Arrays.fill(block, (byte) 0);
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(new byte[BLOCK_SIZE], "AES"));
+        } catch (InvalidKeyException ex) {
+            // Zero key of valid length is always accepted
+        }
+    }
+
+    /**
+     * Get whether the engine was destroyed.
+     *
+     * @return True in case the engine was destroyed.
+     */
+    @Override
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
+    /**
+     * Derive a secret key with given index from a master key without creating a dedicated engine. Use this
+     * method for master keys which are used for a single derivation only.
+     *
+     * @param masterKey Master key KEY_MASTER used for derivation.
+     * @param index A byte array index of the key.
+     * @return A new derived key from the master key with given index.
+     * @throws InvalidKeyException In case master key is invalid.
+     * @throws GenericCryptoException In case key derivation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public static SecretKey deriveSecretKey(SecretKey masterKey, byte[] index) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
+        final Cipher cipher = cipherEngines.getEngine(AES_ECB_ALGORITHM, PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
+        cipher.init(Cipher.ENCRYPT_MODE, masterKey);
+        final byte[] keyBytes = new byte[BLOCK_SIZE];
+        prepareBlock(index, keyBytes, 0);
+        encryptBlock(cipher, keyBytes, 0, keyBytes, 0);
+        return PowerAuthConfiguration.INSTANCE.getKeyConvertor().convertBytesToSharedSecretKey(keyBytes);
+    }
+
+    /**
+     * Prepare the first plaintext block of AES/CBC/PKCS7Padding encryption of the index.
+     *
+     * @param index A byte array index of the key.
+     * @param block Array for the block.
+     * @param offset Offset of the block in the array.
+     */
+    private static void prepareBlock(byte[] index, byte[] block, int offset) {
+        if (index.length >= BLOCK_SIZE) {
+            System.arraycopy(index, 0, block, offset, BLOCK_SIZE);
+        } else {
+            System.arraycopy(index, 0, block, offset, index.length);
+            final byte padding = (byte) (BLOCK_SIZE - index.length);
+            for (int i = offset + index.length; i < offset + BLOCK_SIZE; i++) {
+                block[i] = padding;
+            }
+        }
+    }
+
+    /**
+     * Encrypt a single block using an initialized cipher.
+     *
+     * @param cipher Cipher initialized with the master key.
+     * @param input Array with the input block.
+     * @param inputOffset Offset of the input block.
+     * @param output Array for the output block.
+     * @param outputOffset Offset of the output block.
+     * @throws GenericCryptoException In case encryption fails.
+     */
+    private static void encryptBlock(Cipher cipher, byte[] input, int inputOffset, byte[] output, int outputOffset) throws GenericCryptoException {
+        try {
+            cipher.doFinal(input, inputOffset, BLOCK_SIZE, output, outputOffset);
+        } catch (ShortBufferException | IllegalBlockSizeException | BadPaddingException ex) {
+            throw new GenericCryptoException(ex.getMessage(), ex);
+        }
+    }
+
+}
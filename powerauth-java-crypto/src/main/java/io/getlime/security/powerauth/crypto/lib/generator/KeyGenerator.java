@@ -18,7 +18,7 @@ package io.getlime.security.powerauth.crypto.lib.generator;
 
 import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
 import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
-import io.getlime.security.powerauth.crypto.lib.util.AESEncryptionUtils;
+import io.getlime.security.powerauth.crypto.lib.util.CryptoEngineCache;
 import io.getlime.security.powerauth.crypto.lib.util.HMACHashUtilities;
 import io.getlime.security.powerauth.provider.CryptoProviderUtil;
 import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
@@ -26,6 +26,7 @@ import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
 import javax.crypto.KeyAgreement;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.security.*;
@@ -43,7 +44,17 @@ import java.util.Arrays;
  */
 public class KeyGenerator {
 
-    private final SecureRandom random = new SecureRandom();
+    private static final String ECDH_ALGORITHM = "ECDH";
+
+    /**
+     * Length of the ECDH shared secret for P256r1 curve in bytes.
+     */
+    private static final int SHARED_SECRET_LENGTH = 32;
+
+    /**
+     * Cache of ECDH key agreement engines, the engines are initialized with a private key for each agreement.
+     */
+    private static final CryptoEngineCache<KeyAgreement> keyAgreementEngines = new CryptoEngineCache<>(KeyAgreement::getInstance);
 
     /**
      * Generate a new ECDH key pair using P256r1 curve.
@@ -55,13 +66,29 @@ public class KeyGenerator {
         try {
             // we assume BouncyCastle provider
             KeyPairGenerator kpg = KeyPairGenerator.getInstance("ECDH", PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
-            kpg.initialize(new ECGenParameterSpec("secp256r1"));
+            kpg.initialize(new ECGenParameterSpec("secp256r1"), RandomSource.getSecureRandom());
             return kpg.generateKeyPair();
         } catch (NoSuchAlgorithmException | NoSuchProviderException | InvalidAlgorithmParameterException ex) {
             throw new CryptoProviderException(ex.getMessage(), ex);
         }
     }
 
+    /**
+     * Get a new ECDH key pair using P256r1 curve for a single ephemeral use. The key pair is taken from the
+     * key pair pool in case it is configured, otherwise a new key pair is generated.
+     *
+     * @return A new key pair instance.
+     * @throws CryptoProviderException In case key cryptography provider is incorrectly initialized.
+     * @see KeyPairPool
+     */
+    public KeyPair generateEphemeralKeyPair() throws CryptoProviderException {
+        final KeyPairPool keyPairPool = PowerAuthConfiguration.INSTANCE.getKeyPairPool();
+        if (keyPairPool != null) {
+            return keyPairPool.take();
+        }
+        return generateKeyPair();
+    }
+
     /**
      * Computes a pre-shared key for given private key and public key (ECDH).
      *
@@ -75,19 +102,71 @@ public class KeyGenerator {
      */
     public SecretKey computeSharedKey(PrivateKey privateKey, PublicKey publicKey, boolean keep32b) throws InvalidKeyException, CryptoProviderException {
         try {
-            KeyAgreement keyAgreement = KeyAgreement.getInstance("ECDH", PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
-            keyAgreement.init(privateKey);
-            keyAgreement.doPhase(publicKey, true);
-            final byte[] sharedSecret = keyAgreement.generateSecret();
-            final byte[] resultSecret;
+            return PowerAuthConfiguration.INSTANCE.getKeyConvertor().convertBytesToSharedSecretKey(computeSharedSecret(privateKey, publicKey, keep32b));
+        } catch (GenericCryptoException ex) {
+            throw new InvalidKeyException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Computes raw bytes of a pre-shared key for given private key and public key (ECDH). Use this method
+     * instead of {@link #computeSharedKey(PrivateKey, PublicKey, boolean)} when the key bytes are processed
+     * further, for example by a KDF.
+     *
+     * @param privateKey A private key.
+     * @param publicKey A public key.
+     * @param keep32b Flag that indicates if the key should be kept 32 byte long (in case value is true), or shortened
+     *                to 16 byte key using byte-by-byte xor operation.
+     * @return Bytes of the pre-shared key.
+     * @throws InvalidKeyException One of the provided keys are not valid keys.
+     * @throws GenericCryptoException In case key agreement fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public byte[] computeSharedSecret(PrivateKey privateKey, PublicKey publicKey, boolean keep32b) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
+        final byte[] sharedSecret = new byte[keep32b ? SHARED_SECRET_LENGTH : SHARED_SECRET_LENGTH / 2];
+        computeSharedSecret(privateKey, publicKey, keep32b, sharedSecret, 0);
+        return sharedSecret;
+    }
+
+    /**
+     * Computes raw bytes of a pre-shared key for given private key and public key (ECDH) and stores them in
+     * the output array starting at given offset. The output array must have at least 32 bytes available after
+     * the offset in case the 32 byte key is kept, or 16 bytes otherwise.
+     *
+     * @param privateKey A private key.
+     * @param publicKey A public key.
+     * @param keep32b Flag that indicates if the key should be kept 32 byte long (in case value is true), or shortened
+     *                to 16 byte key using byte-by-byte xor operation.
+     * @param output Array for the pre-shared key bytes.
+     * @param outputOffset Offset in the output array where the pre-shared key bytes are stored.
+     * @return Number of bytes stored in the output array.
+     * @throws InvalidKeyException One of the provided keys are not valid keys.
+     * @throws GenericCryptoException In case key agreement fails or the output array is too small.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public int computeSharedSecret(PrivateKey privateKey, PublicKey publicKey, boolean keep32b, byte[] output, int outputOffset) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
+        final int length = keep32b ? SHARED_SECRET_LENGTH : SHARED_SECRET_LENGTH / 2;
+        if (outputOffset < 0 || output.length - outputOffset < length) {
+            throw new GenericCryptoException("Output array is too small");
+        }
+        final KeyAgreement keyAgreement = keyAgreementEngines.getEngine(ECDH_ALGORITHM, PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
+        keyAgreement.init(privateKey);
+        keyAgreement.doPhase(publicKey, true);
+        try {
             if (keep32b) {
-                resultSecret = sharedSecret;
-            } else {
-                resultSecret = this.convert32Bto16B(sharedSecret);
+                return keyAgreement.generateSecret(output, outputOffset);
             }
-            return PowerAuthConfiguration.INSTANCE.getKeyConvertor().convertBytesToSharedSecretKey(resultSecret);
-        } catch (NoSuchAlgorithmException | NoSuchProviderException ex) {
-            throw new CryptoProviderException(ex.getMessage(), ex);
+            final byte[] sharedSecret = keyAgreement.generateSecret();
+            if (sharedSecret.length != SHARED_SECRET_LENGTH) {
+                throw new GenericCryptoException("Invalid shared secret length: " + sharedSecret.length);
+            }
+            for (int i = 0; i < length; i++) {
+                output[outputOffset + i] = (byte) (sharedSecret[i] ^ sharedSecret[i + length]);
+            }
+            Arrays.fill(sharedSecret, (byte) 0);
+            return length;
+        } catch (ShortBufferException | IllegalStateException ex) {
+            throw new GenericCryptoException(ex.getMessage(), ex);
         }
     }
 
@@ -124,15 +203,13 @@ public class KeyGenerator {
     }
 
     /**
-     * Generate a new random byte array with given length.
+     * Generate a new random byte array with given length. Random bytes are obtained from {@link RandomSource}.
      *
      * @param len Number of random bytes to be generated.
      * @return An array with len random bytes.
      */
     public byte[] generateRandomBytes(int len) {
-        byte[] randomBytes = new byte[len];
-        random.nextBytes(randomBytes);
-        return randomBytes;
+        return RandomSource.nextBytes(len);
     }
 
     /**
@@ -151,6 +228,8 @@ public class KeyGenerator {
      * BYTES = index, total 16 bytes
      * KEY_SHARED[BYTES] = AES(BYTES, KEY_MASTER)
      *
+     * <p>Use {@link KeyDerivationEngine} when deriving several keys from the same master key.
+     *
      * @param secret A master shared key.
      * @param index A byte array index of the key.
      * @return A new derived key from a master key with given index.
@@ -159,10 +238,7 @@ public class KeyGenerator {
      * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
      */
     public SecretKey deriveSecretKey(SecretKey secret, byte[] index) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
-        AESEncryptionUtils aes = new AESEncryptionUtils();
-        byte[] iv = new byte[16];
-        byte[] encryptedBytes = aes.encrypt(index, iv, secret);
-        return PowerAuthConfiguration.INSTANCE.getKeyConvertor().convertBytesToSharedSecretKey(Arrays.copyOf(encryptedBytes, 16));
+        return KeyDerivationEngine.deriveSecretKey(secret, index);
     }
 
     /**
@@ -0,0 +1,206 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.lib.generator;
+
+import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
+
+import java.security.KeyPair;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of pre-generated EC key pairs for ephemeral use, such as ECIES envelope keys. The pool is filled
+ * by a background thread up to its configured depth, so that a request thread usually only takes a ready
+ * key pair instead of generating it.
+ *
+ * <p>Each pooled key pair is removed from the pool when it is handed out, so it is never used twice. When
+ * the pool is empty, a key pair is generated synchronously on the calling thread. Key pairs from the pool
+ * must not be used as long-lived keys, since they are kept in memory before use.
+ *
+ * <p>In case key pair generation fails in the background thread, for example because the cryptography provider
+ * is not configured yet, the thread retries with an increasing delay. The thread is restarted on the next
+ * {@link #take()} call in case it ended unexpectedly. Use {@link #isAlive()} and {@link #getFailureCount()}
+ * to monitor the pool.
+ *
+ * <p>The pool is enabled by setting it using {@link io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration#setKeyPairPool(KeyPairPool)},
+ * key pairs are then obtained using {@link KeyGenerator#generateEphemeralKeyPair()}. Call {@link #close()} to
+ * stop the background thread when the pool is no longer needed.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class KeyPairPool implements AutoCloseable {
+
+    /**
+     * Source of key pairs for the pool.
+     */
+    @FunctionalInterface
+    public interface KeyPairSource {
+
+        /**
+         * Generate a new key pair. The method is called from the background thread which fills the pool
+         * and from threads which take a key pair while the pool is empty.
+         *
+         * @return New key pair.
+         * @throws CryptoProviderException In case key cryptography provider is incorrectly initialized.
+         */
+        KeyPair generateKeyPair() throws CryptoProviderException;
+    }
+
+    private static final long MIN_RETRY_DELAY_MILLIS = 100;
+    private static final long MAX_RETRY_DELAY_MILLIS = 10_000;
+
+    private final KeyPairSource keyPairSource;
+    private final BlockingQueue<KeyPair> keyPairs;
+    private final AtomicLong failureCount = new AtomicLong();
+    private Thread refillThread;
+    private volatile boolean closed;
+    private volatile Throwable lastFailure;
+
+    /**
+     * Construct a key pair pool with given depth and start the background thread which fills it with key pairs
+     * generated using {@link KeyGenerator#generateKeyPair()}.
+     *
+     * @param depth Maximum number of pre-generated key pairs.
+     */
+    public KeyPairPool(int depth) {
+        this(depth, new KeyGenerator()::generateKeyPair);
+    }
+
+    /**
+     * Construct a key pair pool with given depth and key pair source and start the background thread which
+     * fills it.
+     *
+     * @param depth Maximum number of pre-generated key pairs.
+     * @param keyPairSource Source of key pairs.
+     */
+    public KeyPairPool(int depth, KeyPairSource keyPairSource) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Invalid key pair pool depth: " + depth);
+        }
+        if (keyPairSource == null) {
+            throw new IllegalArgumentException("Missing key pair source");
+        }
+        this.keyPairSource = keyPairSource;
+        this.keyPairs = new LinkedBlockingQueue<>(depth);
+        // All fields are assigned, the thread is started as the last step of construction
+        startRefillThread();
+    }
+
+    /**
+     * Take a key pair from the pool, or generate a new key pair in case the pool is empty.
+     *
+     * @return Key pair which was not handed out before.
+     * @throws CryptoProviderException In case key cryptography provider is incorrectly initialized.
+     */
+    public KeyPair take() throws CryptoProviderException {
+        final KeyPair keyPair = keyPairs.poll();
+        if (keyPair != null) {
+            return keyPair;
+        }
+        if (!closed && !isAlive()) {
+            startRefillThread();
+        }
+        return keyPairSource.generateKeyPair();
+    }
+
+    /**
+     * Get whether the background thread which fills the pool is running.
+     *
+     * @return True in case the pool is filled in the background.
+     */
+    public synchronized boolean isAlive() {
+        return refillThread != null && refillThread.isAlive();
+    }
+
+    /**
+     * Get number of failed key pair generations in the background thread.
+     *
+     * @return Number of failed key pair generations.
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * Get the last failure of key pair generation in the background thread.
+     *
+     * @return Last failure, or null in case key pair generation did not fail.
+     */
+    public Throwable getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Get number of key pairs currently available in the pool.
+     *
+     * @return Number of available key pairs.
+     */
+    public int size() {
+        return keyPairs.size();
+    }
+
+    /**
+     * Stop the background thread and discard available key pairs. Key pairs taken after closing the pool
+     * are generated synchronously.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        refillThread.interrupt();
+        keyPairs.clear();
+    }
+
+    /**
+     * Start the background thread which fills the pool, unless the pool is closed or the thread is running.
+     */
+    private synchronized void startRefillThread() {
+        if (closed || (refillThread != null && refillThread.isAlive())) {
+            return;
+        }
+        refillThread = new Thread(this::refill, "powerauth-key-pair-pool");
+        refillThread.setDaemon(true);
+        refillThread.start();
+    }
+
+    /**
+     * Generate key pairs until the thread is interrupted, waiting while the pool is full. In case key pair
+     * generation fails, the failure is recorded and generation is retried after an increasing delay.
+     */
+    private void refill() {
+        long retryDelay = MIN_RETRY_DELAY_MILLIS;
+        try {
+            while (!closed && !Thread.currentThread().isInterrupted()) {
+                final KeyPair keyPair;
+                try {
+                    keyPair = keyPairSource.generateKeyPair();
+                } catch (CryptoProviderException | RuntimeException ex) {
+                    failureCount.incrementAndGet();
+                    lastFailure = ex;
+                    Thread.sleep(retryDelay);
+                    retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MILLIS);
+                    continue;
+                }
+                retryDelay = MIN_RETRY_DELAY_MILLIS;
+                keyPairs.put(keyPair);
+            }
+        } catch (InterruptedException ex) {
+            // Pool is closed
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.lib.generator;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Process-wide source of random bytes. Each thread uses its own self-seeded DRBG instance, so that threads do not
+ * contend on a shared generator lock and no generator needs to be created and seeded per request.
+ *
+ * <p>Requests for 16 and 32 bytes, used for keys and nonces, are served from a small per-thread buffer which is
+ * refilled by a single call to the DRBG. Bytes are erased from the buffer once they are handed out, so each random
+ * value is returned only once.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public final class RandomSource {
+
+    private static final int BUFFER_SIZE = 256;
+
+    /**
+     * Preferred algorithms of per-thread generators. DRBG is available since Java 9, SHA1PRNG is used on Java 8,
+     * where the default generator reads from a process-wide synchronized source.
+     */
+    private static final String[] ALGORITHMS = {"DRBG", "SHA1PRNG"};
+
+    private static final ThreadLocal<ThreadRandom> threadRandom = ThreadLocal.withInitial(ThreadRandom::new);
+
+    private RandomSource() {
+    }
+
+    /**
+     * Get a secure random generator owned by the current thread. The generator must not be passed to other threads.
+     *
+     * @return Secure random generator of the current thread.
+     */
+    public static SecureRandom getSecureRandom() {
+        return threadRandom.get().random;
+    }
+
+    /**
+     * Generate a new random byte array with given length.
+     *
+     * @param length Number of random bytes to be generated.
+     * @return An array with random bytes.
+     */
+    public static byte[] nextBytes(int length) {
+        final ThreadRandom random = threadRandom.get();
+        if (length == 16 || length == 32) {
+            return random.nextBufferedBytes(length);
+        }
+        final byte[] bytes = new byte[length];
+        random.random.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Create a new self-seeded secure random generator using the first available preferred algorithm.
+     *
+     * @return New secure random generator.
+     */
+    private static SecureRandom createSecureRandom() {
+        for (String algorithm : ALGORITHMS) {
+            try {
+                return SecureRandom.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException ex) {
+                // Try the next algorithm
+            }
+        }
+        return new SecureRandom();
+    }
+
+    /**
+     * Random generator and buffer of random bytes owned by a single thread.
+     */
+    private static final class ThreadRandom {
+
+        private final SecureRandom random = createSecureRandom();
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position = BUFFER_SIZE;
+
+        /**
+         * Get random bytes from the buffer, refill the buffer when it does not contain enough bytes.
+         *
+         * @param length Number of random bytes, at most the buffer size.
+         * @return An array with random bytes.
+         */
+        private byte[] nextBufferedBytes(int length) {
+            if (position + length > BUFFER_SIZE) {
+                random.nextBytes(buffer);
+                position = 0;
+            }
+            final byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+            Arrays.fill(buffer, position, position + length, (byte) 0);
+            position += length;
+            return bytes;
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.lib.model;
+
+/**
+ * Class representing result of PowerAuth signature verification with counter look-ahead. In batch verification
+ * the result may also represent a verification which failed with an error, see {@link #getError()}.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class SignatureVerificationResult {
+
+    private static final SignatureVerificationResult INVALID = new SignatureVerificationResult(false, -1, null, null);
+
+    private final boolean valid;
+    private final int counterOffset;
+    private final byte[] ctrData;
+    private final byte[] nextCtrData;
+    private final Exception error;
+
+    /**
+     * Constructor with verification result details.
+     * @param valid Whether the signature is valid.
+     * @param counterOffset Offset of the matching counter value from the expected counter value, -1 for invalid signature.
+     * @param ctrData Counter data which matched the signature, null for invalid signature.
+     * @param nextCtrData Counter data following the matching counter data, null for invalid signature.
+     */
+    public SignatureVerificationResult(boolean valid, int counterOffset, byte[] ctrData, byte[] nextCtrData) {
+        this(valid, counterOffset, ctrData, nextCtrData, null);
+    }
+
+    private SignatureVerificationResult(boolean valid, int counterOffset, byte[] ctrData, byte[] nextCtrData, Exception error) {
+        this.valid = valid;
+        this.counterOffset = counterOffset;
+        this.ctrData = ctrData;
+        this.nextCtrData = nextCtrData;
+        this.error = error;
+    }
+
+    /**
+     * Get result for an invalid signature.
+     * @return Result for an invalid signature.
+     */
+    public static SignatureVerificationResult invalid() {
+        return INVALID;
+    }
+
+    /**
+     * Get result for a signature which could not be verified due to an error. The signature is not valid.
+     * @param error Error which occurred during verification.
+     * @return Result for a failed verification.
+     */
+    public static SignatureVerificationResult failed(Exception error) {
+        return new SignatureVerificationResult(false, -1, null, null, error);
+    }
+
+    /**
+     * Get whether the signature is valid.
+     * @return True in case the signature matches any of the verified counter values.
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Get offset of the matching counter value from the expected counter value. Offset 0 means that
+     * the client used the expected counter value, offset 1 means the client is one step ahead, etc.
+     * @return Counter offset, or -1 in case the signature is invalid.
+     */
+    public int getCounterOffset() {
+        return counterOffset;
+    }
+
+    /**
+     * Get counter data which matched the signature.
+     * @return Matching counter data, or null in case the signature is invalid.
+     */
+    public byte[] getCtrData() {
+        return ctrData;
+    }
+
+    /**
+     * Get counter data following the matching counter data. This value should be stored as the
+     * expected counter data for the next signature.
+     * @return Next counter data, or null in case the signature is invalid.
+     */
+    public byte[] getNextCtrData() {
+        return nextCtrData;
+    }
+
+    /**
+     * Get error which occurred during verification, for example due to invalid counter data or missing
+     * signature keys. A signature with an error is never valid.
+     * @return Verification error, or null in case the signature was verified.
+     */
+    public Exception getError() {
+        return error;
+    }
+}
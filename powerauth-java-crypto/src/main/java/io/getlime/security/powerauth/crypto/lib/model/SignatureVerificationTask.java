@@ -0,0 +1,91 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.lib.model;
+
+import io.getlime.security.powerauth.crypto.lib.util.HmacKeyContext;
+
+import java.util.List;
+
+/**
+ * Class representing a single PowerAuth signature verification in a batch.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class SignatureVerificationTask {
+
+    private final byte[] data;
+    private final String signature;
+    private final List<HmacKeyContext> signatureKeyContexts;
+    private final byte[] ctrData;
+    private final int tolerance;
+
+    /**
+     * Constructor with verification task details.
+     * @param data Signed data.
+     * @param signature Signature for the data.
+     * @param signatureKeyContexts HMAC key contexts of keys used for signature, the contexts may be shared by several tasks.
+     * @param ctrData Expected hash based counter data.
+     * @param tolerance Number of counter values to try, starting with the expected counter data.
+     */
+    public SignatureVerificationTask(byte[] data, String signature, List<HmacKeyContext> signatureKeyContexts, byte[] ctrData, int tolerance) {
+        this.data = data;
+        this.signature = signature;
+        this.signatureKeyContexts = signatureKeyContexts;
+        this.ctrData = ctrData;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Get signed data.
+     * @return Signed data.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Get signature for the data.
+     * @return Signature for the data.
+     */
+    public String getSignature() {
+        return signature;
+    }
+
+    /**
+     * Get HMAC key contexts of keys used for signature.
+     * @return HMAC key contexts of keys used for signature.
+     */
+    public List<HmacKeyContext> getSignatureKeyContexts() {
+        return signatureKeyContexts;
+    }
+
+    /**
+     * Get expected hash based counter data.
+     * @return Expected counter data.
+     */
+    public byte[] getCtrData() {
+        return ctrData;
+    }
+
+    /**
+     * Get number of counter values to try.
+     * @return Number of counter values to try.
+     */
+    public int getTolerance() {
+        return tolerance;
+    }
+}
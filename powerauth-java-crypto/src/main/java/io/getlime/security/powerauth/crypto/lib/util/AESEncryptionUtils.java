@@ -22,10 +22,9 @@ import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
 
 import javax.crypto.*;
 import javax.crypto.spec.IvParameterSpec;
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
 
 /**
  * A utility class for AES encryption.
@@ -35,6 +34,11 @@ import java.security.NoSuchProviderException;
  */
 public class AESEncryptionUtils {
 
+    /**
+     * Cache of cipher engines per transformation, the engines are re-initialized for each operation.
+     */
+    private static final CryptoEngineCache<Cipher> cipherEngines = new CryptoEngineCache<>(Cipher::getInstance);
+
     /**
      * Encrypt given data using given padding with given initialization
      * vector and secret key.
@@ -50,12 +54,9 @@ public class AESEncryptionUtils {
      */
     public byte[] encrypt(byte[] bytes, byte[] iv, SecretKey secret, String padding) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
         try {
-            Cipher cipherForCryptoResponse = Cipher.getInstance(padding, PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
-            cipherForCryptoResponse.init(Cipher.ENCRYPT_MODE, secret, new IvParameterSpec(iv));
+            Cipher cipherForCryptoResponse = getCipher(Cipher.ENCRYPT_MODE, iv, secret, padding);
             return cipherForCryptoResponse.doFinal(bytes);
-        } catch (NoSuchAlgorithmException | NoSuchProviderException | InvalidAlgorithmParameterException ex) {
-            throw new CryptoProviderException(ex.getMessage(), ex);
-        } catch (IllegalBlockSizeException | BadPaddingException | NoSuchPaddingException ex) {
+        } catch (IllegalBlockSizeException | BadPaddingException ex) {
             throw new GenericCryptoException(ex.getMessage(), ex);
         }
     }
@@ -76,6 +77,60 @@ public class AESEncryptionUtils {
         return this.encrypt(bytes, iv, secret, "AES/CBC/PKCS7Padding");
     }
 
+    /**
+     * Encrypt data from the input buffer using given padding with given initialization vector and secret key
+     * and store the result in the output buffer. Buffers may be heap or direct buffers. All remaining input
+     * bytes are processed, the position of the input buffer is advanced to its limit and the position of the
+     * output buffer is advanced by the number of bytes written. When padding is used, the output buffer must
+     * have at least one block (16 bytes) more space remaining than the length of the input data.
+     *
+     * @param input Buffer with bytes to be encrypted.
+     * @param output Buffer for the encrypted bytes.
+     * @param iv Initialization vector.
+     * @param secret Secret signature key.
+     * @param padding Padding to be used, for example "AES/CBC/PKCS7Padding".
+     * @return Number of bytes stored in the output buffer.
+     * @throws InvalidKeyException In case an invalid key is provided.
+     * @throws GenericCryptoException In case encryption fails or the output buffer is too small.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public int encrypt(ByteBuffer input, ByteBuffer output, byte[] iv, SecretKey secret, String padding) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
+        try {
+            Cipher cipherForCryptoResponse = getCipher(Cipher.ENCRYPT_MODE, iv, secret, padding);
+            return cipherForCryptoResponse.doFinal(input, output);
+        } catch (IllegalBlockSizeException | BadPaddingException | ShortBufferException ex) {
+            throw new GenericCryptoException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Encrypt a range of bytes using given padding with given initialization vector and secret key and store
+     * the result in the output array starting at given offset. Input and output may be the same array. When
+     * padding is used, the output array must have at least one block (16 bytes) more space after the offset
+     * than the length of the input data.
+     *
+     * @param input Array with bytes to be encrypted.
+     * @param inputOffset Offset of the bytes to be encrypted.
+     * @param inputLength Number of bytes to be encrypted.
+     * @param output Array for the encrypted bytes.
+     * @param outputOffset Offset in the output array where the encrypted bytes are stored.
+     * @param iv Initialization vector.
+     * @param secret Secret signature key.
+     * @param padding Padding to be used, for example "AES/CBC/PKCS7Padding".
+     * @return Number of bytes stored in the output array.
+     * @throws InvalidKeyException In case an invalid key is provided.
+     * @throws GenericCryptoException In case encryption fails or the output array is too small.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public int encrypt(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, byte[] iv, SecretKey secret, String padding) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
+        try {
+            Cipher cipherForCryptoResponse = getCipher(Cipher.ENCRYPT_MODE, iv, secret, padding);
+            return cipherForCryptoResponse.doFinal(input, inputOffset, inputLength, output, outputOffset);
+        } catch (IllegalBlockSizeException | BadPaddingException | ShortBufferException ex) {
+            throw new GenericCryptoException(ex.getMessage(), ex);
+        }
+    }
+
     /**
      * Decrypt given data using give padding with given initialization
      * vector and secret key.
@@ -91,12 +146,9 @@ public class AESEncryptionUtils {
      */
     public byte[] decrypt(byte[] bytes, byte[] iv, SecretKey secret, String padding) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
         try {
-            Cipher cipherForCryptoResponse = Cipher.getInstance(padding, PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
-            cipherForCryptoResponse.init(Cipher.DECRYPT_MODE, secret, new IvParameterSpec(iv));
+            Cipher cipherForCryptoResponse = getCipher(Cipher.DECRYPT_MODE, iv, secret, padding);
             return cipherForCryptoResponse.doFinal(bytes);
-        } catch (NoSuchAlgorithmException | NoSuchProviderException | InvalidAlgorithmParameterException ex) {
-            throw new CryptoProviderException(ex.getMessage(), ex);
-        } catch (IllegalBlockSizeException | BadPaddingException | NoSuchPaddingException ex) {
+        } catch (IllegalBlockSizeException | BadPaddingException ex) {
             throw new GenericCryptoException(ex.getMessage(), ex);
         }
     }
@@ -117,4 +169,79 @@ public class AESEncryptionUtils {
         return this.decrypt(bytes, iv, secret, "AES/CBC/PKCS7Padding");
     }
 
+    /**
+     * Decrypt data from the input buffer using given padding with given initialization vector and secret key
+     * and store the result in the output buffer. Buffers may be heap or direct buffers. All remaining input
+     * bytes are processed, the position of the input buffer is advanced to its limit and the position of the
+     * output buffer is advanced by the number of bytes written. The output buffer must have at least as much
+     * space remaining as the length of the encrypted data.
+     *
+     * @param input Buffer with encrypted bytes to be decrypted.
+     * @param output Buffer for the decrypted bytes.
+     * @param iv Initialization vector.
+     * @param secret Secret signature key.
+     * @param padding Padding to be used, for example "AES/CBC/PKCS7Padding".
+     * @return Number of bytes stored in the output buffer.
+     * @throws InvalidKeyException In case an invalid key is provided.
+     * @throws GenericCryptoException In case decryption fails or the output buffer is too small.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public int decrypt(ByteBuffer input, ByteBuffer output, byte[] iv, SecretKey secret, String padding) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
+        try {
+            Cipher cipherForCryptoResponse = getCipher(Cipher.DECRYPT_MODE, iv, secret, padding);
+            return cipherForCryptoResponse.doFinal(input, output);
+        } catch (IllegalBlockSizeException | BadPaddingException | ShortBufferException ex) {
+            throw new GenericCryptoException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Decrypt a range of bytes using given padding with given initialization vector and secret key and store
+     * the result in the output array starting at given offset. Input and output may be the same array. The
+     * output array must have at least as much space after the offset as the length of the encrypted data.
+     *
+     * @param input Array with encrypted bytes to be decrypted.
+     * @param inputOffset Offset of the bytes to be decrypted.
+     * @param inputLength Number of bytes to be decrypted.
+     * @param output Array for the decrypted bytes.
+     * @param outputOffset Offset in the output array where the decrypted bytes are stored.
+     * @param iv Initialization vector.
+     * @param secret Secret signature key.
+     * @param padding Padding to be used, for example "AES/CBC/PKCS7Padding".
+     * @return Number of bytes stored in the output array.
+     * @throws InvalidKeyException In case an invalid key is provided.
+     * @throws GenericCryptoException In case decryption fails or the output array is too small.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public int decrypt(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, byte[] iv, SecretKey secret, String padding) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
+        try {
+            Cipher cipherForCryptoResponse = getCipher(Cipher.DECRYPT_MODE, iv, secret, padding);
+            return cipherForCryptoResponse.doFinal(input, inputOffset, inputLength, output, outputOffset);
+        } catch (IllegalBlockSizeException | BadPaddingException | ShortBufferException ex) {
+            throw new GenericCryptoException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Get a cipher engine owned by the current thread and initialize it for given operation. The engine
+     * must be used only within the calling method, see {@link CryptoEngineCache}.
+     *
+     * @param opmode Cipher operation mode, {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}.
+     * @param iv Initialization vector.
+     * @param secret Secret key.
+     * @param padding Padding to be used, for example "AES/CBC/PKCS7Padding".
+     * @return Initialized cipher engine.
+     * @throws InvalidKeyException In case an invalid key is provided.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    private Cipher getCipher(int opmode, byte[] iv, SecretKey secret, String padding) throws InvalidKeyException, CryptoProviderException {
+        try {
+            Cipher cipher = cipherEngines.getEngine(padding, PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
+            cipher.init(opmode, secret, new IvParameterSpec(iv));
+            return cipher;
+        } catch (InvalidAlgorithmParameterException ex) {
+            throw new CryptoProviderException(ex.getMessage(), ex);
+        }
+    }
+
 }
@@ -0,0 +1,93 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.lib.util;
+
+import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
+
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Thread-confined cache of JCA engine instances (for example {@link javax.crypto.Mac}). Looking up an engine
+ * using the JCA goes through the provider registry and reflection, which is expensive compared to the actual
+ * cryptographic operation for short inputs. This cache keeps one engine per thread, algorithm and provider.
+ *
+ * <p>Engines obtained from this cache are owned by the calling thread. Callers must fully (re-)initialize the
+ * engine before each use and must not keep the engine after the operation is completed, since the next call
+ * on the same thread receives the same instance.
+ *
+ * @param <T> Type of the cached engine.
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class CryptoEngineCache<T> {
+
+    /**
+     * Factory used for looking up a new engine instance.
+     *
+     * @param <T> Type of the engine.
+     */
+    @FunctionalInterface
+    public interface EngineFactory<T> {
+
+        /**
+         * Look up a new engine instance.
+         *
+         * @param algorithm Algorithm name.
+         * @param providerName Provider name, the meaning of null is defined by the factory.
+         * @return New engine instance.
+         * @throws GeneralSecurityException In case the engine is not available.
+         */
+        T getInstance(String algorithm, String providerName) throws GeneralSecurityException;
+
+    }
+
+    private final EngineFactory<T> factory;
+    private final ThreadLocal<Map<String, Map<String, T>>> engines = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * Constructor with engine factory.
+     *
+     * @param factory Factory used for looking up engines missing in the cache.
+     */
+    public CryptoEngineCache(EngineFactory<T> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Get an engine for given algorithm and provider owned by the current thread.
+     *
+     * @param algorithm Algorithm name.
+     * @param providerName Provider name, may be null in case the factory supports it.
+     * @return Engine instance owned by the current thread.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public T getEngine(String algorithm, String providerName) throws CryptoProviderException {
+        final Map<String, T> providerEngines = engines.get().computeIfAbsent(algorithm, k -> new HashMap<>());
+        T engine = providerEngines.get(providerName);
+        if (engine == null) {
+            try {
+                engine = factory.getInstance(algorithm, providerName);
+            } catch (GeneralSecurityException ex) {
+                throw new CryptoProviderException(ex.getMessage(), ex);
+            }
+            providerEngines.put(providerName, engine);
+        }
+        return engine;
+    }
+
+}
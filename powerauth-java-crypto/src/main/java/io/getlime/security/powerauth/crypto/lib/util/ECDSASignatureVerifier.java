@@ -0,0 +1,120 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.lib.util;
+
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.enums.EcdsaSignatureMode;
+import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
+import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+
+/**
+ * Verifier of ECDSA signatures for a fixed public key, such as the application master public key. Each thread
+ * using the verifier owns a signature engine which is initialized for verification with the public key only
+ * once, so the key is not converted and validated by the provider again for each signature. The verifier uses
+ * the provider configured in {@link PowerAuthConfiguration} at the time it was constructed.
+ *
+ * <p>Signatures accepted by the verifier are the same as those accepted by
+ * {@link SignatureUtils#validateECDSASignature(byte[], byte[], PublicKey)}. The verifier can be shared between
+ * threads, keep the instance for as long as the public key is used.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class ECDSASignatureVerifier {
+
+    private final PublicKey publicKey;
+    private final String providerName;
+    private final ThreadLocal<Signature> signatureEngines = new ThreadLocal<>();
+
+    /**
+     * Construct a verifier for given public key.
+     *
+     * @param publicKey Public key for validating signatures.
+     * @throws InvalidKeyException In case invalid key was provided.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public ECDSASignatureVerifier(PublicKey publicKey) throws InvalidKeyException, CryptoProviderException {
+        this.publicKey = publicKey;
+        this.providerName = PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName();
+        // Validate the key using the provider before the verifier is used
+        signatureEngines.set(createSignatureEngine());
+    }
+
+    /**
+     * Get the public key used for validating signatures.
+     *
+     * @return Public key.
+     */
+    public PublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    /**
+     * Validate an ECDSA signature against given data.
+     *
+     * @param signedBytes Bytes that are signed.
+     * @param signature Signature of the bytes.
+     * @return Returns "true" if signature matches, "false" otherwise.
+     * @throws GenericCryptoException In case signature validation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public boolean verify(byte[] signedBytes, byte[] signature) throws GenericCryptoException, CryptoProviderException {
+        Signature ecdsa = signatureEngines.get();
+        if (ecdsa == null) {
+            try {
+                ecdsa = createSignatureEngine();
+            } catch (InvalidKeyException ex) {
+                // The key was accepted by the provider when the verifier was constructed
+                throw new CryptoProviderException(ex.getMessage(), ex);
+            }
+            signatureEngines.set(ecdsa);
+        }
+        try {
+            // Successful verification resets the engine to the state after initialization with the public key
+            ecdsa.update(signedBytes);
+            return ecdsa.verify(signature);
+        } catch (SignatureException ex) {
+            // State of the engine is not defined after a failure, the engine is initialized again on next use
+            signatureEngines.remove();
+            throw new GenericCryptoException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Create a signature engine initialized for verification with the public key.
+     *
+     * @return Initialized signature engine.
+     * @throws InvalidKeyException In case the public key is invalid.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    private Signature createSignatureEngine() throws InvalidKeyException, CryptoProviderException {
+        try {
+            final Signature ecdsa = Signature.getInstance(EcdsaSignatureMode.RANDOM_NONCE.getAlgorithm(), providerName);
+            ecdsa.initVerify(publicKey);
+            return ecdsa;
+        } catch (NoSuchAlgorithmException | NoSuchProviderException ex) {
+            throw new CryptoProviderException(ex.getMessage(), ex);
+        }
+    }
+
+}
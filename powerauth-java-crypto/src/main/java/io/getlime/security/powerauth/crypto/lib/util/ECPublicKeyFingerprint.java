@@ -24,7 +24,6 @@ import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.security.interfaces.ECPublicKey;
 import java.util.Arrays;
 
@@ -51,49 +50,39 @@ public class ECPublicKeyFingerprint {
         if (devicePublicKey == null) {
             throw new GenericCryptoException("Device public key is invalid");
         }
-        try {
-            // Prepare fingerprint data
-            byte[] fingerprintData;
-            switch (activationVersion) {
-                case VERSION_2:
-                    // In version 2 the activation fingerprint is computed from device public key bytes
-                    fingerprintData = toByteArray(devicePublicKey);
-                    break;
+        // Prepare fingerprint data and stream it into the digest
+        final MessageDigest digest = Hash.threadSha256Digest();
+        switch (activationVersion) {
+            case VERSION_2:
+                // In version 2 the activation fingerprint is computed from device public key bytes
+                digest.update(toByteArray(devicePublicKey));
+                break;
 
-                case VERSION_3:
-                    if (serverPublicKey == null) {
-                        throw new GenericCryptoException("Server public key is invalid");
-                    }
-                    if (activationId == null) {
-                        throw new GenericCryptoException("Activation ID is invalid");
-                    }
-                    // In version 3 the activation fingerprint is computed as devicePublicKeyBytes + activationIdBytes + serverPublicKeyBytes
-                    byte[] devicePublicKeyBytes = toByteArray(devicePublicKey);
-                    byte[] activationIdBytes = activationId.getBytes(StandardCharsets.UTF_8);
-                    byte[] serverPublicKeyBytes = toByteArray(serverPublicKey);
-                    ByteBuffer dataBuffer = ByteBuffer.allocate(devicePublicKeyBytes.length + activationIdBytes.length + serverPublicKeyBytes.length);
-                    dataBuffer.put(devicePublicKeyBytes);
-                    dataBuffer.put(activationIdBytes);
-                    dataBuffer.put(serverPublicKeyBytes);
-                    fingerprintData = dataBuffer.array();
-                    break;
+            case VERSION_3:
+                if (serverPublicKey == null) {
+                    throw new GenericCryptoException("Server public key is invalid");
+                }
+                if (activationId == null) {
+                    throw new GenericCryptoException("Activation ID is invalid");
+                }
+                // In version 3 the activation fingerprint is computed as devicePublicKeyBytes + activationIdBytes + serverPublicKeyBytes
+                digest.update(toByteArray(devicePublicKey));
+                digest.update(activationId.getBytes(StandardCharsets.UTF_8));
+                digest.update(toByteArray(serverPublicKey));
+                break;
 
-                default:
-                    throw new GenericCryptoException("Unsupported activation version: "+activationVersion);
-            }
+            default:
+                throw new GenericCryptoException("Unsupported activation version: "+activationVersion);
+        }
 
-            // Calculate fingerprint
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(fingerprintData);
-            if (hash.length < 4) { // assert
-                throw new GenericCryptoException("Invalid digest");
-            }
-            int index = hash.length - 4;
-            int number = (ByteBuffer.wrap(hash).getInt(index) & 0x7FFFFFFF) % (int) (Math.pow(10, PowerAuthConfiguration.FINGERPRINT_LENGTH));
-            return String.format("%0" + PowerAuthConfiguration.SIGNATURE_LENGTH + "d", number);
-        } catch (NoSuchAlgorithmException ex) {
-            throw new CryptoProviderException(ex.getMessage(), ex);
+        // Calculate fingerprint
+        byte[] hash = digest.digest();
+        if (hash.length < 4) { // assert
+            throw new GenericCryptoException("Invalid digest");
         }
+        int index = hash.length - 4;
+        int number = (ByteBuffer.wrap(hash).getInt(index) & 0x7FFFFFFF) % (int) (Math.pow(10, PowerAuthConfiguration.FINGERPRINT_LENGTH));
+        return String.format("%0" + PowerAuthConfiguration.SIGNATURE_LENGTH + "d", number);
     }
 
     /**
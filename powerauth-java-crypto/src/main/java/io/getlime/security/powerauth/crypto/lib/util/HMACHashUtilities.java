@@ -22,10 +22,11 @@ import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
 
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
 
 /**
  * Simple utility class for HMAC-SHA256 algorithm
@@ -34,6 +35,18 @@ import java.security.NoSuchProviderException;
  */
 public class HMACHashUtilities {
 
+    private static final String HMAC_SHA256_ALGORITHM = "HmacSHA256";
+
+    /**
+     * Length of HMAC-SHA256 output in bytes.
+     */
+    public static final int HMAC_SHA256_LENGTH = 32;
+
+    /**
+     * Cache of HMAC-SHA256 engines, the engines are re-keyed for each computation.
+     */
+    private static final CryptoEngineCache<Mac> macEngines = new CryptoEngineCache<>(Mac::getInstance);
+
     /**
      * Compute a HMAC-SHA256 of given data with provided key bytes
      * @param key Key for the HMAC-SHA256 algorithm
@@ -43,16 +56,8 @@ public class HMACHashUtilities {
      * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
      */
     public byte[] hash(byte[] key, byte[] data) throws GenericCryptoException, CryptoProviderException {
-        try {
-            Mac hmacSha256 = Mac.getInstance("HmacSHA256", PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
-            SecretKey hmacKey = new SecretKeySpec(key, "HmacSHA256");
-            hmacSha256.init(hmacKey);
-            return hmacSha256.doFinal(data);
-        } catch (NoSuchAlgorithmException | NoSuchProviderException ex) {
-            throw new CryptoProviderException(ex.getMessage(), ex);
-        } catch (InvalidKeyException ex) {
-            throw new GenericCryptoException(ex.getMessage(), ex);
-        }
+        SecretKey hmacKey = new SecretKeySpec(key, HMAC_SHA256_ALGORITHM);
+        return hash(hmacKey, data);
     }
 
     /**
@@ -65,14 +70,120 @@ public class HMACHashUtilities {
      */
     public byte[] hash(SecretKey hmacKey, byte[] data) throws GenericCryptoException, CryptoProviderException {
         try {
-            Mac hmacSha256 = Mac.getInstance("HmacSHA256", PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
-            hmacSha256.init(hmacKey);
+            Mac hmacSha256 = getMac(hmacKey);
             return hmacSha256.doFinal(data);
-        } catch (NoSuchAlgorithmException | NoSuchProviderException ex) {
-            throw new CryptoProviderException(ex.getMessage(), ex);
         } catch (InvalidKeyException ex) {
             throw new GenericCryptoException(ex.getMessage(), ex);
         }
     }
 
+    /**
+     * Compute a HMAC-SHA256 of data composed of several parts with provided key bytes. The result is the same
+     * as if the HMAC-SHA256 was computed from concatenated parts, however the parts are not copied. Position
+     * of each buffer is advanced to its limit.
+     * @param key Key for the HMAC-SHA256 algorithm
+     * @param data Data parts for the HMAC-SHA256 algorithm.
+     * @return HMAC-SHA256 of given data using given key.
+     * @throws GenericCryptoException In case hash computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public byte[] hash(byte[] key, ByteBuffer... data) throws GenericCryptoException, CryptoProviderException {
+        SecretKey hmacKey = new SecretKeySpec(key, HMAC_SHA256_ALGORITHM);
+        return hash(hmacKey, data);
+    }
+
+    /**
+     * Compute a HMAC-SHA256 of data composed of several parts with provided key. The result is the same
+     * as if the HMAC-SHA256 was computed from concatenated parts, however the parts are not copied. Position
+     * of each buffer is advanced to its limit.
+     * @param hmacKey Key for the HMAC-SHA256 algorithm
+     * @param data Data parts for the HMAC-SHA256 algorithm.
+     * @return HMAC-SHA256 of given data using given key.
+     * @throws GenericCryptoException In case hash computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public byte[] hash(SecretKey hmacKey, ByteBuffer... data) throws GenericCryptoException, CryptoProviderException {
+        try {
+            Mac hmacSha256 = getMac(hmacKey);
+            for (ByteBuffer part : data) {
+                hmacSha256.update(part);
+            }
+            return hmacSha256.doFinal();
+        } catch (InvalidKeyException ex) {
+            throw new GenericCryptoException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Compute a HMAC-SHA256 of a range of bytes with provided key and store the result in the output array
+     * starting at given offset. The output array must have at least {@link #HMAC_SHA256_LENGTH} bytes
+     * available after the offset.
+     * @param hmacKey Key for the HMAC-SHA256 algorithm
+     * @param data Array with data for the HMAC-SHA256 algorithm.
+     * @param offset Offset of the data.
+     * @param length Length of the data.
+     * @param output Array for the HMAC-SHA256 value.
+     * @param outputOffset Offset in the output array where the HMAC-SHA256 value is stored.
+     * @return Number of bytes stored in the output array.
+     * @throws GenericCryptoException In case hash computation fails or the output array is too small.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public int hashInto(SecretKey hmacKey, byte[] data, int offset, int length, byte[] output, int outputOffset) throws GenericCryptoException, CryptoProviderException {
+        try {
+            Mac hmacSha256 = getMac(hmacKey);
+            hmacSha256.update(data, offset, length);
+            hmacSha256.doFinal(output, outputOffset);
+            return HMAC_SHA256_LENGTH;
+        } catch (InvalidKeyException | ShortBufferException ex) {
+            throw new GenericCryptoException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Compute a HMAC-SHA256 of data composed of several parts with provided key and store the result in the
+     * output buffer. Position of each data buffer is advanced to its limit and position of the output buffer
+     * is advanced by {@link #HMAC_SHA256_LENGTH} bytes.
+     * @param hmacKey Key for the HMAC-SHA256 algorithm
+     * @param output Buffer for the HMAC-SHA256 value.
+     * @param data Data parts for the HMAC-SHA256 algorithm.
+     * @return Number of bytes stored in the output buffer.
+     * @throws GenericCryptoException In case hash computation fails or the output buffer is too small.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public int hashInto(SecretKey hmacKey, ByteBuffer output, ByteBuffer... data) throws GenericCryptoException, CryptoProviderException {
+        if (output.remaining() < HMAC_SHA256_LENGTH) {
+            throw new GenericCryptoException("Output buffer is too small");
+        }
+        try {
+            Mac hmacSha256 = getMac(hmacKey);
+            for (ByteBuffer part : data) {
+                hmacSha256.update(part);
+            }
+            if (output.hasArray()) {
+                hmacSha256.doFinal(output.array(), output.arrayOffset() + output.position());
+                ((Buffer) output).position(output.position() + HMAC_SHA256_LENGTH);
+            } else {
+                output.put(hmacSha256.doFinal());
+            }
+            return HMAC_SHA256_LENGTH;
+        } catch (InvalidKeyException | ShortBufferException ex) {
+            throw new GenericCryptoException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Get a HMAC-SHA256 engine owned by the current thread and initialize it with provided key. The engine
+     * must be used only within the calling method, see {@link CryptoEngineCache}.
+     *
+     * @param hmacKey Key for the HMAC-SHA256 algorithm.
+     * @return Initialized HMAC-SHA256 engine.
+     * @throws InvalidKeyException In case provided key is invalid.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    private Mac getMac(SecretKey hmacKey) throws InvalidKeyException, CryptoProviderException {
+        Mac hmacSha256 = macEngines.getEngine(HMAC_SHA256_ALGORITHM, PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
+        hmacSha256.init(hmacKey);
+        return hmacSha256;
+    }
+
 }
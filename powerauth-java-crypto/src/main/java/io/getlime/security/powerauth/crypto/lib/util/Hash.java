@@ -16,8 +16,14 @@
  */
 package io.getlime.security.powerauth.crypto.lib.util;
 
+import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
+import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -28,19 +34,56 @@ import java.security.NoSuchAlgorithmException;
  *
  * - SHA256
  *
+ * <p>Digest engines are cached per thread, so that hashing of short inputs does not pay for a JCA lookup.
+ *
  * @author Petr Dvorak, petr@wultra.com
  */
 public class Hash {
 
+    private static final String SHA256_ALGORITHM = "SHA-256";
+
+    /**
+     * Length of SHA-256 output in bytes.
+     */
+    public static final int SHA256_LENGTH = 32;
+
     /**
-     * Compute hash digest for given data using SHA-256.
-     * @param originalBytes Original bytes to be hashed.
-     * @return Hashed bytes.
-     * @throws NoSuchAlgorithmException In case a provided algorithm does not exist.
+     * Cache of digest engines from the default provider, the engines are reset before each computation.
      */
-    private static byte[] hash(byte[] originalBytes) throws NoSuchAlgorithmException {
-        MessageDigest md = MessageDigest.getInstance("SHA-256");
-        return md.digest(originalBytes);
+    private static final CryptoEngineCache<MessageDigest> digestEngines = new CryptoEngineCache<>((algorithm, providerName) ->
+            providerName == null ? MessageDigest.getInstance(algorithm) : MessageDigest.getInstance(algorithm, providerName));
+
+    /**
+     * Get a new SHA-256 digest engine owned by the caller, for data which is streamed into the digest in several
+     * steps. The engine is cloned from the engine cached for the current thread, which avoids a provider lookup,
+     * and it is not affected by other hash computations on the same thread.
+     * @return New SHA-256 digest engine.
+     * @throws CryptoProviderException In case the SHA-256 algorithm is not available.
+     */
+    public static MessageDigest sha256Digest() throws CryptoProviderException {
+        final MessageDigest digest = threadSha256Digest();
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException ex) {
+            try {
+                return MessageDigest.getInstance(SHA256_ALGORITHM, digest.getProvider());
+            } catch (NoSuchAlgorithmException ex2) {
+                throw new CryptoProviderException(ex2.getMessage(), ex2);
+            }
+        }
+    }
+
+    /**
+     * Get a SHA-256 digest engine owned by the current thread. The engine is reset and it must be used only
+     * within the calling method, since the next call on the same thread returns the same instance, see
+     * {@link CryptoEngineCache}.
+     * @return SHA-256 digest engine owned by the current thread.
+     * @throws CryptoProviderException In case the SHA-256 algorithm is not available.
+     */
+    static MessageDigest threadSha256Digest() throws CryptoProviderException {
+        final MessageDigest digest = digestEngines.getEngine(SHA256_ALGORITHM, null);
+        digest.reset();
+        return digest;
     }
 
     /**
@@ -50,12 +93,101 @@ public class Hash {
      */
     public static byte[] sha256(byte[] originalBytes) {
         try {
-            return hash(originalBytes);
-        } catch (NoSuchAlgorithmException e) {
+            return threadSha256Digest().digest(originalBytes);
+        } catch (CryptoProviderException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Compute SHA256 hash of data composed of several parts. The result is the same as if the hash was
+     * computed from concatenated parts, however the parts are not copied.
+     * @param parts Original bytes parts.
+     * @return SHA256 hash of provided parts.
+     */
+    public static byte[] sha256(byte[]... parts) {
+        try {
+            final MessageDigest digest = threadSha256Digest();
+            for (byte[] part : parts) {
+                digest.update(part);
+            }
+            return digest.digest();
+        } catch (CryptoProviderException e) {
             return null;
         }
     }
 
+    /**
+     * Compute SHA256 hash of data composed of several buffers. The result is the same as if the hash was
+     * computed from concatenated remaining bytes of the buffers. Position of each buffer is advanced to its limit.
+     * @param parts Buffers with original data.
+     * @return SHA256 hash of provided buffers.
+     */
+    public static byte[] sha256(ByteBuffer... parts) {
+        try {
+            final MessageDigest digest = threadSha256Digest();
+            for (ByteBuffer part : parts) {
+                digest.update(part);
+            }
+            return digest.digest();
+        } catch (CryptoProviderException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Compute SHA256 hash of a range of bytes and store the result in the output array starting at given offset.
+     * The output array must have at least {@link #SHA256_LENGTH} bytes available after the offset.
+     * @param data Array with original data.
+     * @param offset Offset of the data.
+     * @param length Length of the data.
+     * @param output Array for the SHA256 hash.
+     * @param outputOffset Offset in the output array where the SHA256 hash is stored.
+     * @return Number of bytes stored in the output array.
+     * @throws GenericCryptoException In case hash computation fails or the output array is too small.
+     * @throws CryptoProviderException In case the SHA-256 algorithm is not available.
+     */
+    public static int sha256Into(byte[] data, int offset, int length, byte[] output, int outputOffset) throws GenericCryptoException, CryptoProviderException {
+        try {
+            final MessageDigest digest = threadSha256Digest();
+            digest.update(data, offset, length);
+            return digest.digest(output, outputOffset, SHA256_LENGTH);
+        } catch (DigestException | IllegalArgumentException ex) {
+            throw new GenericCryptoException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Compute SHA256 hash of data composed of several buffers and store the result in the output buffer.
+     * Position of each data buffer is advanced to its limit and position of the output buffer is advanced
+     * by {@link #SHA256_LENGTH} bytes.
+     * @param output Buffer for the SHA256 hash.
+     * @param parts Buffers with original data.
+     * @return Number of bytes stored in the output buffer.
+     * @throws GenericCryptoException In case hash computation fails or the output buffer is too small.
+     * @throws CryptoProviderException In case the SHA-256 algorithm is not available.
+     */
+    public static int sha256Into(ByteBuffer output, ByteBuffer... parts) throws GenericCryptoException, CryptoProviderException {
+        if (output.remaining() < SHA256_LENGTH) {
+            throw new GenericCryptoException("Output buffer is too small");
+        }
+        try {
+            final MessageDigest digest = threadSha256Digest();
+            for (ByteBuffer part : parts) {
+                digest.update(part);
+            }
+            if (output.hasArray()) {
+                digest.digest(output.array(), output.arrayOffset() + output.position(), SHA256_LENGTH);
+                ((Buffer) output).position(output.position() + SHA256_LENGTH);
+            } else {
+                output.put(digest.digest());
+            }
+            return SHA256_LENGTH;
+        } catch (DigestException ex) {
+            throw new GenericCryptoException(ex.getMessage(), ex);
+        }
+    }
+
     /**
      * Compute SHA256 hash of provided string, that was transferred to data using UTF-8 charset.
      * @param string String to be hashed.
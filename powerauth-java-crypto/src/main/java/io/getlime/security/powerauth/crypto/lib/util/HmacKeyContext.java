@@ -0,0 +1,261 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.lib.util;
+
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
+import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
+
+import javax.crypto.SecretKey;
+import javax.security.auth.Destroyable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.util.Arrays;
+
+/**
+ * Precomputed HMAC-SHA256 key context. The context captures the SHA-256 state after processing the inner
+ * (key XOR ipad) and outer (key XOR opad) padded key blocks, so that computing a HMAC-SHA256 value only
+ * requires compression of the message itself and of the inner hash.
+ *
+ * <p>Use the context for keys which are used for many HMAC computations, such as token secrets, application
+ * secrets or signature keys. The context is immutable and it can be shared between threads.
+ *
+ * <p>The owner of the context may call {@link #destroy()} once the context is no longer used by any thread,
+ * the precomputed digest states are then reset and the context cannot be used anymore.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class HmacKeyContext implements Destroyable {
+
+    private static final int SHA256_BLOCK_SIZE = 64;
+    private static final byte IPAD = 0x36;
+    private static final byte OPAD = 0x5c;
+
+    private final MessageDigest innerDigest;
+    private final MessageDigest outerDigest;
+    private volatile boolean destroyed;
+
+    /**
+     * Construct a HMAC-SHA256 key context for given key bytes.
+     *
+     * @param key Key for the HMAC-SHA256 algorithm.
+     * @throws GenericCryptoException In case the key is invalid.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public HmacKeyContext(byte[] key) throws GenericCryptoException, CryptoProviderException {
+        if (key == null || key.length == 0) {
+            throw new GenericCryptoException("Invalid HMAC key");
+        }
+        try {
+            final String providerName = PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName();
+            innerDigest = MessageDigest.getInstance("SHA-256", providerName);
+            outerDigest = MessageDigest.getInstance("SHA-256", providerName);
+        } catch (NoSuchAlgorithmException | NoSuchProviderException ex) {
+            throw new CryptoProviderException(ex.getMessage(), ex);
+        }
+
+        // Keys longer than block size are hashed first, shorter keys are padded with zeros
+        final byte[] paddedKey = new byte[SHA256_BLOCK_SIZE];
+        if (key.length > SHA256_BLOCK_SIZE) {
+            final byte[] keyHash = innerDigest.digest(key);
+            System.arraycopy(keyHash, 0, paddedKey, 0, keyHash.length);
+            Arrays.fill(keyHash, (byte) 0);
+        } else {
+            System.arraycopy(key, 0, paddedKey, 0, key.length);
+        }
+
+        final byte[] block = new byte[SHA256_BLOCK_SIZE];
+        for (int i = 0; i < SHA256_BLOCK_SIZE; i++) {
+            block[i] = (byte) (paddedKey[i] ^ IPAD);
+        }
+        innerDigest.update(block);
+        for (int i = 0; i < SHA256_BLOCK_SIZE; i++) {
+            block[i] = (byte) (paddedKey[i] ^ OPAD);
+        }
+        outerDigest.update(block);
+        Arrays.fill(block, (byte) 0);
+        Arrays.fill(paddedKey, (byte) 0);
+
+        // Make sure the provider supports cloning of digest state
+        copy(innerDigest);
+    }
+
+    /**
+     * Construct a HMAC-SHA256 key context for given secret key.
+     *
+     * @param key Key for the HMAC-SHA256 algorithm.
+     * @throws GenericCryptoException In case the key is invalid.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public HmacKeyContext(SecretKey key) throws GenericCryptoException, CryptoProviderException {
+        this(PowerAuthConfiguration.INSTANCE.getKeyConvertor().convertSharedSecretKeyToBytes(key));
+    }
+
+    /**
+     * Compute a HMAC-SHA256 of given data using the key of this context.
+     *
+     * @param data Data for the HMAC-SHA256 algorithm.
+     * @return HMAC-SHA256 of given data using the key of this context.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public byte[] hash(byte[] data) throws CryptoProviderException {
+        final MessageDigest inner = copy(innerDigest);
+        final byte[] innerHash = inner.digest(data);
+        final MessageDigest outer = copy(outerDigest);
+        return outer.digest(innerHash);
+    }
+
+    /**
+     * Compute a HMAC-SHA256 of data composed of several parts using the key of this context. The result is
+     * the same as if the HMAC-SHA256 was computed from concatenated parts, however the parts are not copied.
+     * Position of each buffer is advanced to its limit.
+     *
+     * @param data Data parts for the HMAC-SHA256 algorithm.
+     * @return HMAC-SHA256 of given data using the key of this context.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public byte[] hash(ByteBuffer... data) throws CryptoProviderException {
+        final MessageDigest inner = copy(innerDigest);
+        for (ByteBuffer part : data) {
+            inner.update(part);
+        }
+        final byte[] innerHash = inner.digest();
+        final MessageDigest outer = copy(outerDigest);
+        return outer.digest(innerHash);
+    }
+
+    /**
+     * Compute a HMAC-SHA256 of a range of bytes using the key of this context and store the result in the output
+     * array starting at given offset. The output array must have at least {@link HMACHashUtilities#HMAC_SHA256_LENGTH}
+     * bytes available after the offset.
+     *
+     * @param data Array with data for the HMAC-SHA256 algorithm.
+     * @param offset Offset of the data.
+     * @param length Length of the data.
+     * @param output Array for the HMAC-SHA256 value.
+     * @param outputOffset Offset in the output array where the HMAC-SHA256 value is stored.
+     * @return Number of bytes stored in the output array.
+     * @throws GenericCryptoException In case the output array is too small.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public int hashInto(byte[] data, int offset, int length, byte[] output, int outputOffset) throws GenericCryptoException, CryptoProviderException {
+        final MessageDigest inner = copy(innerDigest);
+        inner.update(data, offset, length);
+        return finish(inner, output, outputOffset);
+    }
+
+    /**
+     * Compute a HMAC-SHA256 of data composed of several parts using the key of this context and store the result
+     * in the output buffer. Position of each data buffer is advanced to its limit and position of the output
+     * buffer is advanced by {@link HMACHashUtilities#HMAC_SHA256_LENGTH} bytes.
+     *
+     * @param output Buffer for the HMAC-SHA256 value.
+     * @param data Data parts for the HMAC-SHA256 algorithm.
+     * @return Number of bytes stored in the output buffer.
+     * @throws GenericCryptoException In case the output buffer is too small.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public int hashInto(ByteBuffer output, ByteBuffer... data) throws GenericCryptoException, CryptoProviderException {
+        if (output.remaining() < HMACHashUtilities.HMAC_SHA256_LENGTH) {
+            throw new GenericCryptoException("Output buffer is too small");
+        }
+        final MessageDigest inner = copy(innerDigest);
+        for (ByteBuffer part : data) {
+            inner.update(part);
+        }
+        if (output.hasArray()) {
+            final int written = finish(inner, output.array(), output.arrayOffset() + output.position());
+            ((Buffer) output).position(output.position() + written);
+            return written;
+        }
+        final byte[] innerHash = inner.digest();
+        output.put(copy(outerDigest).digest(innerHash));
+        return HMACHashUtilities.HMAC_SHA256_LENGTH;
+    }
+
+    /**
+     * Finish the inner digest and compute the outer digest into the output array. The inner hash is stored
+     * in the output array first and it is then overwritten by the final value, so that no temporary array
+     * is needed.
+     *
+     * @param inner Inner digest with processed data.
+     * @param output Array for the HMAC-SHA256 value.
+     * @param outputOffset Offset in the output array where the HMAC-SHA256 value is stored.
+     * @return Number of bytes stored in the output array.
+     * @throws GenericCryptoException In case the output array is too small.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    private int finish(MessageDigest inner, byte[] output, int outputOffset) throws GenericCryptoException, CryptoProviderException {
+        final int length = HMACHashUtilities.HMAC_SHA256_LENGTH;
+        if (outputOffset < 0 || output.length - outputOffset < length) {
+            throw new GenericCryptoException("Output array is too small");
+        }
+        try {
+            inner.digest(output, outputOffset, length);
+            final MessageDigest outer = copy(outerDigest);
+            outer.update(output, outputOffset, length);
+            return outer.digest(output, outputOffset, length);
+        } catch (DigestException ex) {
+            throw new GenericCryptoException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Destroy the context. The precomputed digest states derived from the key are reset and subsequent
+     * HMAC computations fail. The context must not be used by other threads while it is destroyed.
+     */
+    @Override
+    public synchronized void destroy() {
+        destroyed = true;
+        innerDigest.reset();
+        outerDigest.reset();
+    }
+
+    /**
+     * Get whether the context was destroyed.
+     *
+     * @return True in case the context was destroyed.
+     */
+    @Override
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
+    /**
+     * Create a copy of a digest with precomputed state.
+     *
+     * @param digest Digest to copy.
+     * @return Copy of the digest.
+     * @throws CryptoProviderException In case the digest does not support cloning.
+     * @throws IllegalStateException In case the context was destroyed.
+     */
+    private MessageDigest copy(MessageDigest digest) throws CryptoProviderException {
+        if (destroyed) {
+            throw new IllegalStateException("HMAC key context was destroyed");
+        }
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException ex) {
+            throw new CryptoProviderException("Digest state cannot be copied", ex);
+        }
+    }
+
+}
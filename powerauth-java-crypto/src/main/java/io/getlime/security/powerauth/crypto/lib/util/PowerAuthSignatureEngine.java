@@ -0,0 +1,383 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.lib.util;
+
+import io.getlime.security.powerauth.crypto.lib.api.Counter;
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.generator.HashBasedCounter;
+import io.getlime.security.powerauth.crypto.lib.model.SignatureVerificationResult;
+import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
+import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Engine for computing and validating PowerAuth signatures with a fixed list of signature keys.
+ *
+ * <p>For signature keys K_0 .. K_n-1 and counter data CTR, the engine computes the derived keys
+ * D_k = HMAC(K_k, CTR) exactly once per counter value, when the component k is computed. Signature
+ * component i is computed using the key KEY_i = HMAC(D_i, ... HMAC(D_2, HMAC(D_1, D_i))), i.e. D_i folded
+ * with D_1 .. D_i, as SIG_i = HMAC(KEY_i, DATA) decimalized to {@link PowerAuthConfiguration#SIGNATURE_LENGTH}
+ * digits. The result is the same as
+ * {@link SignatureUtils#computePowerAuthSignature(byte[], List, byte[])}.
+ *
+ * <p>The engine is immutable and it can be shared between threads.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class PowerAuthSignatureEngine {
+
+    private static final String HMAC_SHA256_ALGORITHM = "HmacSHA256";
+    private static final int KEY_LENGTH = HMACHashUtilities.HMAC_SHA256_LENGTH;
+    private static final int COMPONENT_LENGTH = PowerAuthConfiguration.SIGNATURE_LENGTH;
+    private static final int COMPONENT_MODULUS = modulus(COMPONENT_LENGTH);
+    private static final char COMPONENT_SEPARATOR = '-';
+
+    private final HMACHashUtilities hmac = new HMACHashUtilities();
+    private final List<HmacKeyContext> signatureKeyContexts;
+
+    /**
+     * Construct a signature engine for precomputed signature key contexts.
+     *
+     * @param signatureKeyContexts HMAC key contexts of signature keys, in the order of signature factors.
+     * @throws GenericCryptoException In case no signature keys are provided.
+     * @see SignatureUtils#createSignatureKeyContexts(List)
+     */
+    public PowerAuthSignatureEngine(List<HmacKeyContext> signatureKeyContexts) throws GenericCryptoException {
+        if (signatureKeyContexts == null || signatureKeyContexts.isEmpty()) {
+            throw new GenericCryptoException("Missing signature keys");
+        }
+        this.signatureKeyContexts = Collections.unmodifiableList(new ArrayList<>(signatureKeyContexts));
+    }
+
+    /**
+     * Get number of signature factors.
+     *
+     * @return Number of signature factors.
+     */
+    public int getFactorCount() {
+        return signatureKeyContexts.size();
+    }
+
+    /**
+     * Compute PowerAuth signature components for given data and counter data.
+     *
+     * @param data Data to be signed.
+     * @param ctrData Counter byte array / derived key index.
+     * @return Signature components as integers, one for each signature factor.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public int[] computeSignatureComponents(byte[] data, byte[] ctrData) throws GenericCryptoException, CryptoProviderException {
+        final int factorCount = signatureKeyContexts.size();
+        final int[] components = new int[factorCount];
+        final byte[] derivedKeys = new byte[factorCount * KEY_LENGTH];
+        final byte[] buffer = new byte[KEY_LENGTH];
+        try {
+            for (int i = 0; i < factorCount; i++) {
+                components[i] = computeComponent(data, ctrData, derivedKeys, i, buffer);
+            }
+        } finally {
+            Arrays.fill(derivedKeys, (byte) 0);
+            Arrays.fill(buffer, (byte) 0);
+        }
+        return components;
+    }
+
+    /**
+     * Compute PowerAuth signature for given data and counter data.
+     *
+     * @param data Data to be signed.
+     * @param ctrData Counter byte array / derived key index.
+     * @return PowerAuth signature for given data.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public String computeSignature(byte[] data, byte[] ctrData) throws GenericCryptoException, CryptoProviderException {
+        return formatSignature(computeSignatureComponents(data, ctrData));
+    }
+
+    /**
+     * Validate PowerAuth signature for given data and counter data. The provided signature is parsed and compared
+     * with computed signature components, the expected signature string is not constructed. All components are
+     * always compared.
+     *
+     * @param data Data that were signed.
+     * @param signature Signature to validate.
+     * @param ctrData Counter byte array / derived key index.
+     * @return Return "true" if signature matches, "false" otherwise.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public boolean verifySignature(byte[] data, String signature, byte[] ctrData) throws GenericCryptoException, CryptoProviderException {
+        final int[] providedComponents = parseSignature(signature, signatureKeyContexts.size());
+        if (providedComponents == null) {
+            return false;
+        }
+        return componentsEqual(computeSignatureComponents(data, ctrData), providedComponents);
+    }
+
+    /**
+     * Validate PowerAuth signature for given data and counter data in fail-fast mode. Signature components are
+     * computed one by one and the validation stops at the first component which does not match, so that
+     * invalid signatures cost as little as possible. Note that the time of validation reveals the index of the
+     * first mismatching component, use {@link #verifySignature(byte[], String, byte[])} when this is a concern.
+     * For the same reason this method must not be called for consecutive counter values as a counter look-ahead
+     * in such case, use {@link #verifySignature(byte[], String, byte[], int)} instead.
+     *
+     * @param data Data that were signed.
+     * @param signature Signature to validate.
+     * @param ctrData Counter byte array / derived key index.
+     * @return Return "true" if signature matches, "false" otherwise.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public boolean verifySignatureFailFast(byte[] data, String signature, byte[] ctrData) throws GenericCryptoException, CryptoProviderException {
+        final int[] providedComponents = parseSignature(signature, signatureKeyContexts.size());
+        if (providedComponents == null) {
+            return false;
+        }
+        final byte[] derivedKeys = new byte[signatureKeyContexts.size() * KEY_LENGTH];
+        final byte[] buffer = new byte[KEY_LENGTH];
+        try {
+            for (int i = 0; i < providedComponents.length; i++) {
+                if (computeComponent(data, ctrData, derivedKeys, i, buffer) != providedComponents[i]) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            Arrays.fill(derivedKeys, (byte) 0);
+            Arrays.fill(buffer, (byte) 0);
+        }
+    }
+
+    /**
+     * Validate each signature factor of PowerAuth signature for given data and counter data in a single pass.
+     * Bit i of the result is set in case signature component i matches, i.e. bit 0 represents the first factor
+     * (usually possession). All bits are set when the whole signature is valid. This allows partial signature
+     * validation, for example to decide whether a failed attempt counter should be incremented.
+     *
+     * @param data Data that were signed.
+     * @param signature Signature to validate.
+     * @param ctrData Counter byte array / derived key index.
+     * @return Bit mask of matching signature factors, 0 in case no factor matches or the signature format is invalid.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     * @see #isSignatureValid(int, int)
+     */
+    public int verifySignatureFactors(byte[] data, String signature, byte[] ctrData) throws GenericCryptoException, CryptoProviderException {
+        final int[] providedComponents = parseSignature(signature, signatureKeyContexts.size());
+        if (providedComponents == null) {
+            return 0;
+        }
+        final int[] components = computeSignatureComponents(data, ctrData);
+        int matchingFactors = 0;
+        for (int i = 0; i < components.length; i++) {
+            if (components[i] == providedComponents[i]) {
+                matchingFactors |= 1 << i;
+            }
+        }
+        return matchingFactors;
+    }
+
+    /**
+     * Check whether a bit mask of matching signature factors represents a valid signature.
+     *
+     * @param matchingFactors Bit mask of matching signature factors.
+     * @param factorCount Number of signature factors.
+     * @return True in case all signature factors match.
+     * @see #verifySignatureFactors(byte[], String, byte[])
+     */
+    public static boolean isSignatureValid(int matchingFactors, int factorCount) {
+        final int allFactors = (1 << factorCount) - 1;
+        return factorCount > 0 && matchingFactors == allFactors;
+    }
+
+    /**
+     * Validate PowerAuth signature for given data with counter look-ahead using {@link HashBasedCounter}.
+     *
+     * @param data Data that were signed.
+     * @param signature Signature to validate.
+     * @param ctrData Expected counter data.
+     * @param tolerance Number of counter values to try, starting with the expected counter data.
+     * @return Verification result with the matching counter offset and the next counter data.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     * @see #verifySignature(byte[], String, byte[], int, Counter)
+     */
+    public SignatureVerificationResult verifySignature(byte[] data, String signature, byte[] ctrData, int tolerance) throws GenericCryptoException, CryptoProviderException {
+        return verifySignature(data, signature, ctrData, tolerance, new HashBasedCounter());
+    }
+
+    /**
+     * Validate PowerAuth signature for given data with counter look-ahead. The client may be ahead with its counter
+     * compared to the server, so the signature is verified for the expected counter data and for the following
+     * counter values up to the tolerance. The provided signature is parsed only once, the signature key contexts are
+     * reused for all counter values and the verification stops at the first matching counter value. All components
+     * are always compared for each counter value.
+     *
+     * @param data Data that were signed.
+     * @param signature Signature to validate.
+     * @param ctrData Expected counter data.
+     * @param tolerance Number of counter values to try, starting with the expected counter data.
+     * @param counter Counter used for advancing the counter data.
+     * @return Verification result with the matching counter offset and the next counter data.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public SignatureVerificationResult verifySignature(byte[] data, String signature, byte[] ctrData, int tolerance, Counter counter) throws GenericCryptoException, CryptoProviderException {
+        if (tolerance < 1) {
+            throw new GenericCryptoException("Invalid counter tolerance: " + tolerance);
+        }
+        final int[] providedComponents = parseSignature(signature, signatureKeyContexts.size());
+        if (providedComponents == null) {
+            return SignatureVerificationResult.invalid();
+        }
+        byte[] ctrDataIter = ctrData;
+        for (int offset = 0; offset < tolerance; offset++) {
+            final int[] components = computeSignatureComponents(data, ctrDataIter);
+            final byte[] nextCtrData = counter.next(ctrDataIter);
+            if (componentsEqual(components, providedComponents)) {
+                return new SignatureVerificationResult(true, offset, ctrDataIter, nextCtrData);
+            }
+            ctrDataIter = nextCtrData;
+        }
+        return SignatureVerificationResult.invalid();
+    }
+
+    /**
+     * Format signature components to the PowerAuth signature string, with each component zero-padded to
+     * {@link PowerAuthConfiguration#SIGNATURE_LENGTH} digits and components separated by dash.
+     *
+     * @param components Signature components.
+     * @return PowerAuth signature string.
+     */
+    public static String formatSignature(int[] components) {
+        final char[] chars = new char[components.length * (COMPONENT_LENGTH + 1) - 1];
+        for (int i = 0; i < components.length; i++) {
+            final int offset = i * (COMPONENT_LENGTH + 1);
+            int value = components[i];
+            for (int j = offset + COMPONENT_LENGTH - 1; j >= offset; j--) {
+                chars[j] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+            if (i > 0) {
+                chars[offset - 1] = COMPONENT_SEPARATOR;
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Parse PowerAuth signature string to signature components.
+     *
+     * @param signature PowerAuth signature string.
+     * @param factorCount Expected number of signature factors.
+     * @return Signature components or null in case the signature string has invalid format.
+     */
+    public static int[] parseSignature(String signature, int factorCount) {
+        if (signature == null || factorCount < 1 || signature.length() != factorCount * (COMPONENT_LENGTH + 1) - 1) {
+            return null;
+        }
+        final int[] components = new int[factorCount];
+        for (int i = 0; i < factorCount; i++) {
+            final int offset = i * (COMPONENT_LENGTH + 1);
+            if (i > 0 && signature.charAt(offset - 1) != COMPONENT_SEPARATOR) {
+                return null;
+            }
+            int value = 0;
+            for (int j = offset; j < offset + COMPONENT_LENGTH; j++) {
+                final char c = signature.charAt(j);
+                if (c < '0' || c > '9') {
+                    return null;
+                }
+                value = value * 10 + (c - '0');
+            }
+            components[i] = value;
+        }
+        return components;
+    }
+
+    /**
+     * Compare computed and provided signature components in constant time, all components are always compared
+     * so that the time of comparison does not reveal which component does not match.
+     *
+     * @param components Computed signature components.
+     * @param providedComponents Provided signature components.
+     * @return True in case all components are equal.
+     */
+    private static boolean componentsEqual(int[] components, int[] providedComponents) {
+        int difference = 0;
+        for (int i = 0; i < components.length; i++) {
+            difference |= components[i] ^ providedComponents[i];
+        }
+        return difference == 0;
+    }
+
+    /**
+     * Compute a single signature component. The derived key D_i = HMAC(K_i, CTR) is computed and stored in the
+     * derived keys array, derived keys D_1 .. D_i-1 must be already present from computation of previous components.
+     *
+     * @param data Data to be signed.
+     * @param ctrData Counter byte array / derived key index.
+     * @param derivedKeys Concatenated derived keys D_0 .. D_n-1.
+     * @param index Index of the signature component.
+     * @param buffer Working buffer with the length of the HMAC-SHA256 output.
+     * @return Signature component.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    private int computeComponent(byte[] data, byte[] ctrData, byte[] derivedKeys, int index, byte[] buffer) throws GenericCryptoException, CryptoProviderException {
+        // Derive D_i exactly once for the counter value
+        signatureKeyContexts.get(index).hashInto(ctrData, 0, ctrData.length, derivedKeys, index * KEY_LENGTH);
+        // Start with D_i and fold it with D_1 .. D_i
+        System.arraycopy(derivedKeys, index * KEY_LENGTH, buffer, 0, KEY_LENGTH);
+        for (int j = 1; j <= index; j++) {
+            final SecretKey foldKey = new SecretKeySpec(derivedKeys, j * KEY_LENGTH, KEY_LENGTH, HMAC_SHA256_ALGORITHM);
+            hmac.hashInto(foldKey, buffer, 0, KEY_LENGTH, buffer, 0);
+        }
+        // Compute HMAC of data and decimalize last 4 bytes
+        final SecretKey signatureKey = new SecretKeySpec(buffer, 0, KEY_LENGTH, HMAC_SHA256_ALGORITHM);
+        hmac.hashInto(signatureKey, data, 0, data.length, buffer, 0);
+        final int number = ((buffer[KEY_LENGTH - 4] & 0xFF) << 24)
+                | ((buffer[KEY_LENGTH - 3] & 0xFF) << 16)
+                | ((buffer[KEY_LENGTH - 2] & 0xFF) << 8)
+                | (buffer[KEY_LENGTH - 1] & 0xFF);
+        return (number & 0x7FFFFFFF) % COMPONENT_MODULUS;
+    }
+
+    /**
+     * Compute 10^digits as an integer.
+     *
+     * @param digits Number of decimal digits.
+     * @return Value of 10^digits.
+     */
+    private static int modulus(int digits) {
+        int result = 1;
+        for (int i = 0; i < digits; i++) {
+            result *= 10;
+        }
+        return result;
+    }
+
+}
@@ -16,15 +16,14 @@
  */
 package io.getlime.security.powerauth.crypto.lib.util;
 
-import com.google.common.base.Joiner;
 import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.enums.EcdsaSignatureMode;
 import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
-import io.getlime.security.powerauth.provider.CryptoProviderUtil;
 import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
 
 import javax.crypto.SecretKey;
-import java.nio.ByteBuffer;
 import java.security.*;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -35,6 +34,11 @@ import java.util.List;
  */
 public class SignatureUtils {
 
+    /**
+     * Cache of ECDSA engines, the engines are initialized with a key for each signature computation or validation.
+     */
+    private static final CryptoEngineCache<Signature> signatureEngines = new CryptoEngineCache<>(Signature::getInstance);
+
     /**
      * Compute ECDSA signature of given bytes with a private key.
      *
@@ -46,13 +50,28 @@ public class SignatureUtils {
      * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
      */
     public byte[] computeECDSASignature(byte[] bytes, PrivateKey masterPrivateKey) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
+        return computeECDSASignature(bytes, masterPrivateKey, EcdsaSignatureMode.RANDOM_NONCE);
+    }
+
+    /**
+     * Compute ECDSA signature of given bytes with a private key using given signature mode. Signatures computed
+     * with {@link EcdsaSignatureMode#DETERMINISTIC_NONCE} do not use the random number generator and they are
+     * validated using {@link #validateECDSASignature(byte[], byte[], PublicKey)} as any other ECDSA signature.
+     *
+     * @param bytes Bytes to be signed.
+     * @param masterPrivateKey Private key for computing the signature.
+     * @param signatureMode ECDSA signature mode.
+     * @return Signature for given data.
+     * @throws InvalidKeyException In case invalid key was provided.
+     * @throws GenericCryptoException In case signature calculation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public byte[] computeECDSASignature(byte[] bytes, PrivateKey masterPrivateKey, EcdsaSignatureMode signatureMode) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
         try {
-            Signature ecdsa = Signature.getInstance("SHA256withECDSA", PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
+            final Signature ecdsa = signatureEngines.getEngine(signatureMode.getAlgorithm(), PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
             ecdsa.initSign(masterPrivateKey);
             ecdsa.update(bytes);
             return ecdsa.sign();
-        } catch (NoSuchAlgorithmException | NoSuchProviderException ex) {
-            throw new CryptoProviderException(ex.getMessage(), ex);
         } catch (SignatureException ex) {
             throw new GenericCryptoException(ex.getMessage(), ex);
         }
@@ -71,12 +90,10 @@ public class SignatureUtils {
      */
     public boolean validateECDSASignature(byte[] signedBytes, byte[] signature, PublicKey masterPublicKey) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
         try {
-            Signature ecdsa = Signature.getInstance("SHA256withECDSA", PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
+            final Signature ecdsa = signatureEngines.getEngine(EcdsaSignatureMode.RANDOM_NONCE.getAlgorithm(), PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
             ecdsa.initVerify(masterPublicKey);
             ecdsa.update(signedBytes);
             return ecdsa.verify(signature);
-        } catch (NoSuchAlgorithmException | NoSuchProviderException ex) {
-            throw new CryptoProviderException(ex.getMessage(), ex);
         } catch (SignatureException ex) {
             throw new GenericCryptoException(ex.getMessage(), ex);
         }
@@ -93,36 +110,38 @@ public class SignatureUtils {
      * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
      */
     public String computePowerAuthSignature(byte[] data, List<SecretKey> signatureKeys, byte[] ctrData) throws GenericCryptoException, CryptoProviderException {
-        // Prepare a hash
-        HMACHashUtilities hmac = new HMACHashUtilities();
-
-        // Prepare holder for signature components
-        String[] signatureComponents = new String[signatureKeys.size()];
-
-        CryptoProviderUtil keyConvertor = PowerAuthConfiguration.INSTANCE.getKeyConvertor();
-
-        for (int i = 0; i < signatureKeys.size(); i++) {
-            byte[] signatureKey = keyConvertor.convertSharedSecretKeyToBytes(signatureKeys.get(i));
-            byte[] derivedKey = hmac.hash(signatureKey, ctrData);
-
-            for (int j = 0; j < i; j++) {
-                byte[] signatureKeyInner = keyConvertor.convertSharedSecretKeyToBytes(signatureKeys.get(j + 1));
-                byte[] derivedKeyInner = hmac.hash(signatureKeyInner, ctrData);
-                derivedKey = hmac.hash(derivedKeyInner, derivedKey);
-            }
-
-            byte[] signatureLong = hmac.hash(derivedKey, data);
+        return computePowerAuthSignatureForKeyContexts(data, createSignatureKeyContexts(signatureKeys), ctrData);
+    }
 
-            if (signatureLong.length < 4) { // assert
-                throw new IndexOutOfBoundsException();
-            }
-            int index = signatureLong.length - 4;
-            int number = (ByteBuffer.wrap(signatureLong).getInt(index) & 0x7FFFFFFF) % (int) (Math.pow(10, PowerAuthConfiguration.SIGNATURE_LENGTH));
-            String signature = String.format("%0" + PowerAuthConfiguration.SIGNATURE_LENGTH + "d", number);
-            signatureComponents[i] = signature;
+    /**
+     * Create precomputed HMAC key contexts for given signature keys. The contexts can be kept while the signature
+     * keys are valid and reused for computing and validating many signatures.
+     *
+     * @param signatureKeys Keys for computing the signature.
+     * @return HMAC key contexts of the signature keys, in the same order as provided keys.
+     * @throws GenericCryptoException In case any of the keys is invalid.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public List<HmacKeyContext> createSignatureKeyContexts(List<SecretKey> signatureKeys) throws GenericCryptoException, CryptoProviderException {
+        final List<HmacKeyContext> signatureKeyContexts = new ArrayList<>(signatureKeys.size());
+        for (SecretKey signatureKey : signatureKeys) {
+            signatureKeyContexts.add(new HmacKeyContext(signatureKey));
         }
+        return signatureKeyContexts;
+    }
 
-        return Joiner.on("-").join(signatureComponents);
+    /**
+     * Compute PowerAuth signature for given data using precomputed signature key contexts and counter byte array.
+     *
+     * @param data Data to be signed.
+     * @param signatureKeyContexts HMAC key contexts of keys for computing the signature.
+     * @param ctrData Counter byte array / derived key index.
+     * @return PowerAuth signature for given data.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public String computePowerAuthSignatureForKeyContexts(byte[] data, List<HmacKeyContext> signatureKeyContexts, byte[] ctrData) throws GenericCryptoException, CryptoProviderException {
+        return new PowerAuthSignatureEngine(signatureKeyContexts).computeSignature(data, ctrData);
     }
 
     /**
@@ -137,7 +156,96 @@ public class SignatureUtils {
      * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
      */
     public boolean validatePowerAuthSignature(byte[] data, String signature, List<SecretKey> signatureKeys, byte[] ctrData) throws GenericCryptoException, CryptoProviderException {
-        return signature.equals(computePowerAuthSignature(data, signatureKeys, ctrData));
+        return validatePowerAuthSignatureForKeyContexts(data, signature, createSignatureKeyContexts(signatureKeys), ctrData);
+    }
+
+    /**
+     * Validate the PowerAuth signature for given data using precomputed signature key contexts.
+     *
+     * @param data Data that were signed.
+     * @param signature Data signature.
+     * @param signatureKeyContexts HMAC key contexts of keys for signature validation.
+     * @param ctrData Counter data.
+     * @return Return "true" if signature matches, "false" otherwise.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public boolean validatePowerAuthSignatureForKeyContexts(byte[] data, String signature, List<HmacKeyContext> signatureKeyContexts, byte[] ctrData) throws GenericCryptoException, CryptoProviderException {
+        return new PowerAuthSignatureEngine(signatureKeyContexts).verifySignature(data, signature, ctrData);
+    }
+
+    /**
+     * Validate the PowerAuth signature for given data using provided keys in fail-fast mode. The validation stops
+     * at the first signature component which does not match, so that invalid signatures cost as little as possible.
+     * The time of validation reveals the index of the first mismatching component. Do not use this method when this
+     * is a concern, and never call it repeatedly for consecutive counter values as a counter look-ahead, since the
+     * timing of each attempt would be revealed, use {@link #validatePowerAuthSignature(byte[], String, List, byte[])}
+     * in such case.
+     *
+     * @param data Data that were signed.
+     * @param signature Data signature.
+     * @param signatureKeys Keys for signature validation.
+     * @param ctrData Counter data.
+     * @return Return "true" if signature matches, "false" otherwise.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     * @see PowerAuthSignatureEngine#verifySignatureFailFast(byte[], String, byte[])
+     */
+    public boolean validatePowerAuthSignatureFailFast(byte[] data, String signature, List<SecretKey> signatureKeys, byte[] ctrData) throws GenericCryptoException, CryptoProviderException {
+        return validatePowerAuthSignatureFailFastForKeyContexts(data, signature, createSignatureKeyContexts(signatureKeys), ctrData);
+    }
+
+    /**
+     * Validate the PowerAuth signature for given data using precomputed signature key contexts in fail-fast mode.
+     * The same timing considerations as for {@link #validatePowerAuthSignatureFailFast(byte[], String, List, byte[])}
+     * apply, do not combine this method with a counter look-ahead when the timing is a concern.
+     *
+     * @param data Data that were signed.
+     * @param signature Data signature.
+     * @param signatureKeyContexts HMAC key contexts of keys for signature validation.
+     * @param ctrData Counter data.
+     * @return Return "true" if signature matches, "false" otherwise.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     * @see PowerAuthSignatureEngine#verifySignatureFailFast(byte[], String, byte[])
+     */
+    public boolean validatePowerAuthSignatureFailFastForKeyContexts(byte[] data, String signature, List<HmacKeyContext> signatureKeyContexts, byte[] ctrData) throws GenericCryptoException, CryptoProviderException {
+        return new PowerAuthSignatureEngine(signatureKeyContexts).verifySignatureFailFast(data, signature, ctrData);
+    }
+
+    /**
+     * Validate each signature factor of the PowerAuth signature for given data using provided keys. Bit i of the
+     * result is set in case signature component i matches, all bits are set when the whole signature is valid.
+     *
+     * @param data Data that were signed.
+     * @param signature Data signature.
+     * @param signatureKeys Keys for signature validation.
+     * @param ctrData Counter data.
+     * @return Bit mask of matching signature factors, 0 in case no factor matches or the signature format is invalid.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     * @see PowerAuthSignatureEngine#isSignatureValid(int, int)
+     */
+    public int validatePowerAuthSignatureFactors(byte[] data, String signature, List<SecretKey> signatureKeys, byte[] ctrData) throws GenericCryptoException, CryptoProviderException {
+        return validatePowerAuthSignatureFactorsForKeyContexts(data, signature, createSignatureKeyContexts(signatureKeys), ctrData);
+    }
+
+    /**
+     * Validate each signature factor of the PowerAuth signature for given data using precomputed signature key
+     * contexts. Bit i of the result is set in case signature component i matches, all bits are set when the whole
+     * signature is valid.
+     *
+     * @param data Data that were signed.
+     * @param signature Data signature.
+     * @param signatureKeyContexts HMAC key contexts of keys for signature validation.
+     * @param ctrData Counter data.
+     * @return Bit mask of matching signature factors, 0 in case no factor matches or the signature format is invalid.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     * @see PowerAuthSignatureEngine#isSignatureValid(int, int)
+     */
+    public int validatePowerAuthSignatureFactorsForKeyContexts(byte[] data, String signature, List<HmacKeyContext> signatureKeyContexts, byte[] ctrData) throws GenericCryptoException, CryptoProviderException {
+        return new PowerAuthSignatureEngine(signatureKeyContexts).verifySignatureFactors(data, signature, ctrData);
     }
 
 }
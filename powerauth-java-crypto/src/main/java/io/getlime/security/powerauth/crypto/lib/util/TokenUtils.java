@@ -16,11 +16,11 @@
  */
 package io.getlime.security.powerauth.crypto.lib.util;
 
-import com.google.common.primitives.Bytes;
 import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
 import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
 import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.UUID;
@@ -32,6 +32,8 @@ import java.util.UUID;
  */
 public class TokenUtils {
 
+    private static final byte[] AMP = "&".getBytes(StandardCharsets.UTF_8);
+
     private final KeyGenerator keyGenerator = new KeyGenerator();
     private final HMACHashUtilities hmac = new HMACHashUtilities();
 
@@ -98,9 +100,20 @@ public class TokenUtils {
      * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
      */
     public byte[] computeTokenDigest(byte[] nonce, byte[] timestamp, byte[] tokenSecret) throws GenericCryptoException, CryptoProviderException {
-        byte[] amp = "&".getBytes(StandardCharsets.UTF_8);
-        byte[] data = Bytes.concat(nonce, amp, timestamp);
-        return hmac.hash(tokenSecret, data);
+        // Digest data are nonce + '&' + timestamp, the parts are not concatenated into a new array
+        return hmac.hash(tokenSecret, ByteBuffer.wrap(nonce), ByteBuffer.wrap(AMP), ByteBuffer.wrap(timestamp));
+    }
+
+    /**
+     * Compute the digest of provided token information using a precomputed token secret context.
+     * @param nonce Token nonce, 16 random bytes.
+     * @param timestamp Token timestamp, Unix timestamp format encoded as bytes (string representation).
+     * @param tokenSecretContext HMAC key context of the token secret.
+     * @return Token digest computed using provided data bytes with given token secret.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public byte[] computeTokenDigest(byte[] nonce, byte[] timestamp, HmacKeyContext tokenSecretContext) throws CryptoProviderException {
+        return tokenSecretContext.hash(ByteBuffer.wrap(nonce), ByteBuffer.wrap(AMP), ByteBuffer.wrap(timestamp));
     }
 
     /**
@@ -117,4 +130,17 @@ public class TokenUtils {
         return Arrays.equals(computeTokenDigest(nonce, timestamp, tokenSecret), tokenDigest);
     }
 
+    /**
+     * Validate provided token digest for given input data and a precomputed token secret context.
+     * @param nonce Token nonce, 16 random bytes.
+     * @param timestamp Token timestamp, Unix timestamp format encoded as bytes (string representation).
+     * @param tokenSecretContext HMAC key context of the token secret.
+     * @param tokenDigest Token digest, 32 bytes to be validated.
+     * @return Token digest computed using provided data bytes with given token secret.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public boolean validateTokenDigest(byte[] nonce, byte[] timestamp, HmacKeyContext tokenSecretContext, byte[] tokenDigest) throws CryptoProviderException {
+        return Arrays.equals(computeTokenDigest(nonce, timestamp, tokenSecretContext), tokenDigest);
+    }
+
 }
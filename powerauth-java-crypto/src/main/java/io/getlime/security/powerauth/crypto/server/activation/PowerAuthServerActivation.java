@@ -18,6 +18,7 @@ package io.getlime.security.powerauth.crypto.server.activation;
 
 import com.google.common.io.BaseEncoding;
 import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.enums.EcdsaSignatureMode;
 import io.getlime.security.powerauth.crypto.lib.generator.IdentifierGenerator;
 import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
 import io.getlime.security.powerauth.crypto.lib.model.ActivationStatusBlobInfo;
@@ -26,6 +27,7 @@ import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoExc
 import io.getlime.security.powerauth.crypto.lib.util.AESEncryptionUtils;
 import io.getlime.security.powerauth.crypto.lib.util.ECPublicKeyFingerprint;
 import io.getlime.security.powerauth.crypto.lib.util.HMACHashUtilities;
+import io.getlime.security.powerauth.crypto.lib.util.HmacKeyContext;
 import io.getlime.security.powerauth.crypto.lib.util.SignatureUtils;
 import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
 
@@ -51,6 +53,25 @@ public class PowerAuthServerActivation {
 
     private final IdentifierGenerator identifierGenerator = new IdentifierGenerator();
     private final SignatureUtils signatureUtils = new SignatureUtils();
+    private final EcdsaSignatureMode signatureMode;
+
+    /**
+     * Default constructor, ECDSA signatures are computed with a random nonce.
+     */
+    public PowerAuthServerActivation() {
+        this(EcdsaSignatureMode.RANDOM_NONCE);
+    }
+
+    /**
+     * Constructor with ECDSA signature mode used for activation code and server data signatures. Use
+     * {@link EcdsaSignatureMode#DETERMINISTIC_NONCE} to avoid the random number generator when signing,
+     * the signatures are validated by clients the same way in both modes.
+     *
+     * @param signatureMode ECDSA signature mode.
+     */
+    public PowerAuthServerActivation(EcdsaSignatureMode signatureMode) {
+        this.signatureMode = signatureMode;
+    }
 
     /**
      * Generate a pseudo-unique activation ID. Technically, this is UUID level 4
@@ -97,7 +118,7 @@ public class PowerAuthServerActivation {
     public byte[] generateActivationSignature(String activationCode,
                                               PrivateKey masterPrivateKey) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
         byte[] bytes = activationCode.getBytes(StandardCharsets.UTF_8);
-        return signatureUtils.computeECDSASignature(bytes, masterPrivateKey);
+        return signatureUtils.computeECDSASignature(bytes, masterPrivateKey, signatureMode);
     }
 
     /**
@@ -132,12 +153,50 @@ public class PowerAuthServerActivation {
      * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
      */
     public boolean validateApplicationSignature(String activationIdShort, byte[] activationNonce, byte[] encryptedDevicePublicKey, byte[] applicationKey, byte[] applicationSecret, byte[] signature) throws GenericCryptoException, CryptoProviderException {
-        String signatureBaseString = activationIdShort + "&"
+        String signatureBaseString = applicationSignatureBaseString(activationIdShort, activationNonce, encryptedDevicePublicKey, applicationKey);
+        byte[] signatureExpected = new HMACHashUtilities().hash(applicationSecret, signatureBaseString.getBytes(StandardCharsets.UTF_8));
+        return Arrays.equals(signatureExpected, signature);
+    }
+
+    /**
+     * Method validates the signature of the activation data using a precomputed HMAC key context
+     * of the application secret, see {@link #validateApplicationSignature(String, byte[], byte[], byte[], byte[], byte[])}.
+     *
+     * <p><b>PowerAuth protocol versions:</b>
+     * <ul>
+     *     <li>2.0</li>
+     *     <li>2.1</li>
+     * </ul>
+     *
+     * @param activationIdShort Short activation ID.
+     * @param activationNonce Client activation nonce.
+     * @param encryptedDevicePublicKey Encrypted device public key.
+     * @param applicationKey Application identifier.
+     * @param applicationSecretContext HMAC key context of the application secret.
+     * @param signature Signature to be checked against.
+     * @return True if the signature is correct, false otherwise.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public boolean validateApplicationSignature(String activationIdShort, byte[] activationNonce, byte[] encryptedDevicePublicKey, byte[] applicationKey, HmacKeyContext applicationSecretContext, byte[] signature) throws CryptoProviderException {
+        String signatureBaseString = applicationSignatureBaseString(activationIdShort, activationNonce, encryptedDevicePublicKey, applicationKey);
+        byte[] signatureExpected = applicationSecretContext.hash(signatureBaseString.getBytes(StandardCharsets.UTF_8));
+        return Arrays.equals(signatureExpected, signature);
+    }
+
+    /**
+     * Construct the base string for the application signature of the activation data.
+     *
+     * @param activationIdShort Short activation ID.
+     * @param activationNonce Client activation nonce.
+     * @param encryptedDevicePublicKey Encrypted device public key.
+     * @param applicationKey Application identifier.
+     * @return Signature base string.
+     */
+    private String applicationSignatureBaseString(String activationIdShort, byte[] activationNonce, byte[] encryptedDevicePublicKey, byte[] applicationKey) {
+        return activationIdShort + "&"
                 + BaseEncoding.base64().encode(activationNonce) + "&"
                 + BaseEncoding.base64().encode(encryptedDevicePublicKey) + "&"
                 + BaseEncoding.base64().encode(applicationKey);
-        byte[] signatureExpected = new HMACHashUtilities().hash(applicationSecret, signatureBaseString.getBytes(StandardCharsets.UTF_8));
-        return Arrays.equals(signatureExpected, signature);
     }
 
     /**
@@ -287,7 +346,7 @@ public class PowerAuthServerActivation {
         String activationIdBytesBase64 = BaseEncoding.base64().encode(activationIdBytes);
         String C_serverPublicKeyBase64 = BaseEncoding.base64().encode(C_serverPublicKey);
         byte[] result = (activationIdBytesBase64 + "&" + C_serverPublicKeyBase64).getBytes(StandardCharsets.UTF_8);
-        return signatureUtils.computeECDSASignature(result, masterPrivateKey);
+        return signatureUtils.computeECDSASignature(result, masterPrivateKey, signatureMode);
     }
 
     /**
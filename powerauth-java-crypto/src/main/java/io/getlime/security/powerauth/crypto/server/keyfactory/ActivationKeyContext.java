@@ -0,0 +1,374 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.server.keyfactory;
+
+import io.getlime.security.powerauth.crypto.lib.enums.PowerAuthDerivedKey;
+import io.getlime.security.powerauth.crypto.lib.enums.PowerAuthSignatureTypes;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyDerivationEngine;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
+import io.getlime.security.powerauth.crypto.lib.util.HmacKeyContext;
+import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
+
+import javax.crypto.SecretKey;
+import javax.security.auth.DestroyFailedException;
+import javax.security.auth.Destroyable;
+import java.security.InvalidKeyException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Server side key context of a single activation. The context computes the master secret key KEY_MASTER_SECRET
+ * from KEY_SERVER_PRIVATE and KEY_DEVICE_PUBLIC once, and derives the transport key, the vault encryption key
+ * and the signature keys lazily on first use. Derived keys are kept for the lifetime of the context, so use
+ * the context for processing of a request or a short sequence of requests of one activation.
+ *
+ * <p>The context is thread-safe. The owner of the context may call {@link #destroy()} once the context is no
+ * longer needed by any thread, the context then erases bytes of the master secret key and derived keys and it
+ * cannot be used anymore. Keys obtained from the context before it was destroyed fail with an exception instead
+ * of providing erased key bytes. Copies of key material made by cryptographic engines are not affected.
+ * Contexts shared using {@link ActivationKeyContextCache} are leased to callers and the cache destroys them
+ * once they are evicted and the last lease is released.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class ActivationKeyContext implements Destroyable {
+
+    private final SecretKey masterSecretKey;
+    private final KeyDerivationEngine keyDerivation;
+    private boolean destroyed;
+    private boolean evicted;
+    private int leaseCount;
+
+    private final Map<PowerAuthDerivedKey, SecretKey> derivedKeys = new EnumMap<>(PowerAuthDerivedKey.class);
+    private final Map<PowerAuthDerivedKey, HmacKeyContext> derivedKeyContexts = new EnumMap<>(PowerAuthDerivedKey.class);
+    private final Map<PowerAuthSignatureTypes, List<SecretKey>> signatureKeys = new EnumMap<>(PowerAuthSignatureTypes.class);
+    private final Map<PowerAuthSignatureTypes, List<HmacKeyContext>> signatureKeyContexts = new EnumMap<>(PowerAuthSignatureTypes.class);
+
+    /**
+     * Construct an activation key context from server private key and device public key.
+     *
+     * @param serverPrivateKey Server private key KEY_SERVER_PRIVATE.
+     * @param devicePublicKey Device public key KEY_DEVICE_PUBLIC.
+     * @throws InvalidKeyException In case some provided key is invalid.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public ActivationKeyContext(PrivateKey serverPrivateKey, PublicKey devicePublicKey) throws InvalidKeyException, CryptoProviderException {
+        this(computeMasterSecretKey(serverPrivateKey, devicePublicKey));
+    }
+
+    /**
+     * Construct an activation key context from a master secret key.
+     *
+     * @param masterSecretKey Master secret key KEY_MASTER_SECRET.
+     * @throws InvalidKeyException In case master secret key is invalid.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public ActivationKeyContext(SecretKey masterSecretKey) throws InvalidKeyException, CryptoProviderException {
+        this.masterSecretKey = masterSecretKey;
+        this.keyDerivation = new KeyDerivationEngine(masterSecretKey);
+    }
+
+    /**
+     * Get master secret key KEY_MASTER_SECRET.
+     *
+     * @return Master secret key KEY_MASTER_SECRET.
+     * @throws GenericCryptoException In case the context was destroyed.
+     */
+    public synchronized SecretKey getMasterSecretKey() throws GenericCryptoException {
+        checkNotDestroyed();
+        return masterSecretKey;
+    }
+
+    /**
+     * Get transport key KEY_TRANSPORT.
+     *
+     * @return Transport key KEY_TRANSPORT.
+     * @throws GenericCryptoException In case key derivation fails.
+     */
+    public SecretKey getTransportKey() throws GenericCryptoException {
+        return getDerivedKey(PowerAuthDerivedKey.TRANSPORT);
+    }
+
+    /**
+     * Get vault encryption key KEY_ENCRYPTED_VAULT.
+     *
+     * @return Vault encryption key KEY_ENCRYPTED_VAULT.
+     * @throws GenericCryptoException In case key derivation fails.
+     */
+    public SecretKey getVaultEncryptionKey() throws GenericCryptoException {
+        return getDerivedKey(PowerAuthDerivedKey.ENCRYPTED_VAULT);
+    }
+
+    /**
+     * Get a derived key with given identifier.
+     *
+     * @param derivedKey Derived key identifier.
+     * @return Derived key.
+     * @throws GenericCryptoException In case key derivation fails.
+     */
+    public synchronized SecretKey getDerivedKey(PowerAuthDerivedKey derivedKey) throws GenericCryptoException {
+        checkNotDestroyed();
+        SecretKey key = derivedKeys.get(derivedKey);
+        if (key == null) {
+            key = new WipeableSecretKey(keyDerivation.deriveKeyBytes(derivedKey.getIndex()));
+            derivedKeys.put(derivedKey, key);
+        }
+        return key;
+    }
+
+    /**
+     * Get signature keys needed for given signature type, in the order of signature factors.
+     *
+     * @param signatureType Signature type.
+     * @return Unmodifiable list of signature keys.
+     * @throws GenericCryptoException In case key derivation fails.
+     */
+    public synchronized List<SecretKey> getSignatureKeys(PowerAuthSignatureTypes signatureType) throws GenericCryptoException {
+        checkNotDestroyed();
+        List<SecretKey> keys = signatureKeys.get(signatureType);
+        if (keys == null) {
+            final PowerAuthDerivedKey[] factorKeys = factorKeys(signatureType);
+            keys = new ArrayList<>(factorKeys.length);
+            for (PowerAuthDerivedKey factorKey : factorKeys) {
+                keys.add(getDerivedKey(factorKey));
+            }
+            keys = Collections.unmodifiableList(keys);
+            signatureKeys.put(signatureType, keys);
+        }
+        return keys;
+    }
+
+    /**
+     * Get precomputed HMAC key contexts of signature keys needed for given signature type, in the order
+     * of signature factors.
+     *
+     * @param signatureType Signature type.
+     * @return Unmodifiable list of HMAC key contexts of signature keys.
+     * @throws GenericCryptoException In case key derivation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public synchronized List<HmacKeyContext> getSignatureKeyContexts(PowerAuthSignatureTypes signatureType) throws GenericCryptoException, CryptoProviderException {
+        checkNotDestroyed();
+        List<HmacKeyContext> contexts = signatureKeyContexts.get(signatureType);
+        if (contexts == null) {
+            final PowerAuthDerivedKey[] factorKeys = factorKeys(signatureType);
+            contexts = new ArrayList<>(factorKeys.length);
+            for (PowerAuthDerivedKey factorKey : factorKeys) {
+                HmacKeyContext context = derivedKeyContexts.get(factorKey);
+                if (context == null) {
+                    context = new HmacKeyContext(getDerivedKey(factorKey));
+                    derivedKeyContexts.put(factorKey, context);
+                }
+                contexts.add(context);
+            }
+            contexts = Collections.unmodifiableList(contexts);
+            signatureKeyContexts.put(signatureType, contexts);
+        }
+        return contexts;
+    }
+
+    /**
+     * Destroy the context. Bytes of the master secret key and derived keys are erased, precomputed HMAC key
+     * contexts and the key derivation engine are destroyed and subsequent calls of methods providing keys fail.
+     */
+    @Override
+    public synchronized void destroy() {
+        if (destroyed) {
+            return;
+        }
+        destroyed = true;
+        for (HmacKeyContext context : derivedKeyContexts.values()) {
+            context.destroy();
+        }
+        for (SecretKey key : derivedKeys.values()) {
+            destroyKey(key);
+        }
+        keyDerivation.destroy();
+        destroyKey(masterSecretKey);
+        derivedKeys.clear();
+        derivedKeyContexts.clear();
+        signatureKeys.clear();
+        signatureKeyContexts.clear();
+    }
+
+    /**
+     * Get whether the context was destroyed.
+     *
+     * @return True in case the context was destroyed.
+     */
+    @Override
+    public synchronized boolean isDestroyed() {
+        return destroyed;
+    }
+
+    /**
+     * Acquire a lease of a cached context. Leased context is not destroyed until the lease is released.
+     *
+     * @return True in case the lease was acquired, false in case the context was already evicted.
+     */
+    synchronized boolean acquireLease() {
+        if (evicted || destroyed) {
+            return false;
+        }
+        leaseCount++;
+        return true;
+    }
+
+    /**
+     * Release a lease of a cached context. The context is destroyed when the last lease of an evicted context
+     * is released.
+     */
+    synchronized void releaseLease() {
+        if (leaseCount == 0) {
+            throw new IllegalStateException("Activation key context is not leased");
+        }
+        leaseCount--;
+        if (evicted && leaseCount == 0) {
+            destroy();
+        }
+    }
+
+    /**
+     * Mark a cached context as evicted from the cache. The context is destroyed immediately in case it is not
+     * leased, otherwise it is destroyed when the last lease is released.
+     */
+    synchronized void markEvicted() {
+        evicted = true;
+        if (leaseCount == 0) {
+            destroy();
+        }
+    }
+
+    /**
+     * Check that the context was not destroyed.
+     *
+     * @throws GenericCryptoException In case the context was destroyed.
+     */
+    private void checkNotDestroyed() throws GenericCryptoException {
+        if (destroyed) {
+            throw new GenericCryptoException("Activation key context was destroyed");
+        }
+    }
+
+    /**
+     * Compute master secret key KEY_MASTER_SECRET using ECDH.
+     *
+     * @param serverPrivateKey Server private key KEY_SERVER_PRIVATE.
+     * @param devicePublicKey Device public key KEY_DEVICE_PUBLIC.
+     * @return Master secret key KEY_MASTER_SECRET.
+     * @throws InvalidKeyException In case some provided key is invalid.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    private static SecretKey computeMasterSecretKey(PrivateKey serverPrivateKey, PublicKey devicePublicKey) throws InvalidKeyException, CryptoProviderException {
+        try {
+            return new WipeableSecretKey(new KeyGenerator().computeSharedSecret(serverPrivateKey, devicePublicKey, false));
+        } catch (GenericCryptoException ex) {
+            throw new InvalidKeyException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Destroy a secret key, keys which do not support destruction are only released.
+     *
+     * @param key Secret key.
+     */
+    private static void destroyKey(SecretKey key) {
+        try {
+            key.destroy();
+        } catch (DestroyFailedException ex) {
+            // Key implementation does not support destruction
+        }
+    }
+
+    /**
+     * Get identifiers of signature keys needed for given signature type.
+     *
+     * @param signatureType Signature type.
+     * @return Derived key identifiers in the order of signature factors.
+     */
+    private static PowerAuthDerivedKey[] factorKeys(PowerAuthSignatureTypes signatureType) {
+        switch (signatureType) {
+            case POSSESSION:
+                return new PowerAuthDerivedKey[] {PowerAuthDerivedKey.SIGNATURE_POSSESSION};
+            case KNOWLEDGE:
+                return new PowerAuthDerivedKey[] {PowerAuthDerivedKey.SIGNATURE_KNOWLEDGE};
+            case BIOMETRY:
+                return new PowerAuthDerivedKey[] {PowerAuthDerivedKey.SIGNATURE_BIOMETRY};
+            case POSSESSION_KNOWLEDGE:
+                return new PowerAuthDerivedKey[] {PowerAuthDerivedKey.SIGNATURE_POSSESSION, PowerAuthDerivedKey.SIGNATURE_KNOWLEDGE};
+            case POSSESSION_BIOMETRY:
+                return new PowerAuthDerivedKey[] {PowerAuthDerivedKey.SIGNATURE_POSSESSION, PowerAuthDerivedKey.SIGNATURE_BIOMETRY};
+            case POSSESSION_KNOWLEDGE_BIOMETRY:
+                return new PowerAuthDerivedKey[] {PowerAuthDerivedKey.SIGNATURE_POSSESSION, PowerAuthDerivedKey.SIGNATURE_KNOWLEDGE, PowerAuthDerivedKey.SIGNATURE_BIOMETRY};
+            default:
+                return new PowerAuthDerivedKey[0];
+        }
+    }
+
+    /**
+     * Secret key which erases its key bytes when destroyed.
+     */
+    private static final class WipeableSecretKey implements SecretKey {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] keyBytes;
+        private boolean destroyed;
+
+        WipeableSecretKey(byte[] keyBytes) {
+            this.keyBytes = keyBytes;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return "AES";
+        }
+
+        @Override
+        public String getFormat() {
+            return "RAW";
+        }
+
+        @Override
+        public synchronized byte[] getEncoded() {
+            // Key bytes are copied and erased under the same lock, so erased bytes are never returned
+            if (destroyed) {
+                throw new IllegalStateException("Key was destroyed");
+            }
+            return keyBytes.clone();
+        }
+
+        @Override
+        public synchronized void destroy() {
+            destroyed = true;
+            Arrays.fill(keyBytes, (byte) 0);
+        }
+
+        @Override
+        public synchronized boolean isDestroyed() {
+            return destroyed;
+        }
+    }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.server.keyfactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
+
+import java.security.InvalidKeyException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of activation key contexts, so that repeated requests of an activation do not compute
+ * KEY_MASTER_SECRET using ECDH and derive the keys again. Contexts are identified by activation ID and key
+ * version, the key version must change whenever the server or device key of the activation changes.
+ *
+ * <p>The cache is limited both by the number of contexts and by the time since a context was created. The
+ * cache is divided into independently locked segments, so that concurrent requests of different activations
+ * do not block each other.
+ *
+ * <p>Contexts are leased to callers: {@link #acquire(String, int, PrivateKey, PublicKey)} returns a context
+ * with a lease and the caller must pass it to {@link #release(ActivationKeyContext)} once the request is
+ * processed, typically in a finally block. Evicted and invalidated contexts are destroyed when the last lease
+ * is released, so that key material of evicted activations does not stay in memory. Contexts obtained from
+ * the cache must not be destroyed by callers.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class ActivationKeyContextCache {
+
+    private final Cache<CacheKey, ActivationKeyContext> cache;
+
+    /**
+     * Construct a cache with given limits.
+     *
+     * @param maximumSize Maximum number of cached activation key contexts.
+     * @param timeToLive Maximum time since creation of a context after which it is evicted.
+     * @param timeUnit Time unit of the time to live.
+     */
+    public ActivationKeyContextCache(long maximumSize, long timeToLive, TimeUnit timeUnit) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive, timeUnit)
+                .recordStats()
+                .removalListener((RemovalNotification<CacheKey, ActivationKeyContext> notification) -> {
+                    final ActivationKeyContext context = notification.getValue();
+                    if (context != null) {
+                        context.markEvicted();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Acquire a lease of a key context of an activation from the cache, or create the context from server private
+     * key and device public key in case it is not cached. The context must be released using
+     * {@link #release(ActivationKeyContext)}.
+     *
+     * @param activationId Activation ID.
+     * @param keyVersion Version of activation keys.
+     * @param serverPrivateKey Server private key KEY_SERVER_PRIVATE.
+     * @param devicePublicKey Device public key KEY_DEVICE_PUBLIC.
+     * @return Leased activation key context.
+     * @throws InvalidKeyException In case some provided key is invalid.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public ActivationKeyContext acquire(String activationId, int keyVersion, PrivateKey serverPrivateKey, PublicKey devicePublicKey) throws InvalidKeyException, CryptoProviderException {
+        final CacheKey cacheKey = new CacheKey(activationId, keyVersion);
+        while (true) {
+            final ActivationKeyContext context = load(cacheKey, serverPrivateKey, devicePublicKey);
+            // The context may be evicted between lookup and lease, the lookup is repeated in this case
+            if (context.acquireLease()) {
+                return context;
+            }
+        }
+    }
+
+    /**
+     * Release a lease of a key context acquired using {@link #acquire(String, int, PrivateKey, PublicKey)}.
+     * The context must not be used by the caller after it is released.
+     *
+     * @param context Leased activation key context.
+     */
+    public void release(ActivationKeyContext context) {
+        context.releaseLease();
+    }
+
+    /**
+     * Get a key context from the cache, or create it in case it is not cached.
+     *
+     * @param cacheKey Key of the cached context.
+     * @param serverPrivateKey Server private key KEY_SERVER_PRIVATE.
+     * @param devicePublicKey Device public key KEY_DEVICE_PUBLIC.
+     * @return Activation key context.
+     * @throws InvalidKeyException In case some provided key is invalid.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    private ActivationKeyContext load(CacheKey cacheKey, PrivateKey serverPrivateKey, PublicKey devicePublicKey) throws InvalidKeyException, CryptoProviderException {
+        try {
+            return cache.get(cacheKey, () -> new ActivationKeyContext(serverPrivateKey, devicePublicKey));
+        } catch (ExecutionException | UncheckedExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof InvalidKeyException) {
+                throw (InvalidKeyException) cause;
+            }
+            if (cause instanceof CryptoProviderException) {
+                throw (CryptoProviderException) cause;
+            }
+            throw new CryptoProviderException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Remove a key context of an activation with given key version from the cache.
+     *
+     * @param activationId Activation ID.
+     * @param keyVersion Version of activation keys.
+     */
+    public void invalidate(String activationId, int keyVersion) {
+        cache.invalidate(new CacheKey(activationId, keyVersion));
+    }
+
+    /**
+     * Remove all key contexts from the cache.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Get approximate number of cached key contexts.
+     *
+     * @return Number of cached key contexts.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Get number of requests for key contexts which were found in the cache.
+     *
+     * @return Number of cache hits.
+     */
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    /**
+     * Get number of requests for key contexts which were not found in the cache.
+     *
+     * @return Number of cache misses.
+     */
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    /**
+     * Get cache statistics, including hit, miss and eviction counts.
+     *
+     * @return Cache statistics.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Key of a cached activation key context.
+     */
+    private static final class CacheKey {
+
+        private final String activationId;
+        private final int keyVersion;
+
+        CacheKey(String activationId, int keyVersion) {
+            this.activationId = activationId;
+            this.keyVersion = keyVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final CacheKey cacheKey = (CacheKey) o;
+            return keyVersion == cacheKey.keyVersion && activationId.equals(cacheKey.activationId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(activationId, keyVersion);
+        }
+    }
+
+}
@@ -18,6 +18,7 @@ package io.getlime.security.powerauth.crypto.server.keyfactory;
 
 import io.getlime.security.powerauth.crypto.lib.enums.PowerAuthDerivedKey;
 import io.getlime.security.powerauth.crypto.lib.enums.PowerAuthSignatureTypes;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyDerivationEngine;
 import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
 import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
 import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
@@ -39,6 +40,24 @@ import java.util.List;
 public class PowerAuthServerKeyFactory {
 
     private final KeyGenerator keyGenerator = new KeyGenerator();
+    private final ActivationKeyContextCache keyContextCache;
+
+    /**
+     * Default constructor, activation key contexts are not cached.
+     */
+    public PowerAuthServerKeyFactory() {
+        this(null);
+    }
+
+    /**
+     * Constructor with a cache of activation key contexts used by
+     * {@link #acquireActivationKeyContext(String, int, PrivateKey, PublicKey)}.
+     *
+     * @param keyContextCache Cache of activation key contexts, null disables caching.
+     */
+    public PowerAuthServerKeyFactory(ActivationKeyContextCache keyContextCache) {
+        this.keyContextCache = keyContextCache;
+    }
 
     /**
      * Generate a list with signature keys for given signature type and master secret
@@ -54,42 +73,45 @@ public class PowerAuthServerKeyFactory {
 
         List<SecretKey> signatureKeys = new ArrayList<>();
 
+        // Expand the master secret key only once for all signature keys
+        KeyDerivationEngine keyDerivation = new KeyDerivationEngine(masterSecretKey);
+
         if (signatureType.equals(PowerAuthSignatureTypes.POSSESSION)) {
 
-            SecretKey signatureKey = generateServerSignaturePossessionKey(masterSecretKey);
+            SecretKey signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_POSSESSION.getIndex());
             signatureKeys.add(signatureKey);
 
         } else if (signatureType.equals(PowerAuthSignatureTypes.KNOWLEDGE)) {
 
-            SecretKey signatureKey = generateServerSignatureKnowledgeKey(masterSecretKey);
+            SecretKey signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_KNOWLEDGE.getIndex());
             signatureKeys.add(signatureKey);
 
         } else if (signatureType.equals(PowerAuthSignatureTypes.BIOMETRY)) {
 
-            SecretKey signatureKey = generateServerSignatureBiometryKey(masterSecretKey);
+            SecretKey signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_BIOMETRY.getIndex());
             signatureKeys.add(signatureKey);
 
         } else if (signatureType.equals(PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE)) {
 
-            SecretKey signatureKey = generateServerSignaturePossessionKey(masterSecretKey);
+            SecretKey signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_POSSESSION.getIndex());
             signatureKeys.add(signatureKey);
-            signatureKey = generateServerSignatureKnowledgeKey(masterSecretKey);
+            signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_KNOWLEDGE.getIndex());
             signatureKeys.add(signatureKey);
 
         } else if (signatureType.equals(PowerAuthSignatureTypes.POSSESSION_BIOMETRY)) {
 
-            SecretKey signatureKey = generateServerSignaturePossessionKey(masterSecretKey);
+            SecretKey signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_POSSESSION.getIndex());
             signatureKeys.add(signatureKey);
-            signatureKey = generateServerSignatureBiometryKey(masterSecretKey);
+            signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_BIOMETRY.getIndex());
             signatureKeys.add(signatureKey);
 
         } else if (signatureType.equals(PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE_BIOMETRY)) {
 
-            SecretKey signatureKey = generateServerSignaturePossessionKey(masterSecretKey);
+            SecretKey signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_POSSESSION.getIndex());
             signatureKeys.add(signatureKey);
-            signatureKey = generateServerSignatureKnowledgeKey(masterSecretKey);
+            signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_KNOWLEDGE.getIndex());
             signatureKeys.add(signatureKey);
-            signatureKey = generateServerSignatureBiometryKey(masterSecretKey);
+            signatureKey = keyDerivation.deriveSecretKey(PowerAuthDerivedKey.SIGNATURE_BIOMETRY.getIndex());
             signatureKeys.add(signatureKey);
 
         }
@@ -223,4 +245,76 @@ public class PowerAuthServerKeyFactory {
         return generateServerTransportKey(masterSecretKey);
     }
 
+    /**
+     * Create a key context of an activation, which computes KEY_MASTER_SECRET using KEY_SERVER_PRIVATE
+     * and KEY_DEVICE_PUBLIC once and derives other keys on first use.
+     *
+     * @param serverPrivateKey Server private key KEY_SERVER_PRIVATE.
+     * @param devicePublicKey Device public key KEY_DEVICE_PUBLIC.
+     * @return Activation key context.
+     * @throws InvalidKeyException In case some provided key is invalid.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public ActivationKeyContext createActivationKeyContext(PrivateKey serverPrivateKey, PublicKey devicePublicKey) throws InvalidKeyException, CryptoProviderException {
+        return new ActivationKeyContext(serverPrivateKey, devicePublicKey);
+    }
+
+    /**
+     * Get a list with signature keys for given signature type from an activation key context.
+     *
+     * @param signatureType Requested signature type.
+     * @param keyContext Activation key context.
+     * @return List with keys that are needed to get requested signature type.
+     * @throws GenericCryptoException In case key derivation fails.
+     */
+    public List<SecretKey> keysForSignatureType(PowerAuthSignatureTypes signatureType, ActivationKeyContext keyContext) throws GenericCryptoException {
+        return keyContext.getSignatureKeys(signatureType);
+    }
+
+    /**
+     * Get transport key KEY_TRANSPORT from an activation key context.
+     *
+     * @param keyContext Activation key context.
+     * @return Transport key KEY_TRANSPORT.
+     * @throws GenericCryptoException In case key derivation fails.
+     */
+    public SecretKey deriveTransportKey(ActivationKeyContext keyContext) throws GenericCryptoException {
+        return keyContext.getTransportKey();
+    }
+
+    /**
+     * Acquire a key context of an activation. The context is leased from the cache of activation key contexts
+     * in case the factory was constructed with a cache, otherwise a new context is created. The context must be
+     * released using {@link #releaseActivationKeyContext(ActivationKeyContext)} once it is no longer used.
+     *
+     * @param activationId Activation ID.
+     * @param keyVersion Version of activation keys, it must change whenever the server or device key changes.
+     * @param serverPrivateKey Server private key KEY_SERVER_PRIVATE.
+     * @param devicePublicKey Device public key KEY_DEVICE_PUBLIC.
+     * @return Activation key context.
+     * @throws InvalidKeyException In case some provided key is invalid.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public ActivationKeyContext acquireActivationKeyContext(String activationId, int keyVersion, PrivateKey serverPrivateKey, PublicKey devicePublicKey) throws InvalidKeyException, CryptoProviderException {
+        if (keyContextCache == null) {
+            return createActivationKeyContext(serverPrivateKey, devicePublicKey);
+        }
+        return keyContextCache.acquire(activationId, keyVersion, serverPrivateKey, devicePublicKey);
+    }
+
+    /**
+     * Release a key context acquired using {@link #acquireActivationKeyContext(String, int, PrivateKey, PublicKey)}.
+     * A cached context is destroyed once it is evicted from the cache and no other lease exists, a context
+     * created without a cache is destroyed immediately.
+     *
+     * @param keyContext Activation key context.
+     */
+    public void releaseActivationKeyContext(ActivationKeyContext keyContext) {
+        if (keyContextCache == null) {
+            keyContext.destroy();
+            return;
+        }
+        keyContextCache.release(keyContext);
+    }
+
 }
@@ -16,12 +16,21 @@
  */
 package io.getlime.security.powerauth.crypto.server.signature;
 
+import io.getlime.security.powerauth.crypto.lib.enums.PowerAuthSignatureTypes;
+import io.getlime.security.powerauth.crypto.lib.model.SignatureVerificationResult;
+import io.getlime.security.powerauth.crypto.lib.model.SignatureVerificationTask;
 import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
+import io.getlime.security.powerauth.crypto.lib.util.HmacKeyContext;
+import io.getlime.security.powerauth.crypto.lib.util.PowerAuthSignatureEngine;
 import io.getlime.security.powerauth.crypto.lib.util.SignatureUtils;
+import io.getlime.security.powerauth.crypto.server.keyfactory.ActivationKeyContext;
 import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
 
 import javax.crypto.SecretKey;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Class implementing processes PowerAuth Server uses to compute and validate
@@ -32,6 +41,11 @@ import java.util.List;
  */
 public class PowerAuthServerSignature {
 
+    /**
+     * Number of verification tasks below which a batch is not split further.
+     */
+    private static final int BATCH_SPLIT_THRESHOLD = 16;
+
     private final SignatureUtils signatureUtils = new SignatureUtils();
 
     /**
@@ -50,4 +64,227 @@ public class PowerAuthServerSignature {
         return signatureUtils.validatePowerAuthSignature(data, signature, signatureKeys, ctrData);
     }
 
+    /**
+     * Create precomputed HMAC key contexts for given signature keys. The contexts can be kept for the
+     * activation and reused by {@link #verifySignatureForKeyContexts(byte[], String, List, byte[])}.
+     *
+     * @param signatureKeys Keys used for signature.
+     * @return HMAC key contexts of the signature keys.
+     * @throws GenericCryptoException In case any of the keys is invalid.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public List<HmacKeyContext> createSignatureKeyContexts(List<SecretKey> signatureKeys) throws GenericCryptoException, CryptoProviderException {
+        return signatureUtils.createSignatureKeyContexts(signatureKeys);
+    }
+
+    /**
+     * Verify a PowerAuth signature against data using precomputed signature key contexts and
+     * counter.
+     *
+     * @param data Signed data.
+     * @param signature Signature for the data.
+     * @param signatureKeyContexts HMAC key contexts of keys used for signature.
+     * @param ctrData Hash based counter / derived signing key index.
+     * @return Returns "true" if the signature matches, "false" otherwise.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public boolean verifySignatureForKeyContexts(byte[] data, String signature, List<HmacKeyContext> signatureKeyContexts, byte[] ctrData) throws GenericCryptoException, CryptoProviderException {
+        return signatureUtils.validatePowerAuthSignatureForKeyContexts(data, signature, signatureKeyContexts, ctrData);
+    }
+
+    /**
+     * Verify a PowerAuth signature against data using signature key list and counter in fail-fast mode.
+     * The verification stops at the first signature component which does not match, so its time reveals
+     * the index of the first mismatching component. Do not use this method when this is a concern, and do
+     * not combine it with a counter look-ahead in such case.
+     *
+     * @param data Signed data.
+     * @param signature Signature for the data.
+     * @param signatureKeys Keys used for signature.
+     * @param ctrData Hash based counter / derived signing key index.
+     * @return Returns "true" if the signature matches, "false" otherwise.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     * @see SignatureUtils#validatePowerAuthSignatureFailFast(byte[], String, List, byte[])
+     */
+    public boolean verifySignatureFailFastForData(byte[] data, String signature, List<SecretKey> signatureKeys, byte[] ctrData) throws GenericCryptoException, CryptoProviderException {
+        return signatureUtils.validatePowerAuthSignatureFailFast(data, signature, signatureKeys, ctrData);
+    }
+
+    /**
+     * Verify a PowerAuth signature against data using precomputed signature key contexts and counter in
+     * fail-fast mode, see {@link #verifySignatureFailFastForData(byte[], String, List, byte[])}.
+     *
+     * @param data Signed data.
+     * @param signature Signature for the data.
+     * @param signatureKeyContexts HMAC key contexts of keys used for signature.
+     * @param ctrData Hash based counter / derived signing key index.
+     * @return Returns "true" if the signature matches, "false" otherwise.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public boolean verifySignatureFailFastForKeyContexts(byte[] data, String signature, List<HmacKeyContext> signatureKeyContexts, byte[] ctrData) throws GenericCryptoException, CryptoProviderException {
+        return signatureUtils.validatePowerAuthSignatureFailFastForKeyContexts(data, signature, signatureKeyContexts, ctrData);
+    }
+
+    /**
+     * Verify each signature factor of a PowerAuth signature against data using signature key list and counter.
+     * Bit i of the result is set in case signature component i matches.
+     *
+     * @param data Signed data.
+     * @param signature Signature for the data.
+     * @param signatureKeys Keys used for signature.
+     * @param ctrData Hash based counter / derived signing key index.
+     * @return Bit mask of matching signature factors, 0 in case no factor matches or the signature format is invalid.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     * @see PowerAuthSignatureEngine#isSignatureValid(int, int)
+     */
+    public int verifySignatureFactorsForData(byte[] data, String signature, List<SecretKey> signatureKeys, byte[] ctrData) throws GenericCryptoException, CryptoProviderException {
+        return signatureUtils.validatePowerAuthSignatureFactors(data, signature, signatureKeys, ctrData);
+    }
+
+    /**
+     * Verify each signature factor of a PowerAuth signature against data using precomputed signature key
+     * contexts and counter. Bit i of the result is set in case signature component i matches.
+     *
+     * @param data Signed data.
+     * @param signature Signature for the data.
+     * @param signatureKeyContexts HMAC key contexts of keys used for signature.
+     * @param ctrData Hash based counter / derived signing key index.
+     * @return Bit mask of matching signature factors, 0 in case no factor matches or the signature format is invalid.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     * @see PowerAuthSignatureEngine#isSignatureValid(int, int)
+     */
+    public int verifySignatureFactorsForKeyContexts(byte[] data, String signature, List<HmacKeyContext> signatureKeyContexts, byte[] ctrData) throws GenericCryptoException, CryptoProviderException {
+        return signatureUtils.validatePowerAuthSignatureFactorsForKeyContexts(data, signature, signatureKeyContexts, ctrData);
+    }
+
+    /**
+     * Verify a PowerAuth signature against data using signature key list with counter look-ahead. The client
+     * may be ahead with the hash based counter, so the signature is verified for the expected counter data
+     * and the following counter values up to the tolerance.
+     *
+     * @param data Signed data.
+     * @param signature Signature for the data.
+     * @param signatureKeys Keys used for signature.
+     * @param ctrData Expected hash based counter data.
+     * @param tolerance Number of counter values to try, starting with the expected counter data.
+     * @return Verification result with the matching counter offset and the next counter data.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public SignatureVerificationResult verifySignatureForData(byte[] data, String signature, List<SecretKey> signatureKeys, byte[] ctrData, int tolerance) throws GenericCryptoException, CryptoProviderException {
+        return verifySignatureForKeyContexts(data, signature, createSignatureKeyContexts(signatureKeys), ctrData, tolerance);
+    }
+
+    /**
+     * Verify a PowerAuth signature against data using precomputed signature key contexts with counter
+     * look-ahead. The client may be ahead with the hash based counter, so the signature is verified for
+     * the expected counter data and the following counter values up to the tolerance.
+     *
+     * @param data Signed data.
+     * @param signature Signature for the data.
+     * @param signatureKeyContexts HMAC key contexts of keys used for signature.
+     * @param ctrData Expected hash based counter data.
+     * @param tolerance Number of counter values to try, starting with the expected counter data.
+     * @return Verification result with the matching counter offset and the next counter data.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public SignatureVerificationResult verifySignatureForKeyContexts(byte[] data, String signature, List<HmacKeyContext> signatureKeyContexts, byte[] ctrData, int tolerance) throws GenericCryptoException, CryptoProviderException {
+        return new PowerAuthSignatureEngine(signatureKeyContexts).verifySignature(data, signature, ctrData, tolerance);
+    }
+
+    /**
+     * Verify a PowerAuth signature against data using signature keys of given signature type from
+     * an activation key context, with counter look-ahead.
+     *
+     * @param data Signed data.
+     * @param signature Signature for the data.
+     * @param keyContext Activation key context.
+     * @param signatureType Signature type, which determines the signature keys.
+     * @param ctrData Expected hash based counter data.
+     * @param tolerance Number of counter values to try, starting with the expected counter data.
+     * @return Verification result with the matching counter offset and the next counter data.
+     * @throws GenericCryptoException In case signature computation fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     * @see #verifySignatureForKeyContexts(byte[], String, List, byte[], int)
+     */
+    public SignatureVerificationResult verifySignatureForActivation(byte[] data, String signature, ActivationKeyContext keyContext, PowerAuthSignatureTypes signatureType, byte[] ctrData, int tolerance) throws GenericCryptoException, CryptoProviderException {
+        return verifySignatureForKeyContexts(data, signature, keyContext.getSignatureKeyContexts(signatureType), ctrData, tolerance);
+    }
+
+    /**
+     * Verify a batch of PowerAuth signatures using the common fork-join pool.
+     *
+     * @param tasks Signature verification tasks.
+     * @return Verification results in the order of the tasks.
+     * @see #verifySignatures(List, ForkJoinPool)
+     */
+    public List<SignatureVerificationResult> verifySignatures(List<SignatureVerificationTask> tasks) {
+        return verifySignatures(tasks, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Verify a batch of PowerAuth signatures in parallel using provided fork-join pool. Each signature is verified
+     * with counter look-ahead, see {@link #verifySignatureForKeyContexts(byte[], String, List, byte[], int)}.
+     * The batch is recursively split between pool workers. Each worker uses its own cryptographic engines, the
+     * signature key contexts may be shared by several tasks.
+     *
+     * <p>A task which cannot be verified, for example due to malformed counter data or missing signature keys,
+     * does not affect other tasks. Its result is an invalid signature with the error available in
+     * {@link SignatureVerificationResult#getError()}.
+     *
+     * @param tasks Signature verification tasks.
+     * @param pool Fork-join pool used for verification, its parallelism determines the number of workers.
+     * @return Verification results in the order of the tasks.
+     */
+    public List<SignatureVerificationResult> verifySignatures(List<SignatureVerificationTask> tasks, ForkJoinPool pool) {
+        final SignatureVerificationTask[] taskArray = tasks.toArray(new SignatureVerificationTask[0]);
+        final SignatureVerificationResult[] results = new SignatureVerificationResult[taskArray.length];
+        pool.invoke(new BatchVerificationAction(taskArray, results, 0, taskArray.length));
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Fork-join action verifying a range of signature verification tasks.
+     */
+    private static class BatchVerificationAction extends RecursiveAction {
+
+        private final SignatureVerificationTask[] tasks;
+        private final SignatureVerificationResult[] results;
+        private final int from;
+        private final int to;
+
+        BatchVerificationAction(SignatureVerificationTask[] tasks, SignatureVerificationResult[] results, int from, int to) {
+            this.tasks = tasks;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_SPLIT_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    final SignatureVerificationTask task = tasks[i];
+                    try {
+                        results[i] = new PowerAuthSignatureEngine(task.getSignatureKeyContexts())
+                                .verifySignature(task.getData(), task.getSignature(), task.getCtrData(), task.getTolerance());
+                    } catch (GenericCryptoException | CryptoProviderException | RuntimeException ex) {
+                        // Failure of a single task is reported in its result, the other tasks are not affected
+                        results[i] = SignatureVerificationResult.failed(ex);
+                    }
+                }
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            invokeAll(new BatchVerificationAction(tasks, results, from, middle),
+                    new BatchVerificationAction(tasks, results, middle, to));
+        }
+    }
+
 }
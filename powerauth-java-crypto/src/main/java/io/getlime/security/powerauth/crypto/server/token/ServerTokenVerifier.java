@@ -17,6 +17,7 @@
 package io.getlime.security.powerauth.crypto.server.token;
 
 import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
+import io.getlime.security.powerauth.crypto.lib.util.HmacKeyContext;
 import io.getlime.security.powerauth.crypto.lib.util.TokenUtils;
 import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
 
@@ -54,4 +55,29 @@ public class ServerTokenVerifier {
         return tokenUtils.validateTokenDigest(nonce, timestamp, tokenSecret, tokenDigest);
     }
 
+    /**
+     * Create a precomputed HMAC key context for given token secret. The context can be kept for the lifetime
+     * of the token and reused for validation of all its digests.
+     * @param tokenSecret Token secret, 16 random bytes.
+     * @return HMAC key context of the token secret.
+     * @throws GenericCryptoException In case the token secret is invalid.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public HmacKeyContext createTokenSecretContext(byte[] tokenSecret) throws GenericCryptoException, CryptoProviderException {
+        return new HmacKeyContext(tokenSecret);
+    }
+
+    /**
+     * Validate provided token digest for given input data and a precomputed token secret context.
+     * @param nonce Token nonce, 16 random bytes.
+     * @param timestamp Token timestamp, Unix timestamp format encoded as bytes (from string representation).
+     * @param tokenSecretContext HMAC key context of the token secret, see {@link #createTokenSecretContext(byte[])}.
+     * @param tokenDigest Token digest, 32 bytes to be validated.
+     * @return Token digest computed using provided data bytes with given token secret.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public boolean validateTokenDigest(byte[] nonce, byte[] timestamp, HmacKeyContext tokenSecretContext, byte[] tokenDigest) throws CryptoProviderException {
+        return tokenUtils.validateTokenDigest(nonce, timestamp, tokenSecretContext, tokenDigest);
+    }
+
 }
@@ -17,10 +17,10 @@
 package io.getlime.security.powerauth.crypto.server.vault;
 
 import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
-import io.getlime.security.powerauth.crypto.lib.enums.PowerAuthDerivedKey;
 import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
 import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
 import io.getlime.security.powerauth.crypto.lib.util.AESEncryptionUtils;
+import io.getlime.security.powerauth.crypto.server.keyfactory.ActivationKeyContext;
 import io.getlime.security.powerauth.provider.CryptoProviderUtil;
 import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
 
@@ -56,11 +56,30 @@ public class PowerAuthServerVault {
      * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
      */
     public byte[] encryptVaultEncryptionKey(PrivateKey serverPrivateKey, PublicKey devicePublicKey, byte[] ctr) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
+        return encryptVaultEncryptionKey(new ActivationKeyContext(serverPrivateKey, devicePublicKey), ctr);
+    }
+
+    /**
+     * Return encrypted vault encryption key KEY_ENCRYPTION_VAULT using
+     * a correct KEY_ENCRYPTION_VAULT_TRANSPORT, with keys taken from an activation key context.
+     *
+     * <p><b>PowerAuth protocol versions:</b>
+     * <ul>
+     *     <li>2.0</li>
+     *     <li>2.1</li>
+     * </ul>
+     *
+     * @param keyContext Activation key context.
+     * @param ctr Counter data.
+     * @return Encrypted vault encryption key.
+     * @throws InvalidKeyException In case a provided key is incorrect.
+     * @throws GenericCryptoException In case encryption fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public byte[] encryptVaultEncryptionKey(ActivationKeyContext keyContext, byte[] ctr) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
         KeyGenerator keyGenerator = new KeyGenerator();
-        SecretKey keyMasterSecret = keyGenerator.computeSharedKey(serverPrivateKey, devicePublicKey);
-        SecretKey keyMasterTransport = keyGenerator.deriveSecretKey(keyMasterSecret, PowerAuthDerivedKey.TRANSPORT.getIndex());
-        SecretKey keyVaultEncryptionTransport = keyGenerator.deriveSecretKey(keyMasterTransport, ctr);
-        SecretKey keyVaultEncryption = keyGenerator.deriveSecretKey(keyMasterSecret, PowerAuthDerivedKey.ENCRYPTED_VAULT.getIndex());
+        SecretKey keyVaultEncryptionTransport = keyGenerator.deriveSecretKey(keyContext.getTransportKey(), ctr);
+        SecretKey keyVaultEncryption = keyContext.getVaultEncryptionKey();
 
         CryptoProviderUtil keyConvertor = PowerAuthConfiguration.INSTANCE.getKeyConvertor();
         byte[] keyVaultEncryptionBytes = keyConvertor.convertSharedSecretKeyToBytes(keyVaultEncryption);
@@ -85,10 +104,27 @@ public class PowerAuthServerVault {
      * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
      */
     public byte[] encryptVaultEncryptionKey(PrivateKey serverPrivateKey, PublicKey devicePublicKey) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
-        KeyGenerator keyGenerator = new KeyGenerator();
-        SecretKey keyMasterSecret = keyGenerator.computeSharedKey(serverPrivateKey, devicePublicKey);
-        SecretKey keyTransport = keyGenerator.deriveSecretKey(keyMasterSecret, PowerAuthDerivedKey.TRANSPORT.getIndex());
-        SecretKey keyVaultEncryption = keyGenerator.deriveSecretKey(keyMasterSecret, PowerAuthDerivedKey.ENCRYPTED_VAULT.getIndex());
+        return encryptVaultEncryptionKey(new ActivationKeyContext(serverPrivateKey, devicePublicKey));
+    }
+
+    /**
+     * Return encrypted vault encryption key KEY_ENCRYPTION_VAULT using KEY_TRANSPORT, with keys taken
+     * from an activation key context.
+     *
+     * <p><b>PowerAuth protocol versions:</b>
+     * <ul>
+     *     <li>3.0</li>
+     * </ul>
+     *
+     * @param keyContext Activation key context.
+     * @return Encrypted vault encryption key.
+     * @throws InvalidKeyException In case a provided key is incorrect.
+     * @throws GenericCryptoException In case encryption fails.
+     * @throws CryptoProviderException In case cryptography provider is incorrectly initialized.
+     */
+    public byte[] encryptVaultEncryptionKey(ActivationKeyContext keyContext) throws InvalidKeyException, GenericCryptoException, CryptoProviderException {
+        SecretKey keyTransport = keyContext.getTransportKey();
+        SecretKey keyVaultEncryption = keyContext.getVaultEncryptionKey();
 
         CryptoProviderUtil keyConvertor = PowerAuthConfiguration.INSTANCE.getKeyConvertor();
         byte[] keyVaultEncryptionBytes = keyConvertor.convertSharedSecretKeyToBytes(keyVaultEncryption);
@@ -19,8 +19,10 @@ package io.getlime.security.powerauth.crypto.activation;
 import com.google.common.io.BaseEncoding;
 import io.getlime.security.powerauth.crypto.client.activation.PowerAuthClientActivation;
 import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.enums.EcdsaSignatureMode;
 import io.getlime.security.powerauth.crypto.lib.generator.IdentifierGenerator;
 import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.crypto.lib.util.ECDSASignatureVerifier;
 import io.getlime.security.powerauth.crypto.server.activation.PowerAuthServerActivation;
 import io.getlime.security.powerauth.provider.CryptoProviderUtil;
 import io.getlime.security.powerauth.provider.CryptoProviderUtilFactory;
@@ -331,4 +333,32 @@ public class PowerAuthActivationTest {
         }
     }
 
+    /**
+     * Test that activation signatures computed with deterministic ECDSA nonce are accepted by the client.
+     *
+     * @throws Exception In case test fails
+     */
+    @Test
+    public void testDeterministicActivationSignatures() throws Exception {
+        KeyGenerator keyGenerator = new KeyGenerator();
+        PowerAuthClientActivation clientActivation = new PowerAuthClientActivation();
+        PowerAuthServerActivation serverActivation = new PowerAuthServerActivation(EcdsaSignatureMode.DETERMINISTIC_NONCE);
+        KeyPair masterKeyPair = keyGenerator.generateKeyPair();
+        ECDSASignatureVerifier masterPublicKeyVerifier = new ECDSASignatureVerifier(masterKeyPair.getPublic());
+
+        for (int i = 0; i < 20; i++) {
+            String activationId = new IdentifierGenerator().generateActivationId();
+            String activationCode = serverActivation.generateActivationCode();
+            byte[] activationSignature = serverActivation.generateActivationSignature(activationCode, masterKeyPair.getPrivate());
+            assertArrayEquals(activationSignature, serverActivation.generateActivationSignature(activationCode, masterKeyPair.getPrivate()));
+            assertTrue(clientActivation.verifyActivationCodeSignature(activationCode, activationSignature, masterKeyPair.getPublic()));
+            assertTrue(clientActivation.verifyActivationCodeSignature(activationCode, activationSignature, masterPublicKeyVerifier));
+
+            byte[] C_serverPublicKey = keyGenerator.generateRandomBytes(100);
+            byte[] serverDataSignature = serverActivation.computeServerDataSignature(activationId, C_serverPublicKey, masterKeyPair.getPrivate());
+            assertTrue(clientActivation.verifyServerDataSignature(activationId, C_serverPublicKey, serverDataSignature, masterKeyPair.getPublic()));
+            assertTrue(clientActivation.verifyServerDataSignature(activationId, C_serverPublicKey, serverDataSignature, masterPublicKeyVerifier));
+        }
+    }
+
 }
@@ -0,0 +1,94 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.benchmark;
+
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.crypto.lib.util.AESEncryptionUtils;
+import io.getlime.security.powerauth.provider.CryptoProviderUtilFactory;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.security.Security;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of AES encryption of a single block with a JCA lookup per call compared to the cached engines
+ * used by {@link AESEncryptionUtils}.
+ *
+ * <p>Run using: <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=AesBenchmark</code>
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AesBenchmark {
+
+    @Param({"AES/CBC/PKCS7Padding", "AES/CBC/NoPadding"})
+    private String padding;
+
+    private final AESEncryptionUtils aes = new AESEncryptionUtils();
+
+    private SecretKey key;
+    private byte[] iv;
+    private byte[] data;
+
+    /**
+     * Register crypto providers and prepare input data.
+     */
+    @Setup
+    public void setUp() {
+        Security.addProvider(new BouncyCastleProvider());
+        PowerAuthConfiguration.INSTANCE.setKeyConvertor(CryptoProviderUtilFactory.getCryptoProviderUtils());
+        KeyGenerator keyGenerator = new KeyGenerator();
+        key = keyGenerator.generateRandomSecretKey();
+        iv = new byte[16];
+        data = keyGenerator.generateRandomBytes(16);
+    }
+
+    /**
+     * AES encryption with a JCA lookup for each call.
+     *
+     * @return Encrypted bytes.
+     * @throws Exception In case encryption fails.
+     */
+    @Benchmark
+    public byte[] encryptWithLookup() throws Exception {
+        Cipher cipher = Cipher.getInstance(padding, PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
+        cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+        return cipher.doFinal(data);
+    }
+
+    /**
+     * AES encryption using cached engines.
+     *
+     * @return Encrypted bytes.
+     * @throws Exception In case encryption fails.
+     */
+    @Benchmark
+    public byte[] encryptCached() throws Exception {
+        return aes.encrypt(data, iv, key, padding);
+    }
+
+}
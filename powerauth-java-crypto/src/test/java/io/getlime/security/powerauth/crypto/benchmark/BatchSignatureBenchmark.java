@@ -0,0 +1,136 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.benchmark;
+
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.generator.HashBasedCounter;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.crypto.lib.model.SignatureVerificationResult;
+import io.getlime.security.powerauth.crypto.lib.model.SignatureVerificationTask;
+import io.getlime.security.powerauth.crypto.lib.util.HmacKeyContext;
+import io.getlime.security.powerauth.crypto.lib.util.PowerAuthSignatureEngine;
+import io.getlime.security.powerauth.crypto.lib.util.SignatureUtils;
+import io.getlime.security.powerauth.crypto.server.signature.PowerAuthServerSignature;
+import io.getlime.security.powerauth.provider.CryptoProviderUtilFactory;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of batch PowerAuth signature verification with increasing fork-join pool parallelism. Each batch
+ * contains 1024 two-factor signatures of 1 KB data, with the client one counter step ahead.
+ *
+ * <p>Run with parallelism from 1 to the number of available processors using:
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=io.getlime.security.powerauth.crypto.benchmark.BatchSignatureBenchmark</code>
+ *
+ * <p>Run with selected parallelism values using:
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args="BatchSignatureBenchmark -p parallelism=1,2,4,8,16"</code>,
+ * the default values are used when the parameter is not specified.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchSignatureBenchmark {
+
+    private static final int BATCH_SIZE = 1024;
+
+    @Param({"1", "2", "4", "8"})
+    private int parallelism;
+
+    private final PowerAuthServerSignature serverSignature = new PowerAuthServerSignature();
+
+    private ForkJoinPool pool;
+    private List<SignatureVerificationTask> tasks;
+
+    /**
+     * Run the benchmark with parallelism from 1 to the number of available processors.
+     *
+     * @param args Command line arguments, not used.
+     * @throws RunnerException In case the benchmark fails.
+     */
+    public static void main(String[] args) throws RunnerException {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        final String[] parallelismValues = new String[processors];
+        for (int i = 0; i < processors; i++) {
+            parallelismValues[i] = String.valueOf(i + 1);
+        }
+        final Options options = new OptionsBuilder()
+                .include(BatchSignatureBenchmark.class.getSimpleName())
+                .param("parallelism", parallelismValues)
+                .build();
+        new Runner(options).run();
+    }
+
+    /**
+     * Register crypto providers and prepare verification tasks.
+     *
+     * @throws Exception In case setup fails.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        PowerAuthConfiguration.INSTANCE.setKeyConvertor(CryptoProviderUtilFactory.getCryptoProviderUtils());
+        KeyGenerator keyGenerator = new KeyGenerator();
+        HashBasedCounter counter = new HashBasedCounter();
+        List<HmacKeyContext> signatureKeyContexts = new SignatureUtils().createSignatureKeyContexts(
+                Arrays.asList(keyGenerator.generateRandomSecretKey(), keyGenerator.generateRandomSecretKey()));
+        PowerAuthSignatureEngine engine = new PowerAuthSignatureEngine(signatureKeyContexts);
+        tasks = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            byte[] data = keyGenerator.generateRandomBytes(1024);
+            byte[] ctrData = counter.init();
+            String signature = engine.computeSignature(data, counter.next(ctrData));
+            tasks.add(new SignatureVerificationTask(data, signature, signatureKeyContexts, ctrData, 3));
+        }
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Shut down the fork-join pool.
+     */
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Verify the whole batch of signatures.
+     *
+     * @return Verification results.
+     * @throws Exception In case verification fails.
+     */
+    @Benchmark
+    public List<SignatureVerificationResult> verifyBatch() throws Exception {
+        return serverSignature.verifySignatures(tasks, pool);
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.benchmark;
+
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.provider.CryptoProviderUtilFactory;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.KeyAgreement;
+import javax.crypto.SecretKey;
+import java.security.KeyPair;
+import java.security.Security;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of ECDH key agreement with a JCA lookup per call and conversion of the shared key to bytes compared
+ * to the cached engines and shared secret bytes stored into a caller buffer by {@link KeyGenerator}.
+ *
+ * <p>Run using: <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=EcdhBenchmark</code>
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EcdhBenchmark {
+
+    private final KeyGenerator keyGenerator = new KeyGenerator();
+    private final byte[] output = new byte[32];
+
+    private KeyPair keyPair1;
+    private KeyPair keyPair2;
+
+    /**
+     * Register crypto providers and prepare key pairs.
+     *
+     * @throws Exception In case setup fails.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        PowerAuthConfiguration.INSTANCE.setKeyConvertor(CryptoProviderUtilFactory.getCryptoProviderUtils());
+        keyPair1 = keyGenerator.generateKeyPair();
+        keyPair2 = keyGenerator.generateKeyPair();
+    }
+
+    /**
+     * ECDH with a JCA lookup for each call and conversion of the shared key to bytes.
+     *
+     * @return Shared secret bytes.
+     * @throws Exception In case key agreement fails.
+     */
+    @Benchmark
+    public byte[] sharedKeyWithLookup() throws Exception {
+        KeyAgreement keyAgreement = KeyAgreement.getInstance("ECDH", PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
+        keyAgreement.init(keyPair1.getPrivate());
+        keyAgreement.doPhase(keyPair2.getPublic(), true);
+        SecretKey secretKey = PowerAuthConfiguration.INSTANCE.getKeyConvertor().convertBytesToSharedSecretKey(keyAgreement.generateSecret());
+        return PowerAuthConfiguration.INSTANCE.getKeyConvertor().convertSharedSecretKeyToBytes(secretKey);
+    }
+
+    /**
+     * ECDH using cached engines with the shared secret stored into a caller buffer.
+     *
+     * @return Shared secret bytes.
+     * @throws Exception In case key agreement fails.
+     */
+    @Benchmark
+    public byte[] sharedSecretIntoBuffer() throws Exception {
+        keyGenerator.computeSharedSecret(keyPair1.getPrivate(), keyPair2.getPublic(), true, output, 0);
+        return output;
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.benchmark;
+
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.enums.EcdsaSignatureMode;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.crypto.lib.util.ECDSASignatureVerifier;
+import io.getlime.security.powerauth.crypto.lib.util.SignatureUtils;
+import io.getlime.security.powerauth.provider.CryptoProviderUtilFactory;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.security.Security;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of ECDSA signature computation and validation with a JCA lookup per call compared to the cached
+ * engines used by {@link SignatureUtils}, including signatures with a deterministic nonce and validation
+ * using {@link ECDSASignatureVerifier} with engines initialized for the public key only once.
+ *
+ * <p>Run using: <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=EcdsaBenchmark</code>
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EcdsaBenchmark {
+
+    private final SignatureUtils signatureUtils = new SignatureUtils();
+
+    private KeyPair keyPair;
+    private byte[] data;
+    private byte[] signature;
+    private ECDSASignatureVerifier verifier;
+
+    /**
+     * Register crypto providers and prepare input data.
+     *
+     * @throws Exception In case setup fails.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        PowerAuthConfiguration.INSTANCE.setKeyConvertor(CryptoProviderUtilFactory.getCryptoProviderUtils());
+        KeyGenerator keyGenerator = new KeyGenerator();
+        keyPair = keyGenerator.generateKeyPair();
+        data = keyGenerator.generateRandomBytes(64);
+        signature = signatureUtils.computeECDSASignature(data, keyPair.getPrivate());
+        verifier = new ECDSASignatureVerifier(keyPair.getPublic());
+    }
+
+    /**
+     * ECDSA signature computation with a JCA lookup for each call.
+     *
+     * @return ECDSA signature.
+     * @throws Exception In case computation fails.
+     */
+    @Benchmark
+    public byte[] signWithLookup() throws Exception {
+        Signature ecdsa = Signature.getInstance("SHA256withECDSA", PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
+        ecdsa.initSign(keyPair.getPrivate());
+        ecdsa.update(data);
+        return ecdsa.sign();
+    }
+
+    /**
+     * ECDSA signature computation using cached engines.
+     *
+     * @return ECDSA signature.
+     * @throws Exception In case computation fails.
+     */
+    @Benchmark
+    public byte[] signCached() throws Exception {
+        return signatureUtils.computeECDSASignature(data, keyPair.getPrivate());
+    }
+
+    /**
+     * ECDSA signature computation with a deterministic nonce using cached engines.
+     *
+     * @return ECDSA signature.
+     * @throws Exception In case computation fails.
+     */
+    @Benchmark
+    public byte[] signDeterministic() throws Exception {
+        return signatureUtils.computeECDSASignature(data, keyPair.getPrivate(), EcdsaSignatureMode.DETERMINISTIC_NONCE);
+    }
+
+    /**
+     * ECDSA signature validation with a JCA lookup for each call.
+     *
+     * @return Validation result.
+     * @throws Exception In case validation fails.
+     */
+    @Benchmark
+    public boolean verifyWithLookup() throws Exception {
+        Signature ecdsa = Signature.getInstance("SHA256withECDSA", PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
+        ecdsa.initVerify(keyPair.getPublic());
+        ecdsa.update(data);
+        return ecdsa.verify(signature);
+    }
+
+    /**
+     * ECDSA signature validation using cached engines.
+     *
+     * @return Validation result.
+     * @throws Exception In case validation fails.
+     */
+    @Benchmark
+    public boolean verifyCached() throws Exception {
+        return signatureUtils.validateECDSASignature(data, signature, keyPair.getPublic());
+    }
+
+    /**
+     * ECDSA signature validation using a verifier with engines initialized for the public key.
+     *
+     * @return Validation result.
+     * @throws Exception In case validation fails.
+     */
+    @Benchmark
+    public boolean verifyFixedKey() throws Exception {
+        return verifier.verify(data, signature);
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.benchmark;
+
+import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.crypto.lib.util.Hash;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of SHA-256 hashing with a JCA lookup per call compared to the cached engines used by {@link Hash},
+ * for input sizes of a counter (16 bytes), a public key (65 bytes) and a larger payload (4 KB).
+ *
+ * <p>Run using: <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=HashBenchmark</code>
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBenchmark {
+
+    @Param({"16", "65", "4096"})
+    private int length;
+
+    private byte[] data;
+    private byte[] firstHalf;
+    private byte[] secondHalf;
+
+    /**
+     * Prepare input data.
+     */
+    @Setup
+    public void setUp() {
+        KeyGenerator keyGenerator = new KeyGenerator();
+        data = keyGenerator.generateRandomBytes(length);
+        firstHalf = keyGenerator.generateRandomBytes(length / 2);
+        secondHalf = keyGenerator.generateRandomBytes(length - length / 2);
+    }
+
+    /**
+     * SHA-256 with a JCA lookup for each call.
+     *
+     * @return SHA-256 value.
+     * @throws Exception In case computation fails.
+     */
+    @Benchmark
+    public byte[] sha256WithLookup() throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(data);
+    }
+
+    /**
+     * SHA-256 using cached engines.
+     *
+     * @return SHA-256 value.
+     */
+    @Benchmark
+    public byte[] sha256Cached() {
+        return Hash.sha256(data);
+    }
+
+    /**
+     * SHA-256 of two parts using cached engines.
+     *
+     * @return SHA-256 value.
+     */
+    @Benchmark
+    public byte[] sha256MultiPart() {
+        return Hash.sha256(firstHalf, secondHalf);
+    }
+
+    /**
+     * SHA-256 of two buffers using cached engines.
+     *
+     * @return SHA-256 value.
+     */
+    @Benchmark
+    public byte[] sha256ByteBuffers() {
+        return Hash.sha256(ByteBuffer.wrap(firstHalf), ByteBuffer.wrap(secondHalf));
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.benchmark;
+
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.crypto.lib.util.HMACHashUtilities;
+import io.getlime.security.powerauth.crypto.lib.util.HmacKeyContext;
+import io.getlime.security.powerauth.provider.CryptoProviderUtilFactory;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.Security;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of HMAC-SHA256 computation with a JCA lookup per call compared to the cached engines
+ * used by {@link HMACHashUtilities} and to a precomputed {@link HmacKeyContext}.
+ *
+ * <p>Run using: <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=HmacBenchmark</code>
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HmacBenchmark {
+
+    private final HMACHashUtilities hmac = new HMACHashUtilities();
+
+    private byte[] key;
+    private byte[] data;
+    private HmacKeyContext keyContext;
+
+    /**
+     * Register crypto providers and prepare input data.
+     *
+     * @throws Exception In case setup fails.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        PowerAuthConfiguration.INSTANCE.setKeyConvertor(CryptoProviderUtilFactory.getCryptoProviderUtils());
+        KeyGenerator keyGenerator = new KeyGenerator();
+        key = keyGenerator.generateRandomBytes(16);
+        data = keyGenerator.generateRandomBytes(16);
+        keyContext = new HmacKeyContext(key);
+    }
+
+    /**
+     * HMAC-SHA256 with a JCA lookup for each call.
+     *
+     * @return HMAC-SHA256 value.
+     * @throws Exception In case computation fails.
+     */
+    @Benchmark
+    public byte[] hmacWithLookup() throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256", PowerAuthConfiguration.INSTANCE.getKeyConvertor().getProviderName());
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(data);
+    }
+
+    /**
+     * HMAC-SHA256 using cached engines.
+     *
+     * @return HMAC-SHA256 value.
+     * @throws Exception In case computation fails.
+     */
+    @Benchmark
+    public byte[] hmacCached() throws Exception {
+        return hmac.hash(key, data);
+    }
+
+    /**
+     * HMAC-SHA256 using a precomputed key context.
+     *
+     * @return HMAC-SHA256 value.
+     * @throws Exception In case computation fails.
+     */
+    @Benchmark
+    public byte[] hmacKeyContext() throws Exception {
+        return keyContext.hash(data);
+    }
+
+}
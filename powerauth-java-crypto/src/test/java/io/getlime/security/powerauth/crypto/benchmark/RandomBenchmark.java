@@ -0,0 +1,77 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.benchmark;
+
+import io.getlime.security.powerauth.crypto.lib.generator.RandomSource;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of 16 byte random values generated using a new secure random generator per call, a shared secure
+ * random generator and {@link RandomSource}. Use the <code>-t</code> option to measure contention of several threads.
+ *
+ * <p>Run using: <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args="RandomBenchmark -t 4"</code>
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RandomBenchmark {
+
+    private final SecureRandom sharedRandom = new SecureRandom();
+
+    /**
+     * Random bytes from a new secure random generator.
+     *
+     * @return Random bytes.
+     */
+    @Benchmark
+    public byte[] newSecureRandom() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Random bytes from a secure random generator shared by all threads.
+     *
+     * @return Random bytes.
+     */
+    @Benchmark
+    public byte[] sharedSecureRandom() {
+        byte[] bytes = new byte[16];
+        sharedRandom.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Random bytes from per-thread generators and buffers.
+     *
+     * @return Random bytes.
+     */
+    @Benchmark
+    public byte[] randomSource() {
+        return RandomSource.nextBytes(16);
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.encryption;
+
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.EciesCryptogramCodec;
+import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.EciesDecryptor;
+import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.EciesEncryptor;
+import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.exception.EciesException;
+import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.model.EciesCryptogram;
+import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.model.EciesCryptogramView;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.provider.CryptoProviderUtilFactory;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.Security;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test of binary encoding of ECIES cryptograms in {@link EciesCryptogramCodec}.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class EciesCryptogramCodecTest {
+
+    private final KeyGenerator keyGenerator = new KeyGenerator();
+    private final EciesCryptogramCodec codec = new EciesCryptogramCodec();
+
+    /**
+     * Add crypto providers.
+     */
+    @Before
+    public void setUp() {
+        // Add Bouncy Castle Security Provider
+        Security.addProvider(new BouncyCastleProvider());
+        PowerAuthConfiguration.INSTANCE.setKeyConvertor(CryptoProviderUtilFactory.getCryptoProviderUtils());
+    }
+
+    /**
+     * Test that encoded request and response cryptograms are decoded from a single direct buffer without
+     * copying the encrypted data and that the decoded request can be decrypted.
+     * @throws Exception When test fails.
+     */
+    @Test
+    public void testEncodeDecode() throws Exception {
+        final KeyPair keyPair = keyGenerator.generateKeyPair();
+        final byte[] sharedInfo2 = "sharedInfo2".getBytes(StandardCharsets.UTF_8);
+        final byte[] request = "Hello Alice.".getBytes(StandardCharsets.UTF_8);
+
+        final EciesEncryptor encryptor = new EciesEncryptor((ECPublicKey) keyPair.getPublic(), null, sharedInfo2);
+        final EciesCryptogram requestCryptogram = encryptor.encryptRequest(request);
+        final EciesCryptogram responseCryptogram = new EciesCryptogram(keyGenerator.generateRandomBytes(32), keyGenerator.generateRandomBytes(48));
+
+        final byte[] encodedRequest = codec.encode(requestCryptogram, sharedInfo2);
+        assertEquals(codec.getEncodedLength(requestCryptogram, sharedInfo2), encodedRequest.length);
+        final ByteBuffer encoded = ByteBuffer.allocateDirect(encodedRequest.length + codec.getEncodedLength(responseCryptogram, null));
+        encoded.put(encodedRequest);
+        codec.encode(responseCryptogram, null, encoded);
+        assertFalse(encoded.hasRemaining());
+        ((Buffer) encoded).flip();
+
+        final EciesCryptogramView requestView = codec.decode(encoded);
+        assertArrayEquals(requestCryptogram.getEphemeralPublicKey(), requestView.getEphemeralPublicKey());
+        assertArrayEquals(requestCryptogram.getMac(), requestView.getMac());
+        assertArrayEquals(sharedInfo2, requestView.getSharedInfo2());
+        assertTrue(requestView.getEncryptedData().isDirect());
+        assertArrayEquals(requestCryptogram.getEncryptedData(), requestView.toCryptogram().getEncryptedData());
+
+        final EciesCryptogramView responseView = codec.decode(encoded);
+        assertFalse(encoded.hasRemaining());
+        assertNull(responseView.getEphemeralPublicKey());
+        assertNull(responseView.getSharedInfo2());
+        assertArrayEquals(responseCryptogram.getMac(), responseView.getMac());
+        assertArrayEquals(responseCryptogram.getEncryptedData(), responseView.toCryptogram().getEncryptedData());
+
+        // Decrypt the request directly from the decoded view
+        final EciesDecryptor decryptor = new EciesDecryptor((ECPrivateKey) keyPair.getPrivate(), null, requestView.getSharedInfo2());
+        final ByteBuffer decrypted = ByteBuffer.allocate(requestView.getEncryptedDataLength());
+        final int length = decryptor.decryptRequest(requestView.getEphemeralPublicKey(), requestView.getMac(), requestView.getEncryptedData(), decrypted);
+        assertArrayEquals(request, Arrays.copyOf(decrypted.array(), length));
+
+        // Byte array encoding round trip
+        final EciesCryptogram decodedRequest = codec.decode(codec.encode(requestCryptogram));
+        assertArrayEquals(requestCryptogram.getEphemeralPublicKey(), decodedRequest.getEphemeralPublicKey());
+        assertArrayEquals(requestCryptogram.getMac(), decodedRequest.getMac());
+        assertArrayEquals(requestCryptogram.getEncryptedData(), decodedRequest.getEncryptedData());
+    }
+
+    /**
+     * Test that encoding does not depend on the byte order of the output and input buffers.
+     * @throws Exception When test fails.
+     */
+    @Test
+    public void testByteOrder() throws Exception {
+        final byte[] sharedInfo2 = keyGenerator.generateRandomBytes(300);
+        final EciesCryptogram cryptogram = new EciesCryptogram(keyGenerator.generateRandomBytes(33), keyGenerator.generateRandomBytes(32), keyGenerator.generateRandomBytes(1000));
+        final byte[] expected = codec.encode(cryptogram, sharedInfo2);
+
+        final ByteBuffer output = ByteBuffer.allocate(expected.length).order(ByteOrder.LITTLE_ENDIAN);
+        codec.encode(cryptogram, sharedInfo2, output);
+        assertArrayEquals(expected, output.array());
+
+        final ByteBuffer input = ByteBuffer.wrap(output.array()).order(ByteOrder.LITTLE_ENDIAN);
+        final EciesCryptogramView view = codec.decode(input);
+        assertArrayEquals(sharedInfo2, view.getSharedInfo2());
+        assertArrayEquals(cryptogram.getEncryptedData(), view.toCryptogram().getEncryptedData());
+        assertFalse(input.hasRemaining());
+    }
+
+    /**
+     * Test that malformed encodings are rejected and the input buffer position is not changed.
+     * @throws Exception When test fails.
+     */
+    @Test
+    public void testDecodeInvalid() throws Exception {
+        final EciesCryptogram cryptogram = new EciesCryptogram(keyGenerator.generateRandomBytes(33), keyGenerator.generateRandomBytes(32), keyGenerator.generateRandomBytes(64));
+        final byte[] encoded = codec.encode(cryptogram);
+
+        final byte[] invalidVersion = encoded.clone();
+        invalidVersion[0] = 2;
+        final byte[] invalidFlags = encoded.clone();
+        invalidFlags[1] = (byte) 0x80;
+        final byte[] invalidLength = encoded.clone();
+        invalidLength[encoded.length - 65] = 0x7F;
+
+        for (byte[] invalid : new byte[][] {invalidVersion, invalidFlags, invalidLength, Arrays.copyOf(encoded, encoded.length - 1), Arrays.copyOf(encoded, 10), new byte[0]}) {
+            final ByteBuffer input = ByteBuffer.wrap(invalid);
+            try {
+                codec.decode(input);
+                fail("Invalid encoding was accepted");
+            } catch (EciesException ex) {
+                assertEquals(0, input.position());
+            }
+        }
+
+        try {
+            codec.decode(Arrays.copyOf(encoded, encoded.length + 1));
+            fail("Encoding with trailing data was accepted");
+        } catch (EciesException ex) {
+            // Expected
+        }
+    }
+
+}
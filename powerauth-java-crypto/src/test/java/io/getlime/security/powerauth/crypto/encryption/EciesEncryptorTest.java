@@ -21,9 +21,12 @@ import com.google.common.primitives.Bytes;
 import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
 import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.EciesDecryptor;
 import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.EciesEncryptor;
+import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.EciesFactory;
+import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.EciesServerContext;
 import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.exception.EciesException;
 import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.kdf.KdfX9_63;
 import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.model.EciesCryptogram;
+import io.getlime.security.powerauth.crypto.lib.encryptor.ecies.model.EciesSharedInfo1;
 import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
 import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
 import io.getlime.security.powerauth.crypto.lib.util.Hash;
@@ -35,6 +38,9 @@ import org.junit.Before;
 import org.junit.Test;
 
 import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
@@ -43,6 +49,8 @@ import java.security.PublicKey;
 import java.security.Security;
 import java.security.interfaces.ECPrivateKey;
 import java.security.interfaces.ECPublicKey;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -252,6 +260,23 @@ public class EciesEncryptorTest {
         assertArrayEquals(keyData, kdfRef);
     }
 
+    /**
+     * Test KDF output written into a caller-supplied array and output lengths which are not a multiple of
+     * the digest size.
+     */
+    @Test
+    public void testKdfOutputLengths() throws GenericCryptoException {
+        final byte[] secretBytes = Hex.decode("22518b10e70f2a3f243810ae3254139efbee04aa57c7af7d");
+        final byte[] sharedInfo = Hex.decode("75eef81aa3041e33b80971203d2c0c52");
+        final byte[] keyData = KdfX9_63.derive(secretBytes, sharedInfo, 128);
+        for (int length = 0; length <= 128; length++) {
+            assertArrayEquals(Arrays.copyOf(keyData, length), KdfX9_63.derive(secretBytes, sharedInfo, length));
+            final byte[] output = new byte[length + 10];
+            KdfX9_63.derive(secretBytes, sharedInfo, output, 5, length);
+            assertArrayEquals(Arrays.copyOf(keyData, length), Arrays.copyOfRange(output, 5, 5 + length));
+        }
+    }
+
     /**
      * Test for matching client side generated test vectors for ECIES.
      *
@@ -396,4 +421,216 @@ public class EciesEncryptorTest {
 
     }
 
+    /**
+     * Test that decryptors created by shared server contexts process requests from encryptors created by the factory.
+     * @throws Exception When test fails.
+     */
+    @Test
+    public void testServerContext() throws Exception {
+        final EciesFactory eciesFactory = new EciesFactory();
+        final KeyPair masterKeyPair = keyGenerator.generateKeyPair();
+        final byte[] applicationSecret = keyGenerator.generateRandomBytes(16);
+        final EciesServerContext applicationContext = eciesFactory.getEciesServerContextForApplication(
+                (ECPrivateKey) masterKeyPair.getPrivate(), applicationSecret, EciesSharedInfo1.ACTIVATION_LAYER_2);
+        final EciesServerContext activationContext = eciesFactory.getEciesServerContextForActivation(
+                applicationSecret, null, 10);
+
+        byte[] request = "Hello Alice.".getBytes(StandardCharsets.UTF_8);
+        byte[] response = "Hello Bob".getBytes(StandardCharsets.UTF_8);
+
+        for (int i = 0; i < 10; i++) {
+            // Application scope
+            EciesEncryptor encryptor = eciesFactory.getEciesEncryptorForApplication(
+                    (ECPublicKey) masterKeyPair.getPublic(), applicationSecret, EciesSharedInfo1.ACTIVATION_LAYER_2);
+            EciesDecryptor decryptor = applicationContext.createDecryptor();
+            assertArrayEquals(request, decryptor.decryptRequest(encryptor.encryptRequest(request)));
+            assertArrayEquals(response, encryptor.decryptResponse(decryptor.encryptResponse(response)));
+            // Modification of obtained parameters does not affect the shared context
+            decryptor.getSharedInfo2()[0] ^= 1;
+            applicationContext.getSharedInfo2()[0] ^= 1;
+
+            // Activation scope, the transport key changes for the last activation
+            final String activationId = "activation-" + (i % 3);
+            final KeyPair serverKeyPair = keyGenerator.generateKeyPair();
+            final byte[] transportKey = i == 9 ? keyGenerator.generateRandomBytes(16) : Arrays.copyOf(activationId.getBytes(StandardCharsets.UTF_8), 16);
+            encryptor = eciesFactory.getEciesEncryptorForActivation(
+                    (ECPublicKey) serverKeyPair.getPublic(), applicationSecret, transportKey, null);
+            decryptor = activationContext.createDecryptor(activationId, (ECPrivateKey) serverKeyPair.getPrivate(), transportKey);
+            assertArrayEquals(request, decryptor.decryptRequest(encryptor.encryptRequest(request)));
+            assertArrayEquals(response, encryptor.decryptResponse(decryptor.encryptResponse(response)));
+            decryptor.getSharedInfo2()[0] ^= 1;
+            activationContext.getSharedInfo2(activationId, transportKey)[0] ^= 1;
+        }
+
+        assertEquals(3, activationContext.getCachedActivationCount());
+        assertEquals(0, applicationContext.getCachedActivationCount());
+
+        // Contexts reject decryptors of the other scope
+        try {
+            activationContext.createDecryptor();
+            fail("Activation scope context created application scope decryptor");
+        } catch (GenericCryptoException ex) {
+            // Expected
+        }
+        try {
+            applicationContext.createDecryptor("activation-0", (ECPrivateKey) masterKeyPair.getPrivate(), new byte[16]);
+            fail("Application scope context created activation scope decryptor");
+        } catch (GenericCryptoException ex) {
+            // Expected
+        }
+    }
+
+    /**
+     * Test that activations which are not used are removed from the activation scope server context.
+     * @throws Exception When test fails.
+     */
+    @Test
+    public void testServerContextExpiration() throws Exception {
+        final EciesFactory eciesFactory = new EciesFactory();
+        final byte[] applicationSecret = keyGenerator.generateRandomBytes(16);
+        final EciesServerContext activationContext = eciesFactory.getEciesServerContextForActivation(
+                applicationSecret, null, 10, 200, TimeUnit.MILLISECONDS);
+        final byte[] transportKey = keyGenerator.generateRandomBytes(16);
+        final byte[] sharedInfo2 = activationContext.getSharedInfo2("activation-0", transportKey);
+        activationContext.getSharedInfo2("activation-1", keyGenerator.generateRandomBytes(16));
+        assertEquals(2, activationContext.getCachedActivationCount());
+
+        Thread.sleep(400);
+        assertEquals(0, activationContext.getCachedActivationCount());
+        // Parameter of an expired activation is computed again
+        assertArrayEquals(sharedInfo2, activationContext.getSharedInfo2("activation-0", transportKey));
+        assertEquals(1, activationContext.getCachedActivationCount());
+    }
+
+    /**
+     * Test that data encrypted and decrypted using direct buffers is compatible with cryptograms and that
+     * data with invalid MAC is not decrypted into the output buffer.
+     * @throws Exception When test fails.
+     */
+    @Test
+    public void testEncryptDecryptByteBuffer() throws Exception {
+        final KeyPair fixedKeyPair = keyGenerator.generateKeyPair();
+        final byte[] sharedInfo1 = "sharedInfo1".getBytes(StandardCharsets.UTF_8);
+        final byte[] sharedInfo2 = "sharedInfo2".getBytes(StandardCharsets.UTF_8);
+
+        for (int i = 0; i < 50; i++) {
+            final byte[] request = keyGenerator.generateRandomBytes(i * 7);
+            final byte[] response = keyGenerator.generateRandomBytes(i * 3);
+
+            // Encrypt request into a direct buffer, decrypt it as a cryptogram
+            final EciesEncryptor encryptor = new EciesEncryptor((ECPublicKey) fixedKeyPair.getPublic(), sharedInfo1, sharedInfo2);
+            final ByteBuffer requestData = ByteBuffer.allocateDirect(request.length);
+            ((Buffer) requestData.put(request)).flip();
+            final ByteBuffer encryptedRequest = ByteBuffer.allocateDirect(request.length + 16);
+            final byte[] requestMac = encryptor.encryptRequest(requestData, encryptedRequest);
+            assertFalse(requestData.hasRemaining());
+            ((Buffer) encryptedRequest).flip();
+            final byte[] encryptedRequestBytes = new byte[encryptedRequest.remaining()];
+            encryptedRequest.duplicate().get(encryptedRequestBytes);
+            final byte[] ephemeralPublicKey = encryptor.getEnvelopeKey().getEphemeralKeyPublic();
+            assertArrayEquals(request, new EciesDecryptor((ECPrivateKey) fixedKeyPair.getPrivate(), sharedInfo1, sharedInfo2)
+                    .decryptRequest(new EciesCryptogram(ephemeralPublicKey, requestMac, encryptedRequestBytes)));
+
+            // Invalid MAC is rejected before decryption
+            final ByteBuffer decryptedRequest = ByteBuffer.allocateDirect(encryptedRequest.remaining());
+            final byte[] invalidMac = requestMac.clone();
+            invalidMac[0] ^= 1;
+            try {
+                new EciesDecryptor((ECPrivateKey) fixedKeyPair.getPrivate(), sharedInfo1, sharedInfo2)
+                        .decryptRequest(ephemeralPublicKey, invalidMac, encryptedRequest.duplicate(), decryptedRequest);
+                fail("Invalid MAC was accepted");
+            } catch (EciesException ex) {
+                assertEquals(0, decryptedRequest.position());
+            }
+
+            // Decrypt request from the direct buffer and encrypt response into a heap buffer with offset
+            final EciesDecryptor decryptor = new EciesDecryptor((ECPrivateKey) fixedKeyPair.getPrivate(), sharedInfo1, sharedInfo2);
+            assertEquals(request.length, decryptor.decryptRequest(ephemeralPublicKey, requestMac, encryptedRequest, decryptedRequest));
+            assertFalse(encryptedRequest.hasRemaining());
+            ((Buffer) decryptedRequest).flip();
+            final byte[] decryptedRequestBytes = new byte[decryptedRequest.remaining()];
+            decryptedRequest.get(decryptedRequestBytes);
+            assertArrayEquals(request, decryptedRequestBytes);
+
+            final ByteBuffer encryptedResponse = ByteBuffer.allocate(response.length + 32);
+            ((Buffer) encryptedResponse).position(16);
+            final byte[] responseMac = decryptor.encryptResponse(ByteBuffer.wrap(response), encryptedResponse);
+            final ByteBuffer encryptedResponseData = encryptedResponse.duplicate();
+            ((Buffer) encryptedResponseData).flip().position(16);
+            final ByteBuffer decryptedResponse = ByteBuffer.allocate(encryptedResponseData.remaining());
+            assertEquals(response.length, encryptor.decryptResponse(responseMac, encryptedResponseData, decryptedResponse));
+            assertArrayEquals(response, Arrays.copyOf(decryptedResponse.array(), response.length));
+        }
+    }
+
+    /**
+     * Test that streamed encryption and decryption produces the same data as cryptograms, both for data spooled
+     * in memory and in a temporary file, and that no data is released and decryption is still allowed when MAC
+     * is invalid.
+     * @throws Exception When test fails.
+     */
+    @Test
+    public void testEncryptDecryptStream() throws Exception {
+        final KeyPair fixedKeyPair = keyGenerator.generateKeyPair();
+        final byte[] sharedInfo1 = "sharedInfo1".getBytes(StandardCharsets.UTF_8);
+        final byte[] sharedInfo2 = "sharedInfo2".getBytes(StandardCharsets.UTF_8);
+        final int spoolThreshold = 1024;
+
+        for (int length : new int[] {0, 15, 16, 1000, 1024, 100000}) {
+            final byte[] request = keyGenerator.generateRandomBytes(length);
+            final byte[] response = keyGenerator.generateRandomBytes(length / 2);
+
+            // Streamed request encryption is compatible with cryptogram decryption
+            final EciesEncryptor encryptor = new EciesEncryptor((ECPublicKey) fixedKeyPair.getPublic(), sharedInfo1, sharedInfo2);
+            final ByteArrayOutputStream encryptedRequest = new ByteArrayOutputStream();
+            final byte[] requestMac = encryptor.encryptRequest(new ByteArrayInputStream(request), encryptedRequest);
+            final byte[] ephemeralPublicKey = encryptor.getEnvelopeKey().getEphemeralKeyPublic();
+            assertArrayEquals(request, new EciesDecryptor((ECPrivateKey) fixedKeyPair.getPrivate(), sharedInfo1, sharedInfo2)
+                    .decryptRequest(new EciesCryptogram(ephemeralPublicKey, requestMac, encryptedRequest.toByteArray())));
+
+            // Invalid MAC and spool threshold are rejected, no data is written and the decryptor can still decrypt
+            final EciesDecryptor decryptor = new EciesDecryptor((ECPrivateKey) fixedKeyPair.getPrivate(), sharedInfo1, sharedInfo2);
+            final byte[] invalidMac = requestMac.clone();
+            invalidMac[31] ^= 1;
+            final ByteArrayOutputStream rejectedRequest = new ByteArrayOutputStream();
+            try {
+                decryptor.decryptRequest(ephemeralPublicKey, invalidMac,
+                        new ByteArrayInputStream(encryptedRequest.toByteArray()), rejectedRequest, spoolThreshold);
+                fail("Invalid MAC was accepted");
+            } catch (EciesException ex) {
+                assertEquals(0, rejectedRequest.size());
+            }
+            try {
+                decryptor.decryptRequest(ephemeralPublicKey, requestMac,
+                        new ByteArrayInputStream(encryptedRequest.toByteArray()), rejectedRequest, 0);
+                fail("Invalid spool threshold was accepted");
+            } catch (EciesException ex) {
+                assertEquals(0, rejectedRequest.size());
+            }
+
+            // Streamed request decryption and response encryption
+            final ByteArrayOutputStream decryptedRequest = new ByteArrayOutputStream();
+            assertEquals(length, decryptor.decryptRequest(ephemeralPublicKey, requestMac,
+                    new ByteArrayInputStream(encryptedRequest.toByteArray()), decryptedRequest, spoolThreshold));
+            assertArrayEquals(request, decryptedRequest.toByteArray());
+
+            final ByteArrayOutputStream encryptedResponse = new ByteArrayOutputStream();
+            final byte[] responseMac = decryptor.encryptResponse(new ByteArrayInputStream(response), encryptedResponse);
+            final byte[] invalidResponseMac = responseMac.clone();
+            invalidResponseMac[0] ^= 1;
+            final ByteArrayOutputStream rejectedResponse = new ByteArrayOutputStream();
+            try {
+                encryptor.decryptResponse(invalidResponseMac,
+                        new ByteArrayInputStream(encryptedResponse.toByteArray()), rejectedResponse, spoolThreshold);
+                fail("Invalid MAC was accepted");
+            } catch (EciesException ex) {
+                assertEquals(0, rejectedResponse.size());
+            }
+            final ByteArrayOutputStream decryptedResponse = new ByteArrayOutputStream();
+            assertEquals(response.length, encryptor.decryptResponse(responseMac,
+                    new ByteArrayInputStream(encryptedResponse.toByteArray()), decryptedResponse, spoolThreshold));
+            assertArrayEquals(response, decryptedResponse.toByteArray());
+        }
+    }
+
 }
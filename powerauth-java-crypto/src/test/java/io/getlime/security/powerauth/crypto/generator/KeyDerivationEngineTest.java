@@ -0,0 +1,116 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.generator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.BaseEncoding;
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.enums.PowerAuthDerivedKey;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyDerivationEngine;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.crypto.lib.util.AESEncryptionUtils;
+import io.getlime.security.powerauth.provider.CryptoProviderUtil;
+import io.getlime.security.powerauth.provider.CryptoProviderUtilFactory;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.SecretKey;
+import java.io.File;
+import java.security.Security;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test single block AES key derivation engine.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class KeyDerivationEngineTest {
+
+    private final KeyGenerator keyGenerator = new KeyGenerator();
+
+    /**
+     * Register crypto providers.
+     */
+    @Before
+    public void setUp() {
+        // Add Bouncy Castle Security Provider
+        Security.addProvider(new BouncyCastleProvider());
+        PowerAuthConfiguration.INSTANCE.setKeyConvertor(CryptoProviderUtilFactory.getCryptoProviderUtils());
+    }
+
+    /**
+     * Test derivation of standard PowerAuth keys against test vectors in powerauth-docs.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testDerivedKeysTestVectors() throws Exception {
+        final File file = new File("../powerauth-docs/test-vectors/compute-derived-keys.json");
+        assertTrue("Missing test vectors: " + file.getAbsolutePath(), file.exists());
+        final CryptoProviderUtil keyConvertor = PowerAuthConfiguration.INSTANCE.getKeyConvertor();
+        final BaseEncoding base64 = BaseEncoding.base64();
+        final JsonNode testVectors = new ObjectMapper().readTree(file).get("data");
+        assertTrue(testVectors.size() > 0);
+        for (JsonNode testVector : testVectors) {
+            final JsonNode input = testVector.get("input");
+            final JsonNode output = testVector.get("output");
+            final SecretKey masterSecretKey = keyConvertor.convertBytesToSharedSecretKey(base64.decode(input.get("masterSecretKey").asText()));
+            final KeyDerivationEngine engine = new KeyDerivationEngine(masterSecretKey);
+            assertDerivedKey(output.get("signaturePossessionKey").asText(), engine, masterSecretKey, PowerAuthDerivedKey.SIGNATURE_POSSESSION);
+            assertDerivedKey(output.get("signatureKnowledgeKey").asText(), engine, masterSecretKey, PowerAuthDerivedKey.SIGNATURE_KNOWLEDGE);
+            assertDerivedKey(output.get("signatureBiometryKey").asText(), engine, masterSecretKey, PowerAuthDerivedKey.SIGNATURE_BIOMETRY);
+            assertDerivedKey(output.get("transportKey").asText(), engine, masterSecretKey, PowerAuthDerivedKey.TRANSPORT);
+            assertDerivedKey(output.get("vaultEncryptionKey").asText(), engine, masterSecretKey, PowerAuthDerivedKey.ENCRYPTED_VAULT);
+        }
+    }
+
+    /**
+     * Test that derivation with indexes of various lengths matches the original AES/CBC/PKCS7Padding
+     * based derivation, including 8 byte PUK indexes.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testIndexLengths() throws Exception {
+        final CryptoProviderUtil keyConvertor = PowerAuthConfiguration.INSTANCE.getKeyConvertor();
+        final AESEncryptionUtils aes = new AESEncryptionUtils();
+        final SecretKey masterKey = keyGenerator.generateRandomSecretKey();
+        final KeyDerivationEngine engine = new KeyDerivationEngine(masterKey);
+        for (int length = 0; length <= 40; length++) {
+            final byte[] index = keyGenerator.generateRandomBytes(length);
+            final byte[] expected = Arrays.copyOf(aes.encrypt(index, new byte[16], masterKey), 16);
+            assertArrayEquals(expected, engine.deriveKeyBytes(index));
+            assertArrayEquals(expected, keyConvertor.convertSharedSecretKeyToBytes(KeyDerivationEngine.deriveSecretKey(masterKey, index)));
+        }
+    }
+
+    /**
+     * Assert that both the derivation engine and the key generator derive expected key.
+     */
+    private void assertDerivedKey(String expected, KeyDerivationEngine engine, SecretKey masterSecretKey, PowerAuthDerivedKey derivedKey) throws Exception {
+        final CryptoProviderUtil keyConvertor = PowerAuthConfiguration.INSTANCE.getKeyConvertor();
+        final byte[] expectedBytes = BaseEncoding.base64().decode(expected);
+        assertArrayEquals(expectedBytes, keyConvertor.convertSharedSecretKeyToBytes(engine.deriveSecretKey(derivedKey.getIndex())));
+        assertArrayEquals(expectedBytes, keyConvertor.convertSharedSecretKeyToBytes(keyGenerator.deriveSecretKey(masterSecretKey, derivedKey.getIndex())));
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.generator;
+
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
+import io.getlime.security.powerauth.provider.CryptoProviderUtil;
+import io.getlime.security.powerauth.provider.CryptoProviderUtilFactory;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.Security;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test ECDH key agreement in key generator.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class KeyGeneratorTest {
+
+    private final KeyGenerator keyGenerator = new KeyGenerator();
+
+    /**
+     * Register crypto providers.
+     */
+    @Before
+    public void setUp() {
+        // Add Bouncy Castle Security Provider
+        Security.addProvider(new BouncyCastleProvider());
+        PowerAuthConfiguration.INSTANCE.setKeyConvertor(CryptoProviderUtilFactory.getCryptoProviderUtils());
+    }
+
+    /**
+     * Test that shared secret bytes match the shared keys and that both parties compute the same secret.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testSharedSecret() throws Exception {
+        final CryptoProviderUtil keyConvertor = PowerAuthConfiguration.INSTANCE.getKeyConvertor();
+        for (int i = 0; i < 10; i++) {
+            final KeyPair keyPair1 = keyGenerator.generateKeyPair();
+            final KeyPair keyPair2 = keyGenerator.generateKeyPair();
+            for (boolean keep32b : new boolean[] {true, false}) {
+                final byte[] expected = keyConvertor.convertSharedSecretKeyToBytes(keyGenerator.computeSharedKey(keyPair1.getPrivate(), keyPair2.getPublic(), keep32b));
+                assertEquals(keep32b ? 32 : 16, expected.length);
+                assertArrayEquals(expected, keyGenerator.computeSharedSecret(keyPair2.getPrivate(), keyPair1.getPublic(), keep32b));
+
+                final byte[] output = new byte[40];
+                assertEquals(expected.length, keyGenerator.computeSharedSecret(keyPair1.getPrivate(), keyPair2.getPublic(), keep32b, output, 8));
+                assertArrayEquals(expected, Arrays.copyOfRange(output, 8, 8 + expected.length));
+            }
+            assertArrayEquals(keyGenerator.convert32Bto16B(keyGenerator.computeSharedSecret(keyPair1.getPrivate(), keyPair2.getPublic(), true)),
+                    keyGenerator.computeSharedSecret(keyPair1.getPrivate(), keyPair2.getPublic(), false));
+        }
+    }
+
+    /**
+     * Test that too small output array is rejected.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test(expected = GenericCryptoException.class)
+    public void testSharedSecretShortOutput() throws Exception {
+        final KeyPair keyPair = keyGenerator.generateKeyPair();
+        keyGenerator.computeSharedSecret(keyPair.getPrivate(), keyPair.getPublic(), true, new byte[40], 9);
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.generator;
+
+import com.google.common.io.BaseEncoding;
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyPairPool;
+import io.getlime.security.powerauth.provider.CryptoProviderUtil;
+import io.getlime.security.powerauth.provider.CryptoProviderUtilFactory;
+import io.getlime.security.powerauth.provider.exception.CryptoProviderException;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.Security;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test pool of pre-generated ephemeral key pairs.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class KeyPairPoolTest {
+
+    /**
+     * Register crypto providers.
+     */
+    @Before
+    public void setUp() {
+        // Add Bouncy Castle Security Provider
+        Security.addProvider(new BouncyCastleProvider());
+        PowerAuthConfiguration.INSTANCE.setKeyConvertor(CryptoProviderUtilFactory.getCryptoProviderUtils());
+    }
+
+    /**
+     * Disable the key pair pool after each test.
+     */
+    @After
+    public void tearDown() {
+        PowerAuthConfiguration.INSTANCE.setKeyPairPool(null);
+    }
+
+    /**
+     * Test that each key pair is handed out only once, both from the pool and from the synchronous fallback.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testUniqueKeyPairs() throws Exception {
+        final CryptoProviderUtil keyConvertor = PowerAuthConfiguration.INSTANCE.getKeyConvertor();
+        final Set<String> publicKeys = new HashSet<>();
+        try (KeyPairPool pool = new KeyPairPool(4)) {
+            // Wait until the pool is filled, so that both pooled and synchronously generated key pairs are used
+            for (int i = 0; i < 100 && pool.size() < 4; i++) {
+                Thread.sleep(50);
+            }
+            for (int i = 0; i < 20; i++) {
+                final KeyPair keyPair = pool.take();
+                assertTrue(publicKeys.add(BaseEncoding.base64().encode(keyConvertor.convertPublicKeyToBytes(keyPair.getPublic()))));
+            }
+        }
+        assertEquals(20, publicKeys.size());
+    }
+
+    /**
+     * Test that key pairs are generated after the pool is closed.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testClosedPool() throws Exception {
+        final KeyPairPool pool = new KeyPairPool(2);
+        pool.close();
+        assertEquals(0, pool.size());
+        for (int i = 0; i < 100 && pool.isAlive(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(pool.isAlive());
+        final KeyPair keyPair = pool.take();
+        assertTrue(keyPair.getPrivate() != null && keyPair.getPublic() != null);
+    }
+
+    /**
+     * Test that ephemeral key pairs are taken from the configured pool.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testConfiguredPool() throws Exception {
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final AtomicInteger takeCount = new AtomicInteger();
+        try (KeyPairPool pool = new KeyPairPool(8) {
+            @Override
+            public KeyPair take() throws CryptoProviderException {
+                takeCount.incrementAndGet();
+                return super.take();
+            }
+        }) {
+            PowerAuthConfiguration.INSTANCE.setKeyPairPool(pool);
+            keyGenerator.generateEphemeralKeyPair();
+            keyGenerator.generateEphemeralKeyPair();
+            assertEquals(2, takeCount.get());
+            keyGenerator.generateKeyPair();
+            assertEquals(2, takeCount.get());
+        }
+    }
+
+    /**
+     * Test that the pool keeps filling after key pair generation in the background thread fails.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testGenerationFailure() throws Exception {
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final AtomicInteger generateCount = new AtomicInteger();
+        try (KeyPairPool pool = new KeyPairPool(2, () -> {
+            // Fail with both checked and unchecked exceptions first
+            final int count = generateCount.incrementAndGet();
+            if (count == 1) {
+                throw new CryptoProviderException("Provider is not initialized");
+            }
+            if (count == 2) {
+                throw new IllegalStateException("Key convertor is not configured");
+            }
+            return keyGenerator.generateKeyPair();
+        })) {
+            for (int i = 0; i < 100 && pool.size() < 2; i++) {
+                Thread.sleep(50);
+            }
+            assertEquals(2, pool.size());
+            assertTrue(pool.isAlive());
+            assertEquals(2, pool.getFailureCount());
+            assertTrue(pool.getLastFailure() instanceof IllegalStateException);
+        }
+    }
+
+}
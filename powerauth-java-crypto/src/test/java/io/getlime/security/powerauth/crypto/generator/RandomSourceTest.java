@@ -0,0 +1,82 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.generator;
+
+import com.google.common.io.BaseEncoding;
+import io.getlime.security.powerauth.crypto.lib.generator.RandomSource;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test process-wide source of random bytes.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class RandomSourceTest {
+
+    /**
+     * Test that buffered and unbuffered random values have requested length and they are not repeated.
+     */
+    @Test
+    public void testRandomBytes() {
+        final Set<String> values = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            for (int length : new int[] {16, 32, 6, 64}) {
+                final byte[] bytes = RandomSource.nextBytes(length);
+                assertEquals(length, bytes.length);
+                assertTrue(values.add(BaseEncoding.base16().encode(bytes)));
+            }
+        }
+        assertEquals(0, RandomSource.nextBytes(0).length);
+    }
+
+    /**
+     * Test that each thread uses its own generator and that threads do not receive the same values.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testThreadGenerators() throws Exception {
+        final Set<String> values = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        final Object[] otherThreadRandom = new Object[1];
+        final Runnable generator = () -> {
+            for (int i = 0; i < 1000; i++) {
+                values.add(BaseEncoding.base16().encode(RandomSource.nextBytes(16)));
+            }
+        };
+        final Thread thread = new Thread(() -> {
+            otherThreadRandom[0] = RandomSource.getSecureRandom();
+            generator.run();
+        });
+        thread.start();
+        generator.run();
+        thread.join();
+        assertEquals(2000, values.size());
+        assertSame(RandomSource.getSecureRandom(), RandomSource.getSecureRandom());
+        assertNotSame(RandomSource.getSecureRandom(), otherThreadRandom[0]);
+    }
+
+}
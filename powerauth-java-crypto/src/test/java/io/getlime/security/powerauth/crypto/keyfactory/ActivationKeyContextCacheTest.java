@@ -0,0 +1,268 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.keyfactory;
+
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.enums.PowerAuthSignatureTypes;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
+import io.getlime.security.powerauth.crypto.lib.util.HmacKeyContext;
+import io.getlime.security.powerauth.crypto.server.keyfactory.ActivationKeyContext;
+import io.getlime.security.powerauth.crypto.server.keyfactory.ActivationKeyContextCache;
+import io.getlime.security.powerauth.crypto.server.keyfactory.PowerAuthServerKeyFactory;
+import io.getlime.security.powerauth.provider.CryptoProviderUtil;
+import io.getlime.security.powerauth.provider.CryptoProviderUtilFactory;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.SecretKey;
+import java.security.KeyPair;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cache of server side activation key contexts.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class ActivationKeyContextCacheTest {
+
+    private final KeyGenerator keyGenerator = new KeyGenerator();
+
+    private KeyPair serverKeyPair;
+    private KeyPair deviceKeyPair;
+
+    /**
+     * Register crypto providers and prepare activation keys.
+     *
+     * @throws Exception In case setup fails.
+     */
+    @Before
+    public void setUp() throws Exception {
+        // Add Bouncy Castle Security Provider
+        Security.addProvider(new BouncyCastleProvider());
+        PowerAuthConfiguration.INSTANCE.setKeyConvertor(CryptoProviderUtilFactory.getCryptoProviderUtils());
+        serverKeyPair = keyGenerator.generateKeyPair();
+        deviceKeyPair = keyGenerator.generateKeyPair();
+    }
+
+    /**
+     * Test cache hits and misses for activation ID and key version.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testCacheHits() throws Exception {
+        final ActivationKeyContextCache cache = new ActivationKeyContextCache(100, 1, TimeUnit.HOURS);
+        final PowerAuthServerKeyFactory keyFactory = new PowerAuthServerKeyFactory(cache);
+        final ActivationKeyContext keyContext = keyFactory.acquireActivationKeyContext("activation1", 1, serverKeyPair.getPrivate(), deviceKeyPair.getPublic());
+        keyFactory.releaseActivationKeyContext(keyContext);
+        assertFalse(keyContext.isDestroyed());
+        final List<ActivationKeyContext> keyContexts = new ArrayList<>();
+        keyContexts.add(keyFactory.acquireActivationKeyContext("activation1", 1, serverKeyPair.getPrivate(), deviceKeyPair.getPublic()));
+        keyContexts.add(keyFactory.acquireActivationKeyContext("activation1", 2, serverKeyPair.getPrivate(), deviceKeyPair.getPublic()));
+        keyContexts.add(keyFactory.acquireActivationKeyContext("activation2", 1, serverKeyPair.getPrivate(), deviceKeyPair.getPublic()));
+        assertSame(keyContext, keyContexts.get(0));
+        assertNotSame(keyContext, keyContexts.get(1));
+        assertNotSame(keyContext, keyContexts.get(2));
+        for (ActivationKeyContext leasedContext : keyContexts) {
+            keyFactory.releaseActivationKeyContext(leasedContext);
+            assertFalse(leasedContext.isDestroyed());
+        }
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(3, cache.size());
+
+        // Factory without cache creates a new context for each call and destroys it on release
+        final PowerAuthServerKeyFactory uncachedKeyFactory = new PowerAuthServerKeyFactory();
+        final ActivationKeyContext uncachedContext1 = uncachedKeyFactory.acquireActivationKeyContext("activation1", 1, serverKeyPair.getPrivate(), deviceKeyPair.getPublic());
+        final ActivationKeyContext uncachedContext2 = uncachedKeyFactory.acquireActivationKeyContext("activation1", 1, serverKeyPair.getPrivate(), deviceKeyPair.getPublic());
+        assertNotSame(uncachedContext1, uncachedContext2);
+        uncachedKeyFactory.releaseActivationKeyContext(uncachedContext1);
+        uncachedKeyFactory.releaseActivationKeyContext(uncachedContext2);
+        assertTrue(uncachedContext1.isDestroyed());
+        assertTrue(uncachedContext2.isDestroyed());
+    }
+
+    /**
+     * Test that invalidated and evicted contexts are destroyed once the last lease is released, so that key
+     * material of evicted activations is wiped while requests still using the contexts are not affected.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testEviction() throws Exception {
+        final ActivationKeyContextCache cache = new ActivationKeyContextCache(2, 1, TimeUnit.HOURS);
+        final ActivationKeyContext keyContext1 = cache.acquire("activation1", 1, serverKeyPair.getPrivate(), deviceKeyPair.getPublic());
+        final SecretKey transportKey = keyContext1.getTransportKey();
+        final List<HmacKeyContext> signatureKeyContexts = keyContext1.getSignatureKeyContexts(PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE);
+        cache.invalidate("activation1", 1);
+
+        // Leased context stays usable after invalidation
+        assertFalse(keyContext1.isDestroyed());
+        assertArrayEquals(expectedTransportKey(), keyConvertor().convertSharedSecretKeyToBytes(transportKey));
+        final ActivationKeyContext reloadedContext = cache.acquire("activation1", 1, serverKeyPair.getPrivate(), deviceKeyPair.getPublic());
+        assertNotSame(keyContext1, reloadedContext);
+        cache.release(reloadedContext);
+
+        // Keys are wiped when the last lease is released
+        cache.release(keyContext1);
+        assertTrue(keyContext1.isDestroyed());
+        assertTrue(transportKey.isDestroyed());
+        for (HmacKeyContext signatureKeyContext : signatureKeyContexts) {
+            assertTrue(signatureKeyContext.isDestroyed());
+        }
+
+        // Context which is not leased is wiped on eviction
+        final ActivationKeyContext keyContext2 = cache.acquire("activation2", 1, serverKeyPair.getPrivate(), deviceKeyPair.getPublic());
+        final SecretKey transportKey2 = keyContext2.getTransportKey();
+        cache.release(keyContext2);
+        assertFalse(keyContext2.isDestroyed());
+        for (int i = 3; i < 10; i++) {
+            cache.release(cache.acquire("activation" + i, 1, serverKeyPair.getPrivate(), deviceKeyPair.getPublic()));
+        }
+        assertTrue(cache.size() <= 2);
+        assertTrue(keyContext2.isDestroyed());
+        assertTrue(transportKey2.isDestroyed());
+    }
+
+    /**
+     * Test that contexts used by request threads provide correct keys while other threads cause their eviction,
+     * and that all contexts are wiped once they are evicted and released.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testConcurrentEviction() throws Exception {
+        final ActivationKeyContextCache cache = new ActivationKeyContextCache(4, 1, TimeUnit.HOURS);
+        final byte[] expectedTransportKey = expectedTransportKey();
+        final Set<ActivationKeyContext> keyContexts = ConcurrentHashMap.newKeySet();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int thread = t;
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        final ActivationKeyContext keyContext = cache.acquire("activation" + ((thread * 200 + i) % 16), 1,
+                                serverKeyPair.getPrivate(), deviceKeyPair.getPublic());
+                        try {
+                            keyContexts.add(keyContext);
+                            final SecretKey transportKey = keyContext.getTransportKey();
+                            // Other threads evict the context from the cache meanwhile
+                            for (int j = 0; j < 5; j++) {
+                                assertArrayEquals(expectedTransportKey, keyConvertor().convertSharedSecretKeyToBytes(transportKey));
+                                assertEquals(1, keyContext.getSignatureKeys(PowerAuthSignatureTypes.POSSESSION).size());
+                            }
+                        } finally {
+                            cache.release(keyContext);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cache.getStats().evictionCount() > 0);
+        cache.invalidateAll();
+        for (ActivationKeyContext keyContext : keyContexts) {
+            assertTrue(keyContext.isDestroyed());
+        }
+    }
+
+    /**
+     * Test that contexts expire after their time to live, expired contexts are wiped.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testExpiration() throws Exception {
+        final ActivationKeyContextCache cache = new ActivationKeyContextCache(100, 50, TimeUnit.MILLISECONDS);
+        final ActivationKeyContext keyContext = cache.acquire("activation1", 1, serverKeyPair.getPrivate(), deviceKeyPair.getPublic());
+        final SecretKey transportKey = keyContext.getTransportKey();
+        cache.release(keyContext);
+        Thread.sleep(100);
+        final ActivationKeyContext reloadedContext = cache.acquire("activation1", 1, serverKeyPair.getPrivate(), deviceKeyPair.getPublic());
+        assertNotSame(keyContext, reloadedContext);
+        cache.release(reloadedContext);
+        assertTrue(keyContext.isDestroyed());
+        assertTrue(transportKey.isDestroyed());
+    }
+
+    /**
+     * Test that a context cannot be released more times than it was acquired.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testReleaseWithoutLease() throws Exception {
+        final ActivationKeyContextCache cache = new ActivationKeyContextCache(100, 1, TimeUnit.HOURS);
+        final ActivationKeyContext keyContext = cache.acquire("activation1", 1, serverKeyPair.getPrivate(), deviceKeyPair.getPublic());
+        cache.release(keyContext);
+        cache.release(keyContext);
+    }
+
+    /**
+     * Test that keys obtained from a context fail instead of providing erased bytes once the context is destroyed.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testDestroyedContextKey() throws Exception {
+        final ActivationKeyContext keyContext = new ActivationKeyContext(serverKeyPair.getPrivate(), deviceKeyPair.getPublic());
+        final SecretKey transportKey = keyContext.getTransportKey();
+        keyContext.destroy();
+        transportKey.getEncoded();
+    }
+
+    /**
+     * Test that a destroyed context cannot be used.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test(expected = GenericCryptoException.class)
+    public void testDestroyedContext() throws Exception {
+        final ActivationKeyContext keyContext = new ActivationKeyContext(serverKeyPair.getPrivate(), deviceKeyPair.getPublic());
+        keyContext.getSignatureKeys(PowerAuthSignatureTypes.POSSESSION);
+        keyContext.destroy();
+        keyContext.getSignatureKeys(PowerAuthSignatureTypes.POSSESSION);
+    }
+
+    private CryptoProviderUtil keyConvertor() {
+        return PowerAuthConfiguration.INSTANCE.getKeyConvertor();
+    }
+
+    private byte[] expectedTransportKey() throws Exception {
+        final SecretKey masterSecretKey = keyGenerator.computeSharedKey(serverKeyPair.getPrivate(), deviceKeyPair.getPublic());
+        return keyConvertor().convertSharedSecretKeyToBytes(new PowerAuthServerKeyFactory().generateServerTransportKey(masterSecretKey));
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.keyfactory;
+
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.enums.PowerAuthSignatureTypes;
+import io.getlime.security.powerauth.crypto.lib.generator.HashBasedCounter;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.crypto.lib.util.SignatureUtils;
+import io.getlime.security.powerauth.crypto.server.keyfactory.ActivationKeyContext;
+import io.getlime.security.powerauth.crypto.server.keyfactory.PowerAuthServerKeyFactory;
+import io.getlime.security.powerauth.crypto.server.signature.PowerAuthServerSignature;
+import io.getlime.security.powerauth.crypto.server.vault.PowerAuthServerVault;
+import io.getlime.security.powerauth.provider.CryptoProviderUtil;
+import io.getlime.security.powerauth.provider.CryptoProviderUtilFactory;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.SecretKey;
+import java.security.KeyPair;
+import java.security.Security;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test server side activation key context.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class ActivationKeyContextTest {
+
+    /**
+     * Register crypto providers.
+     */
+    @Before
+    public void setUp() {
+        // Add Bouncy Castle Security Provider
+        Security.addProvider(new BouncyCastleProvider());
+        PowerAuthConfiguration.INSTANCE.setKeyConvertor(CryptoProviderUtilFactory.getCryptoProviderUtils());
+    }
+
+    /**
+     * Test that keys provided by the context match keys derived by the server key factory and that
+     * the keys are derived only once.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testContextKeys() throws Exception {
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final PowerAuthServerKeyFactory keyFactory = new PowerAuthServerKeyFactory();
+        final CryptoProviderUtil keyConvertor = PowerAuthConfiguration.INSTANCE.getKeyConvertor();
+        final KeyPair serverKeyPair = keyGenerator.generateKeyPair();
+        final KeyPair deviceKeyPair = keyGenerator.generateKeyPair();
+
+        final SecretKey masterSecretKey = keyFactory.generateServerMasterSecretKey(serverKeyPair.getPrivate(), deviceKeyPair.getPublic());
+        final ActivationKeyContext keyContext = keyFactory.createActivationKeyContext(serverKeyPair.getPrivate(), deviceKeyPair.getPublic());
+
+        assertArrayEquals(keyConvertor.convertSharedSecretKeyToBytes(masterSecretKey), keyConvertor.convertSharedSecretKeyToBytes(keyContext.getMasterSecretKey()));
+        assertArrayEquals(keyConvertor.convertSharedSecretKeyToBytes(keyFactory.generateServerTransportKey(masterSecretKey)),
+                keyConvertor.convertSharedSecretKeyToBytes(keyFactory.deriveTransportKey(keyContext)));
+        assertArrayEquals(keyConvertor.convertSharedSecretKeyToBytes(keyFactory.generateServerEncryptedVaultKey(masterSecretKey)),
+                keyConvertor.convertSharedSecretKeyToBytes(keyContext.getVaultEncryptionKey()));
+        assertSame(keyContext.getTransportKey(), keyContext.getTransportKey());
+
+        for (PowerAuthSignatureTypes signatureType : PowerAuthSignatureTypes.values()) {
+            final List<SecretKey> expectedKeys = keyFactory.keysForSignatureType(signatureType, masterSecretKey);
+            final List<SecretKey> keys = keyFactory.keysForSignatureType(signatureType, keyContext);
+            assertEquals(expectedKeys.size(), keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                assertArrayEquals(keyConvertor.convertSharedSecretKeyToBytes(expectedKeys.get(i)), keyConvertor.convertSharedSecretKeyToBytes(keys.get(i)));
+            }
+            assertSame(keys, keyContext.getSignatureKeys(signatureType));
+            assertSame(keyContext.getSignatureKeyContexts(signatureType), keyContext.getSignatureKeyContexts(signatureType));
+        }
+        // Factor keys are shared between signature types
+        assertSame(keyContext.getSignatureKeys(PowerAuthSignatureTypes.POSSESSION).get(0),
+                keyContext.getSignatureKeys(PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE_BIOMETRY).get(0));
+        assertSame(keyContext.getSignatureKeyContexts(PowerAuthSignatureTypes.KNOWLEDGE).get(0),
+                keyContext.getSignatureKeyContexts(PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE).get(1));
+    }
+
+    /**
+     * Test vault encryption and signature verification using the context.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testContextUsage() throws Exception {
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final KeyPair serverKeyPair = keyGenerator.generateKeyPair();
+        final KeyPair deviceKeyPair = keyGenerator.generateKeyPair();
+        final ActivationKeyContext keyContext = new ActivationKeyContext(serverKeyPair.getPrivate(), deviceKeyPair.getPublic());
+
+        final PowerAuthServerVault vault = new PowerAuthServerVault();
+        final byte[] ctrData = new HashBasedCounter().init();
+        assertArrayEquals(vault.encryptVaultEncryptionKey(serverKeyPair.getPrivate(), deviceKeyPair.getPublic()), vault.encryptVaultEncryptionKey(keyContext));
+        assertArrayEquals(vault.encryptVaultEncryptionKey(serverKeyPair.getPrivate(), deviceKeyPair.getPublic(), ctrData), vault.encryptVaultEncryptionKey(keyContext, ctrData));
+
+        final byte[] data = keyGenerator.generateRandomBytes(100);
+        final PowerAuthSignatureTypes signatureType = PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE;
+        final String signature = new SignatureUtils().computePowerAuthSignature(data, keyContext.getSignatureKeys(signatureType), ctrData);
+        final PowerAuthServerSignature serverSignature = new PowerAuthServerSignature();
+        assertTrue(serverSignature.verifySignatureForActivation(data, signature, keyContext, signatureType, ctrData, 1).isValid());
+        assertFalse(serverSignature.verifySignatureForActivation(data, signature, keyContext, PowerAuthSignatureTypes.POSSESSION_BIOMETRY, ctrData, 1).isValid());
+    }
+
+}
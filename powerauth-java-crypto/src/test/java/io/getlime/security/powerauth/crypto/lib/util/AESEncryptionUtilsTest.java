@@ -0,0 +1,123 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.lib.util;
+
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
+import io.getlime.security.powerauth.provider.CryptoProviderUtilFactory;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.SecretKey;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.security.Security;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for AES encryption with caller-supplied output buffers.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class AESEncryptionUtilsTest {
+
+    private final AESEncryptionUtils aes = new AESEncryptionUtils();
+    private final KeyGenerator keyGenerator = new KeyGenerator();
+
+    /**
+     * Register crypto providers.
+     */
+    @Before
+    public void setUp() {
+        // Add Bouncy Castle Security Provider
+        Security.addProvider(new BouncyCastleProvider());
+        PowerAuthConfiguration.INSTANCE.setKeyConvertor(CryptoProviderUtilFactory.getCryptoProviderUtils());
+    }
+
+    /**
+     * Test that encryption and decryption into byte array ranges match the array based methods.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testArrayRanges() throws Exception {
+        final SecretKey key = keyGenerator.generateRandomSecretKey();
+        final byte[] iv = keyGenerator.generateRandomBytes(16);
+        for (int length = 0; length < 100; length += 7) {
+            final byte[] data = keyGenerator.generateRandomBytes(length);
+            final byte[] expected = aes.encrypt(data, iv, key);
+
+            // Encrypt from the middle of a larger array into the middle of another one
+            final byte[] input = new byte[length + 10];
+            System.arraycopy(data, 0, input, 5, length);
+            final byte[] output = new byte[length + 16 + 10];
+            final int encryptedLength = aes.encrypt(input, 5, length, output, 3, iv, key, "AES/CBC/PKCS7Padding");
+            assertEquals(expected.length, encryptedLength);
+            assertArrayEquals(expected, Arrays.copyOfRange(output, 3, 3 + encryptedLength));
+
+            // Decrypt in place
+            final int decryptedLength = aes.decrypt(output, 3, encryptedLength, output, 3, iv, key, "AES/CBC/PKCS7Padding");
+            assertEquals(length, decryptedLength);
+            assertArrayEquals(data, Arrays.copyOfRange(output, 3, 3 + decryptedLength));
+        }
+    }
+
+    /**
+     * Test that encryption and decryption between heap and direct buffers match the array based methods.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testByteBuffers() throws Exception {
+        final SecretKey key = keyGenerator.generateRandomSecretKey();
+        final byte[] iv = keyGenerator.generateRandomBytes(16);
+        final byte[] data = keyGenerator.generateRandomBytes(1000);
+        final byte[] expected = aes.encrypt(data, iv, key);
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(1024);
+        final int encryptedLength = aes.encrypt(ByteBuffer.wrap(data), direct, iv, key, "AES/CBC/PKCS7Padding");
+        assertEquals(expected.length, encryptedLength);
+        assertEquals(encryptedLength, direct.position());
+        ((Buffer) direct).flip();
+        final byte[] encrypted = new byte[encryptedLength];
+        direct.duplicate().get(encrypted);
+        assertArrayEquals(expected, encrypted);
+
+        final ByteBuffer heap = ByteBuffer.allocate(1024);
+        final int decryptedLength = aes.decrypt(direct, heap, iv, key, "AES/CBC/PKCS7Padding");
+        assertEquals(data.length, decryptedLength);
+        assertArrayEquals(data, Arrays.copyOf(heap.array(), decryptedLength));
+    }
+
+    /**
+     * Test that a too small output buffer is reported as a crypto exception.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test(expected = GenericCryptoException.class)
+    public void testShortOutput() throws Exception {
+        final SecretKey key = keyGenerator.generateRandomSecretKey();
+        final byte[] iv = new byte[16];
+        aes.encrypt(new byte[16], 0, 16, new byte[16], 0, iv, key, "AES/CBC/PKCS7Padding");
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.lib.util;
+
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Bytes;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
+import org.junit.Test;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Test for SHA-256 hashing with cached digest engines.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class HashTest {
+
+    /**
+     * Test SHA-256 against a known value and check that a digest used for streaming is not affected by and does
+     * not affect other hashing on the same thread.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testSha256() throws Exception {
+        final byte[] expected = BaseEncoding.base16().lowerCase().decode("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+        assertArrayEquals(expected, Hash.sha256("abc"));
+        // Digest returned to the caller is independent of hashing on the same thread
+        final MessageDigest digest = Hash.sha256Digest();
+        digest.update("ab".getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals(expected, Hash.sha256("abc".getBytes(StandardCharsets.UTF_8)));
+        digest.update("c".getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals(expected, digest.digest());
+        // Unfinished data in the returned digest does not affect subsequent hashing
+        Hash.sha256Digest().update("garbage".getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals(expected, Hash.sha256("abc".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Test that multi-part hashing produces the same values as hashing of concatenated data.
+     */
+    @Test
+    public void testMultiPartSha256() {
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final byte[] part1 = keyGenerator.generateRandomBytes(65);
+        final byte[] part2 = keyGenerator.generateRandomBytes(36);
+        final byte[] part3 = keyGenerator.generateRandomBytes(4096);
+        final byte[] expected = Hash.sha256(Bytes.concat(part1, part2, part3));
+        assertArrayEquals(expected, Hash.sha256(part1, part2, part3));
+        final ByteBuffer direct = ByteBuffer.allocateDirect(part3.length);
+        direct.put(part3);
+        ((Buffer) direct).flip();
+        assertArrayEquals(expected, Hash.sha256(ByteBuffer.wrap(part1), ByteBuffer.wrap(part2), direct));
+    }
+
+    /**
+     * Test that hashing into caller-supplied arrays and buffers produces the same values.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testSha256Into() throws Exception {
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final byte[] data = keyGenerator.generateRandomBytes(100);
+        final byte[] expected = Hash.sha256(Arrays.copyOfRange(data, 10, 90));
+
+        final byte[] output = new byte[Hash.SHA256_LENGTH + 5];
+        assertEquals(Hash.SHA256_LENGTH, Hash.sha256Into(data, 10, 80, output, 5));
+        assertArrayEquals(expected, Arrays.copyOfRange(output, 5, output.length));
+
+        for (ByteBuffer outputBuffer : new ByteBuffer[] {ByteBuffer.allocate(Hash.SHA256_LENGTH + 1), ByteBuffer.allocateDirect(Hash.SHA256_LENGTH + 1)}) {
+            ((Buffer) outputBuffer).position(1);
+            assertEquals(Hash.SHA256_LENGTH, Hash.sha256Into(outputBuffer, ByteBuffer.wrap(data, 10, 40), ByteBuffer.wrap(data, 50, 40)));
+            assertFalse(outputBuffer.hasRemaining());
+            ((Buffer) outputBuffer).position(1);
+            final byte[] result = new byte[Hash.SHA256_LENGTH];
+            outputBuffer.get(result);
+            assertArrayEquals(expected, result);
+        }
+    }
+
+    /**
+     * Test that hashing into a too small output buffer fails.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test(expected = GenericCryptoException.class)
+    public void testSha256IntoShortOutput() throws Exception {
+        Hash.sha256Into(new byte[10], 0, 10, new byte[Hash.SHA256_LENGTH], 1);
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.lib.util;
+
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Bytes;
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.provider.CryptoProviderUtilFactory;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.SecretKey;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.Security;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for precomputed HMAC-SHA256 key contexts.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class HmacKeyContextTest {
+
+    /**
+     * Register crypto providers.
+     */
+    @Before
+    public void setUp() {
+        // Add Bouncy Castle Security Provider
+        Security.addProvider(new BouncyCastleProvider());
+        PowerAuthConfiguration.INSTANCE.setKeyConvertor(CryptoProviderUtilFactory.getCryptoProviderUtils());
+    }
+
+    /**
+     * Test the key context against RFC 4231 test cases 1 and 6.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testRfc4231Vectors() throws Exception {
+        final byte[] key1 = new byte[20];
+        Arrays.fill(key1, (byte) 0x0b);
+        final HmacKeyContext context1 = new HmacKeyContext(key1);
+        assertArrayEquals(BaseEncoding.base16().lowerCase().decode("b0344c61d8db38535ca8afceaf0bf12b881dc200c9833da726e9376c2e32cff7"),
+                context1.hash("Hi There".getBytes(StandardCharsets.UTF_8)));
+
+        final byte[] key6 = new byte[131];
+        Arrays.fill(key6, (byte) 0xaa);
+        final HmacKeyContext context6 = new HmacKeyContext(key6);
+        assertArrayEquals(BaseEncoding.base16().lowerCase().decode("60e431591ee0b67f0d8a26aacbf5b77f8e0bc6213728c5140546040f0ee37f54"),
+                context6.hash("Test Using Larger Than Block-Size Key - Hash Key First".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Test that a reused key context produces the same values as {@link HMACHashUtilities}.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testContextReuse() throws Exception {
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final HMACHashUtilities hmac = new HMACHashUtilities();
+        for (int keyLength : new int[] {1, 16, 32, 64, 65, 128}) {
+            final byte[] key = keyGenerator.generateRandomBytes(keyLength);
+            final HmacKeyContext context = new HmacKeyContext(key);
+            for (int dataLength = 0; dataLength < 200; dataLength += 13) {
+                final byte[] data = keyGenerator.generateRandomBytes(dataLength);
+                assertArrayEquals(hmac.hash(key, data), context.hash(data));
+            }
+        }
+    }
+
+    /**
+     * Test that multi-part HMAC computation produces the same values as HMAC of concatenated data.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testMultiPartHash() throws Exception {
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final HMACHashUtilities hmac = new HMACHashUtilities();
+        final byte[] key = keyGenerator.generateRandomBytes(16);
+        final HmacKeyContext context = new HmacKeyContext(key);
+        final byte[] part1 = keyGenerator.generateRandomBytes(1000);
+        final byte[] part2 = keyGenerator.generateRandomBytes(32);
+        final byte[] expected = hmac.hash(key, Bytes.concat(part1, part2));
+        assertArrayEquals(expected, hmac.hash(key, ByteBuffer.wrap(part1), ByteBuffer.wrap(part2)));
+        assertArrayEquals(expected, context.hash(ByteBuffer.wrap(part1), ByteBuffer.wrap(part2)));
+        final ByteBuffer direct = ByteBuffer.allocateDirect(part1.length);
+        direct.put(part1);
+        ((Buffer) direct).flip();
+        assertArrayEquals(expected, hmac.hash(key, direct, ByteBuffer.wrap(part2)));
+    }
+
+    /**
+     * Test that HMAC-SHA256 values stored into caller-supplied arrays and buffers match the allocating methods.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testHashInto() throws Exception {
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final HMACHashUtilities hmac = new HMACHashUtilities();
+        final SecretKey key = keyGenerator.generateRandomSecretKey();
+        final HmacKeyContext context = new HmacKeyContext(key);
+        final byte[] data = keyGenerator.generateRandomBytes(100);
+        final byte[] expected = hmac.hash(key, Arrays.copyOfRange(data, 10, 90));
+
+        final byte[] output = new byte[40];
+        assertEquals(32, hmac.hashInto(key, data, 10, 80, output, 4));
+        assertArrayEquals(expected, Arrays.copyOfRange(output, 4, 36));
+        Arrays.fill(output, (byte) 0);
+        assertEquals(32, context.hashInto(data, 10, 80, output, 4));
+        assertArrayEquals(expected, Arrays.copyOfRange(output, 4, 36));
+
+        final ByteBuffer heap = ByteBuffer.allocate(40);
+        heap.put(new byte[4]);
+        assertEquals(32, hmac.hashInto(key, heap, ByteBuffer.wrap(data, 10, 80)));
+        assertEquals(36, heap.position());
+        assertArrayEquals(expected, Arrays.copyOfRange(heap.array(), 4, 36));
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(32);
+        assertEquals(32, context.hashInto(direct, ByteBuffer.wrap(data, 10, 40), ByteBuffer.wrap(data, 50, 40)));
+        ((Buffer) direct).flip();
+        final byte[] directResult = new byte[32];
+        direct.get(directResult);
+        assertArrayEquals(expected, directResult);
+    }
+
+    /**
+     * Test that a destroyed context cannot be used for HMAC computation.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testDestroyedContext() throws Exception {
+        final HmacKeyContext context = new HmacKeyContext(new KeyGenerator().generateRandomSecretKey());
+        context.hash("data".getBytes(StandardCharsets.UTF_8));
+        context.destroy();
+        context.hash("data".getBytes(StandardCharsets.UTF_8));
+    }
+
+}
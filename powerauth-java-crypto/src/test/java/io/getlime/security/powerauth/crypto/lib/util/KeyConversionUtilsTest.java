@@ -20,6 +20,7 @@ import com.google.common.io.BaseEncoding;
 import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
 import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
 import io.getlime.security.powerauth.provider.CryptoProviderUtil;
+import io.getlime.security.powerauth.provider.CryptoProviderUtilBouncyCastle;
 import io.getlime.security.powerauth.provider.CryptoProviderUtilFactory;
 import org.bouncycastle.jce.ECNamedCurveTable;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
@@ -33,6 +34,9 @@ import java.security.*;
 import java.security.interfaces.ECPrivateKey;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * Test for key conversion utilities
@@ -103,4 +107,49 @@ public class KeyConversionUtilsTest {
 
 	}
 
+	/**
+	 * Test of key conversions using the cache of decoded keys.
+	 *
+	 * @throws Exception In case test fails
+	 */
+	@Test
+	public void testConvertKeysWithCache() throws Exception {
+		KeyGenerator keyGenerator = new KeyGenerator();
+		CryptoProviderUtilBouncyCastle instance = new CryptoProviderUtilBouncyCastle(16, 16);
+
+		for (int i = 0; i < 32; i++) {
+			KeyPair kp = keyGenerator.generateKeyPair();
+			byte[] publicKeyBytes = instance.convertPublicKeyToBytes(kp.getPublic());
+			byte[] privateKeyBytes = instance.convertPrivateKeyToBytes(kp.getPrivate());
+
+			PublicKey decodedPublicKey = instance.convertBytesToPublicKey(publicKeyBytes);
+			PrivateKey decodedPrivateKey = instance.convertBytesToPrivateKey(privateKeyBytes);
+			assertEquals(kp.getPublic(), decodedPublicKey);
+			assertEquals(kp.getPrivate(), decodedPrivateKey);
+
+			// Keys decoded from equal bytes are taken from the cache
+			assertSame(decodedPublicKey, instance.convertBytesToPublicKey(publicKeyBytes.clone()));
+			assertSame(decodedPrivateKey, instance.convertBytesToPrivateKey(privateKeyBytes.clone()));
+		}
+
+		assertEquals(32, instance.getPublicKeyCache().getHitCount());
+		assertEquals(32, instance.getPublicKeyCache().getMissCount());
+		assertEquals(32, instance.getPrivateKeyCache().getHitCount());
+		assertEquals(32, instance.getPrivateKeyCache().getMissCount());
+		// Small cache is not segmented, it is filled up to its maximum size
+		assertEquals(16, instance.getPublicKeyCache().size());
+		assertEquals(16, instance.getPrivateKeyCache().size());
+
+		instance.getPublicKeyCache().clear();
+		assertEquals(0, instance.getPublicKeyCache().size());
+
+		// Zero cache size disables the cache
+		CryptoProviderUtilBouncyCastle publicOnly = new CryptoProviderUtilBouncyCastle(16, 0);
+		assertNotNull(publicOnly.getPublicKeyCache());
+		assertNull(publicOnly.getPrivateKeyCache());
+		KeyPair kp = keyGenerator.generateKeyPair();
+		byte[] privateKeyBytes = publicOnly.convertPrivateKeyToBytes(kp.getPrivate());
+		assertEquals(kp.getPrivate(), publicOnly.convertBytesToPrivateKey(privateKeyBytes));
+	}
+
 }
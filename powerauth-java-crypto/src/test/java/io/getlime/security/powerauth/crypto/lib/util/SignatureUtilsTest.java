@@ -0,0 +1,162 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.lib.util;
+
+import com.google.common.io.BaseEncoding;
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.enums.EcdsaSignatureMode;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
+import io.getlime.security.powerauth.provider.CryptoProviderUtil;
+import io.getlime.security.powerauth.provider.CryptoProviderUtilFactory;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.Security;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for ECDSA signatures computed and validated using cached engines and fixed key verifiers.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class SignatureUtilsTest {
+
+    /**
+     * Register crypto providers.
+     */
+    @Before
+    public void setUp() {
+        // Add Bouncy Castle Security Provider
+        Security.addProvider(new BouncyCastleProvider());
+        PowerAuthConfiguration.INSTANCE.setKeyConvertor(CryptoProviderUtilFactory.getCryptoProviderUtils());
+    }
+
+    /**
+     * Test that a reused engine does not keep state of previous keys or failed operations.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testEngineReuse() throws Exception {
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final SignatureUtils signatureUtils = new SignatureUtils();
+        final KeyPair keyPair1 = keyGenerator.generateKeyPair();
+        final KeyPair keyPair2 = keyGenerator.generateKeyPair();
+        for (int i = 0; i < 10; i++) {
+            final byte[] data = keyGenerator.generateRandomBytes(i * 10);
+            final byte[] signature1 = signatureUtils.computeECDSASignature(data, keyPair1.getPrivate());
+            final byte[] signature2 = signatureUtils.computeECDSASignature(data, keyPair2.getPrivate());
+            // Malformed signature must not affect subsequent validations
+            try {
+                signatureUtils.validateECDSASignature(data, new byte[] {0x30, 0x01}, keyPair1.getPublic());
+            } catch (Exception ex) {
+                // Expected for malformed signature
+            }
+            assertTrue(signatureUtils.validateECDSASignature(data, signature1, keyPair1.getPublic()));
+            assertTrue(signatureUtils.validateECDSASignature(data, signature2, keyPair2.getPublic()));
+            assertFalse(signatureUtils.validateECDSASignature(data, signature1, keyPair2.getPublic()));
+            assertFalse(signatureUtils.validateECDSASignature(data, signature2, keyPair1.getPublic()));
+        }
+    }
+
+    /**
+     * Test deterministic ECDSA signatures against RFC 6979 test vector A.2.5 (P-256, SHA-256, message "sample")
+     * and validation of deterministic signatures using the standard validation. The private key value is prefixed
+     * with a zero byte, since the key bytes are converted to a signed integer.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testDeterministicSignature() throws Exception {
+        final SignatureUtils signatureUtils = new SignatureUtils();
+        final PrivateKey privateKey = PowerAuthConfiguration.INSTANCE.getKeyConvertor().convertBytesToPrivateKey(
+                BaseEncoding.base16().decode("00C9AFA9D845BA75166B5C215767B1D6934E50C3DB36E89B127B8A622B120F6721"));
+        final byte[] data = "sample".getBytes(StandardCharsets.UTF_8);
+        final byte[] expected = BaseEncoding.base16().decode("3046"
+                + "022100EFD48B2AACB6A8FD1140DD9CD45E81D69D2C877B56AAF991C34D0EA84EAF3716"
+                + "022100F7CB1C942D657C41D436C7A1B6E29F65F3E900DBB9AFF4064DC4AB2F843ACDA8");
+        assertArrayEquals(expected, signatureUtils.computeECDSASignature(data, privateKey, EcdsaSignatureMode.DETERMINISTIC_NONCE));
+
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final KeyPair keyPair = keyGenerator.generateKeyPair();
+        for (int i = 0; i < 10; i++) {
+            final byte[] randomData = keyGenerator.generateRandomBytes(i * 10);
+            final byte[] signature = signatureUtils.computeECDSASignature(randomData, keyPair.getPrivate(), EcdsaSignatureMode.DETERMINISTIC_NONCE);
+            assertArrayEquals(signature, signatureUtils.computeECDSASignature(randomData, keyPair.getPrivate(), EcdsaSignatureMode.DETERMINISTIC_NONCE));
+            assertTrue(signatureUtils.validateECDSASignature(randomData, signature, keyPair.getPublic()));
+        }
+    }
+
+    /**
+     * Test that a verifier with a fixed public key accepts the same signatures as the provider validation.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testSignatureVerifier() throws Exception {
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final SignatureUtils signatureUtils = new SignatureUtils();
+        final KeyPair keyPair = keyGenerator.generateKeyPair();
+        final KeyPair otherKeyPair = keyGenerator.generateKeyPair();
+        final CryptoProviderUtil keyConvertor = PowerAuthConfiguration.INSTANCE.getKeyConvertor();
+        final ECDSASignatureVerifier verifier = new ECDSASignatureVerifier(
+                keyConvertor.convertBytesToPublicKey(keyConvertor.convertPublicKeyToBytes(keyPair.getPublic())));
+        for (int i = 0; i < 10; i++) {
+            final byte[] data = keyGenerator.generateRandomBytes(i * 10);
+            final byte[] signature = signatureUtils.computeECDSASignature(data, keyPair.getPrivate());
+            final byte[] otherSignature = signatureUtils.computeECDSASignature(data, otherKeyPair.getPrivate());
+            assertTrue(verifier.verify(data, signature));
+            assertFalse(verifier.verify(data, otherSignature));
+            assertFalse(verifier.verify(keyGenerator.generateRandomBytes(10), signature));
+        }
+
+        // Verifier stays usable after a malformed signature
+        final byte[] data = keyGenerator.generateRandomBytes(10);
+        final byte[] signature = signatureUtils.computeECDSASignature(data, keyPair.getPrivate());
+        try {
+            verifier.verify(data, Arrays.copyOf(signature, signature.length + 1));
+            fail("Malformed signature was accepted");
+        } catch (GenericCryptoException ex) {
+            assertTrue(verifier.verify(data, signature));
+        }
+    }
+
+    /**
+     * Test that a verifier with a fixed public key rejects malformed signatures.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test(expected = GenericCryptoException.class)
+    public void testSignatureVerifierMalformedSignature() throws Exception {
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final KeyPair keyPair = keyGenerator.generateKeyPair();
+        final byte[] data = keyGenerator.generateRandomBytes(10);
+        final byte[] signature = new SignatureUtils().computeECDSASignature(data, keyPair.getPrivate());
+        new ECDSASignatureVerifier(keyPair.getPublic()).verify(data, Arrays.copyOf(signature, signature.length + 1));
+    }
+
+}
@@ -0,0 +1,353 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.crypto.signature;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.BaseEncoding;
+import io.getlime.security.powerauth.crypto.lib.config.PowerAuthConfiguration;
+import io.getlime.security.powerauth.crypto.lib.enums.PowerAuthSignatureTypes;
+import io.getlime.security.powerauth.crypto.lib.generator.HashBasedCounter;
+import io.getlime.security.powerauth.crypto.lib.generator.KeyGenerator;
+import io.getlime.security.powerauth.crypto.lib.model.SignatureVerificationResult;
+import io.getlime.security.powerauth.crypto.lib.model.SignatureVerificationTask;
+import io.getlime.security.powerauth.crypto.lib.model.exception.GenericCryptoException;
+import io.getlime.security.powerauth.crypto.lib.util.HmacKeyContext;
+import io.getlime.security.powerauth.crypto.lib.util.PowerAuthSignatureEngine;
+import io.getlime.security.powerauth.crypto.lib.util.SignatureUtils;
+import io.getlime.security.powerauth.crypto.server.signature.PowerAuthServerSignature;
+import io.getlime.security.powerauth.provider.CryptoProviderUtil;
+import io.getlime.security.powerauth.provider.CryptoProviderUtilFactory;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.SecretKey;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test PowerAuth signature engine against test vectors in powerauth-docs and signature verification modes.
+ *
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class PowerAuthSignatureEngineTest {
+
+    private final SignatureUtils signatureUtils = new SignatureUtils();
+
+    /**
+     * Register crypto providers.
+     */
+    @Before
+    public void setUp() {
+        // Add Bouncy Castle Security Provider
+        Security.addProvider(new BouncyCastleProvider());
+        PowerAuthConfiguration.INSTANCE.setKeyConvertor(CryptoProviderUtilFactory.getCryptoProviderUtils());
+    }
+
+    /**
+     * Test signatures with numeric counter used in protocol version 2.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testSignaturesV2() throws Exception {
+        for (JsonNode testVector : readTestVectors("signatures-v2.json")) {
+            final long counter = Long.parseLong(testVector.get("input").get("counter").asText());
+            final byte[] ctrData = ByteBuffer.allocate(16).putLong(8, counter).array();
+            verifyTestVector(testVector, ctrData);
+        }
+    }
+
+    /**
+     * Test signatures with hash based counter used in protocol version 3.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testSignaturesV3() throws Exception {
+        for (JsonNode testVector : readTestVectors("signatures-v3.json")) {
+            final byte[] ctrData = BaseEncoding.base64().decode(testVector.get("input").get("counterData").asText());
+            verifyTestVector(testVector, ctrData);
+        }
+    }
+
+    /**
+     * Test signature verification with counter look-ahead when the client is ahead with the hash based counter.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testSignatureLookAhead() throws Exception {
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final HashBasedCounter counter = new HashBasedCounter();
+        final PowerAuthServerSignature serverSignature = new PowerAuthServerSignature();
+        final List<SecretKey> signatureKeys = Arrays.asList(keyGenerator.generateRandomSecretKey(), keyGenerator.generateRandomSecretKey());
+        final PowerAuthSignatureEngine engine = new PowerAuthSignatureEngine(signatureUtils.createSignatureKeyContexts(signatureKeys));
+        final byte[] data = keyGenerator.generateRandomBytes(100);
+
+        // Client is three steps ahead of the server
+        final byte[] serverCtrData = counter.init();
+        byte[] clientCtrData = serverCtrData;
+        for (int i = 0; i < 3; i++) {
+            clientCtrData = counter.next(clientCtrData);
+        }
+        final String signature = engine.computeSignature(data, clientCtrData);
+
+        final SignatureVerificationResult result = serverSignature.verifySignatureForData(data, signature, signatureKeys, serverCtrData, 5);
+        assertTrue(result.isValid());
+        assertEquals(3, result.getCounterOffset());
+        assertArrayEquals(clientCtrData, result.getCtrData());
+        assertArrayEquals(counter.next(clientCtrData), result.getNextCtrData());
+
+        // Signature with the expected counter value matches with offset 0
+        final SignatureVerificationResult resultExact = engine.verifySignature(data, signature, clientCtrData, 1);
+        assertTrue(resultExact.isValid());
+        assertEquals(0, resultExact.getCounterOffset());
+
+        // Client is too far ahead
+        final SignatureVerificationResult resultTooFar = engine.verifySignature(data, signature, serverCtrData, 3);
+        assertFalse(resultTooFar.isValid());
+        assertEquals(-1, resultTooFar.getCounterOffset());
+        assertNull(resultTooFar.getNextCtrData());
+
+        // Signature with only the last component wrong is rejected for all counter values
+        final int[] components = PowerAuthSignatureEngine.parseSignature(signature, 2);
+        components[1] = (components[1] + 1) % 100000000;
+        final String invalidSignature = PowerAuthSignatureEngine.formatSignature(components);
+        assertFalse(engine.verifySignature(data, invalidSignature, serverCtrData, 5).isValid());
+        assertFalse(serverSignature.verifySignatureForData(data, invalidSignature, signatureKeys, serverCtrData, 5).isValid());
+
+        // Malformed signature
+        assertFalse(engine.verifySignature(data, "12345678", serverCtrData, 5).isValid());
+    }
+
+    /**
+     * Test fail-fast and per-factor verification modes, both on the engine and through the utility classes.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testVerificationModes() throws Exception {
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final List<SecretKey> signatureKeys = Arrays.asList(keyGenerator.generateRandomSecretKey(), keyGenerator.generateRandomSecretKey(), keyGenerator.generateRandomSecretKey());
+        final PowerAuthSignatureEngine engine = new PowerAuthSignatureEngine(signatureUtils.createSignatureKeyContexts(signatureKeys));
+        final byte[] data = keyGenerator.generateRandomBytes(100);
+        final byte[] ctrData = new HashBasedCounter().init();
+        final int[] components = engine.computeSignatureComponents(data, ctrData);
+        final String signature = PowerAuthSignatureEngine.formatSignature(components);
+        final List<HmacKeyContext> signatureKeyContexts = signatureUtils.createSignatureKeyContexts(signatureKeys);
+        final PowerAuthServerSignature serverSignature = new PowerAuthServerSignature();
+
+        assertTrue(engine.verifySignatureFailFast(data, signature, ctrData));
+        assertEquals(7, engine.verifySignatureFactors(data, signature, ctrData));
+        assertTrue(PowerAuthSignatureEngine.isSignatureValid(7, 3));
+        assertTrue(signatureUtils.validatePowerAuthSignatureFailFast(data, signature, signatureKeys, ctrData));
+        assertTrue(signatureUtils.validatePowerAuthSignatureFailFastForKeyContexts(data, signature, signatureKeyContexts, ctrData));
+        assertEquals(7, signatureUtils.validatePowerAuthSignatureFactors(data, signature, signatureKeys, ctrData));
+        assertEquals(7, signatureUtils.validatePowerAuthSignatureFactorsForKeyContexts(data, signature, signatureKeyContexts, ctrData));
+        assertTrue(serverSignature.verifySignatureFailFastForData(data, signature, signatureKeys, ctrData));
+        assertTrue(serverSignature.verifySignatureFailFastForKeyContexts(data, signature, signatureKeyContexts, ctrData));
+        assertEquals(7, serverSignature.verifySignatureFactorsForData(data, signature, signatureKeys, ctrData));
+        assertEquals(7, serverSignature.verifySignatureFactorsForKeyContexts(data, signature, signatureKeyContexts, ctrData));
+
+        // Invalidate each single component
+        for (int i = 0; i < components.length; i++) {
+            final int[] invalidComponents = components.clone();
+            invalidComponents[i] = (invalidComponents[i] + 1) % 100000000;
+            final String invalidSignature = PowerAuthSignatureEngine.formatSignature(invalidComponents);
+            assertFalse(engine.verifySignatureFailFast(data, invalidSignature, ctrData));
+            assertFalse(engine.verifySignature(data, invalidSignature, ctrData));
+            final int matchingFactors = engine.verifySignatureFactors(data, invalidSignature, ctrData);
+            assertEquals(7 & ~(1 << i), matchingFactors);
+            assertFalse(PowerAuthSignatureEngine.isSignatureValid(matchingFactors, 3));
+            assertFalse(signatureUtils.validatePowerAuthSignatureFailFast(data, invalidSignature, signatureKeys, ctrData));
+            assertFalse(serverSignature.verifySignatureFailFastForKeyContexts(data, invalidSignature, signatureKeyContexts, ctrData));
+            assertEquals(matchingFactors, signatureUtils.validatePowerAuthSignatureFactorsForKeyContexts(data, invalidSignature, signatureKeyContexts, ctrData));
+            assertEquals(matchingFactors, serverSignature.verifySignatureFactorsForData(data, invalidSignature, signatureKeys, ctrData));
+        }
+
+        // Invalid format
+        assertFalse(engine.verifySignatureFailFast(data, "12345678", ctrData));
+        assertEquals(0, engine.verifySignatureFactors(data, "12345678", ctrData));
+    }
+
+    /**
+     * Test batch verification of signatures, results must be returned in the order of tasks.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testBatchVerification() throws Exception {
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final HashBasedCounter counter = new HashBasedCounter();
+        final PowerAuthServerSignature serverSignature = new PowerAuthServerSignature();
+        final List<HmacKeyContext> signatureKeyContexts = signatureUtils.createSignatureKeyContexts(
+                Arrays.asList(keyGenerator.generateRandomSecretKey(), keyGenerator.generateRandomSecretKey()));
+        final PowerAuthSignatureEngine engine = new PowerAuthSignatureEngine(signatureKeyContexts);
+
+        final List<SignatureVerificationTask> tasks = new ArrayList<>();
+        final byte[] ctrData = counter.init();
+        for (int i = 0; i < 100; i++) {
+            final byte[] data = keyGenerator.generateRandomBytes(i);
+            // Client is ahead by i % 3, tolerance allows 2 steps ahead, every fifth signature is invalid
+            byte[] clientCtrData = ctrData;
+            for (int j = 0; j < i % 3; j++) {
+                clientCtrData = counter.next(clientCtrData);
+            }
+            final String signature = i % 5 == 0 ? "00000000-00000000" : engine.computeSignature(data, clientCtrData);
+            tasks.add(new SignatureVerificationTask(data, signature, signatureKeyContexts, ctrData, 3));
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final List<SignatureVerificationResult> results = serverSignature.verifySignatures(tasks, pool);
+            assertEquals(tasks.size(), results.size());
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(i % 5 != 0, results.get(i).isValid());
+                assertEquals(i % 5 == 0 ? -1 : i % 3, results.get(i).getCounterOffset());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Test that errors during batch verification are reported in results of the failed tasks and that
+     * they do not affect other tasks.
+     *
+     * @throws Exception In case test fails.
+     */
+    @Test
+    public void testBatchVerificationError() throws Exception {
+        final KeyGenerator keyGenerator = new KeyGenerator();
+        final List<HmacKeyContext> signatureKeyContexts = signatureUtils.createSignatureKeyContexts(
+                Collections.singletonList(keyGenerator.generateRandomSecretKey()));
+        final PowerAuthSignatureEngine engine = new PowerAuthSignatureEngine(signatureKeyContexts);
+        final byte[] ctrData = new HashBasedCounter().init();
+        final List<SignatureVerificationTask> tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final byte[] data = keyGenerator.generateRandomBytes(i);
+            final String signature = engine.computeSignature(data, ctrData);
+            switch (i) {
+                case 10:
+                    // Invalid tolerance
+                    tasks.add(new SignatureVerificationTask(data, signature, signatureKeyContexts, ctrData, 0));
+                    break;
+                case 50:
+                    // Missing signature keys
+                    tasks.add(new SignatureVerificationTask(data, signature, Collections.emptyList(), ctrData, 1));
+                    break;
+                case 99:
+                    // Missing counter data
+                    tasks.add(new SignatureVerificationTask(data, signature, signatureKeyContexts, null, 1));
+                    break;
+                default:
+                    tasks.add(new SignatureVerificationTask(data, signature, signatureKeyContexts, ctrData, 1));
+            }
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final List<SignatureVerificationResult> results = new PowerAuthServerSignature().verifySignatures(tasks, pool);
+            assertEquals(tasks.size(), results.size());
+            for (int i = 0; i < results.size(); i++) {
+                final SignatureVerificationResult result = results.get(i);
+                if (i == 10 || i == 50 || i == 99) {
+                    assertFalse(result.isValid());
+                    assertEquals(-1, result.getCounterOffset());
+                    assertNotNull(result.getError());
+                } else {
+                    assertTrue(result.isValid());
+                    assertNull(result.getError());
+                }
+            }
+            assertTrue(results.get(10).getError() instanceof GenericCryptoException);
+            assertTrue(results.get(50).getError() instanceof GenericCryptoException);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Test formatting and parsing of signature strings.
+     */
+    @Test
+    public void testFormatAndParse() {
+        assertEquals("00000000", PowerAuthSignatureEngine.formatSignature(new int[] {0}));
+        assertEquals("00000123-99999999-01234567", PowerAuthSignatureEngine.formatSignature(new int[] {123, 99999999, 1234567}));
+        assertArrayEquals(new int[] {123, 99999999, 1234567}, PowerAuthSignatureEngine.parseSignature("00000123-99999999-01234567", 3));
+        assertNull(PowerAuthSignatureEngine.parseSignature("00000123-99999999-01234567", 2));
+        assertNull(PowerAuthSignatureEngine.parseSignature("00000123+99999999", 2));
+        assertNull(PowerAuthSignatureEngine.parseSignature("0000012a", 1));
+        assertNull(PowerAuthSignatureEngine.parseSignature("-0000123", 1));
+        assertNull(PowerAuthSignatureEngine.parseSignature(null, 1));
+    }
+
+    /**
+     * Read test vectors from a JSON file in powerauth-docs.
+     */
+    private JsonNode readTestVectors(String fileName) throws Exception {
+        final File file = new File("../powerauth-docs/test-vectors/" + fileName);
+        assertTrue("Missing test vectors: " + file.getAbsolutePath(), file.exists());
+        final JsonNode testVectors = new ObjectMapper().readTree(file).get("data");
+        assertTrue(testVectors.size() > 0);
+        return testVectors;
+    }
+
+    /**
+     * Verify computation and validation of a single signature test vector.
+     */
+    private void verifyTestVector(JsonNode testVector, byte[] ctrData) throws Exception {
+        final CryptoProviderUtil keyConvertor = PowerAuthConfiguration.INSTANCE.getKeyConvertor();
+        final BaseEncoding base64 = BaseEncoding.base64();
+        final JsonNode input = testVector.get("input");
+        final String expected = testVector.get("output").get("signature").asText();
+        final byte[] data = base64.decode(input.get("data").asText());
+        final PowerAuthSignatureTypes signatureType = PowerAuthSignatureTypes.getEnumFromString(input.get("signatureType").asText());
+
+        final List<SecretKey> signatureKeys = new ArrayList<>();
+        signatureKeys.add(keyConvertor.convertBytesToSharedSecretKey(base64.decode(input.get("signaturePossessionKey").asText())));
+        if (signatureType == PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE || signatureType == PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE_BIOMETRY) {
+            signatureKeys.add(keyConvertor.convertBytesToSharedSecretKey(base64.decode(input.get("signatureKnowledgeKey").asText())));
+        }
+        if (signatureType == PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE_BIOMETRY) {
+            signatureKeys.add(keyConvertor.convertBytesToSharedSecretKey(base64.decode(input.get("signatureBiometryKey").asText())));
+        }
+
+        final PowerAuthSignatureEngine engine = new PowerAuthSignatureEngine(signatureUtils.createSignatureKeyContexts(signatureKeys));
+        assertEquals(expected, engine.computeSignature(data, ctrData));
+        assertArrayEquals(PowerAuthSignatureEngine.parseSignature(expected, signatureKeys.size()), engine.computeSignatureComponents(data, ctrData));
+        assertTrue(engine.verifySignature(data, expected, ctrData));
+        assertTrue(signatureUtils.validatePowerAuthSignature(data, expected, signatureKeys, ctrData));
+
+        // Modify the last digit of the signature
+        final char lastDigit = expected.charAt(expected.length() - 1);
+        final String invalid = expected.substring(0, expected.length() - 1) + (lastDigit == '9' ? '0' : (char) (lastDigit + 1));
+        assertFalse(engine.verifySignature(data, invalid, ctrData));
+        assertFalse(signatureUtils.validatePowerAuthSignature(data, invalid, signatureKeys, ctrData));
+    }
+
+}
@@ -39,6 +39,49 @@ import java.security.spec.InvalidKeySpecException;
  */
 public class CryptoProviderUtilsSpongyCastle implements CryptoProviderUtil {
 
+    private final DecodedKeyCache<PublicKey> publicKeyCache;
+    private final DecodedKeyCache<PrivateKey> privateKeyCache;
+
+    /**
+     * Default constructor, decoded keys are not cached.
+     */
+    public CryptoProviderUtilsSpongyCastle() {
+        this.publicKeyCache = null;
+        this.privateKeyCache = null;
+    }
+
+    /**
+     * Constructor with caches of decoded keys. Keys converted from bytes are cached by their byte representation,
+     * so that repeated conversions of the same bytes return the same key without decoding it again. See
+     * {@link DecodedKeyCache} for the heap cost of cached keys. Cached private keys cannot be wiped, use a zero
+     * private key cache size unless only a few long lived private keys are converted.
+     *
+     * @param publicKeyCacheSize Maximum number of cached public keys, zero or negative value disables the cache.
+     * @param privateKeyCacheSize Maximum number of cached private keys, zero or negative value disables the cache.
+     */
+    public CryptoProviderUtilsSpongyCastle(int publicKeyCacheSize, int privateKeyCacheSize) {
+        this.publicKeyCache = publicKeyCacheSize > 0 ? new DecodedKeyCache<>(publicKeyCacheSize) : null;
+        this.privateKeyCache = privateKeyCacheSize > 0 ? new DecodedKeyCache<>(privateKeyCacheSize) : null;
+    }
+
+    /**
+     * Get cache of decoded public keys.
+     *
+     * @return Cache of decoded public keys, or null in case keys are not cached.
+     */
+    public DecodedKeyCache<PublicKey> getPublicKeyCache() {
+        return publicKeyCache;
+    }
+
+    /**
+     * Get cache of decoded private keys.
+     *
+     * @return Cache of decoded private keys, or null in case keys are not cached.
+     */
+    public DecodedKeyCache<PrivateKey> getPrivateKeyCache() {
+        return privateKeyCache;
+    }
+
     /**
      * Get the provider name, for example "BC" for Bouncy Castle.
      *
@@ -72,6 +115,18 @@ public class CryptoProviderUtilsSpongyCastle implements CryptoProviderUtil {
      */
     @Override
     public PublicKey convertBytesToPublicKey(byte[] keyBytes) throws InvalidKeySpecException, CryptoProviderException {
+        if (publicKeyCache != null) {
+            PublicKey publicKey = publicKeyCache.get(keyBytes);
+            if (publicKey == null) {
+                publicKey = decodePublicKey(keyBytes);
+                publicKeyCache.put(keyBytes, publicKey);
+            }
+            return publicKey;
+        }
+        return decodePublicKey(keyBytes);
+    }
+
+    private PublicKey decodePublicKey(byte[] keyBytes) throws InvalidKeySpecException, CryptoProviderException {
         try {
             KeyFactory kf = KeyFactory.getInstance("ECDH", getProviderName());
 
@@ -111,6 +166,18 @@ public class CryptoProviderUtilsSpongyCastle implements CryptoProviderUtil {
      */
     @Override
     public PrivateKey convertBytesToPrivateKey(byte[] keyBytes) throws InvalidKeySpecException, CryptoProviderException {
+        if (privateKeyCache != null) {
+            PrivateKey privateKey = privateKeyCache.get(keyBytes);
+            if (privateKey == null) {
+                privateKey = decodePrivateKey(keyBytes);
+                privateKeyCache.put(keyBytes, privateKey);
+            }
+            return privateKey;
+        }
+        return decodePrivateKey(keyBytes);
+    }
+
+    private PrivateKey decodePrivateKey(byte[] keyBytes) throws InvalidKeySpecException, CryptoProviderException {
         try {
             KeyFactory kf = KeyFactory.getInstance("ECDH", getProviderName());
             BigInteger keyInteger = new BigInteger(keyBytes);
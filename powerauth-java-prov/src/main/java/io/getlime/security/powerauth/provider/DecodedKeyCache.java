@@ -0,0 +1,208 @@
+/*
+ * PowerAuth Crypto Library
+ * Copyright 2019 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.getlime.security.powerauth.provider;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of keys decoded from their byte representation, used by {@link CryptoProviderUtil} implementations
+ * to skip key factory lookup, curve point decoding and validation for keys which are decoded repeatedly, such as
+ * device public keys and master private keys loaded from storage.
+ *
+ * <p>Each entry keeps a single copy of the encoded key bytes and the decoded key instance. Returning the same key
+ * instance for the same bytes also lets the provider reuse precomputation stored with the key. The cache is divided
+ * into independently locked segments of at least {@value #MIN_SEGMENT_SIZE} entries, each segment evicts its least
+ * recently used entries when it is full, so that entries may be evicted before the cache as a whole reaches its
+ * maximum size.
+ *
+ * <p>Decoded keys are considerably larger than their encoded form, each key carries its own copy of the converted
+ * curve parameters. Measured with Bouncy Castle 1.61 on secp256r1, an entry retains about 1.1 KB of heap for
+ * a public key and about 0.9 KB for a private key, so a cache of 100 000 public keys needs roughly 110 MB of heap.
+ * Storing a compact form instead (the encoded point or scalar) does not help, rebuilding the key on each lookup
+ * costs nearly as much as decoding it, so the cache size should be chosen with this cost in mind.
+ *
+ * <p>Cached private keys cannot be wiped, the provider keeps the private scalar in an immutable {@code BigInteger}.
+ * Private keys remain in the heap until they are evicted and garbage collected, therefore caching of private keys
+ * should be limited to a small number of long lived keys, such as the application master private keys.
+ *
+ * @param <T> Type of the decoded key.
+ * @author Petr Dvorak, petr@wultra.com
+ */
+public class DecodedKeyCache<T> {
+
+    private static final int MAX_SEGMENT_COUNT = 16;
+    private static final int MIN_SEGMENT_SIZE = 64;
+
+    private final Segment<T>[] segments;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Construct a cache with given maximum number of entries.
+     *
+     * @param maximumSize Maximum number of cached keys.
+     */
+    @SuppressWarnings("unchecked")
+    public DecodedKeyCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Invalid cache size: " + maximumSize);
+        }
+        // Small caches use a single segment so that eviction stays close to least recently used order
+        final int segmentCount = Math.min(MAX_SEGMENT_COUNT, Math.max(1, Integer.highestOneBit(maximumSize / MIN_SEGMENT_SIZE)));
+        final int segmentSize = maximumSize / segmentCount;
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(segmentSize);
+        }
+    }
+
+    /**
+     * Get a decoded key for given encoded key bytes.
+     *
+     * @param encoded Encoded key bytes.
+     * @return Decoded key, or null in case the key is not cached.
+     */
+    public T get(byte[] encoded) {
+        final EncodedKey encodedKey = new EncodedKey(encoded);
+        final T key = segmentFor(encodedKey).get(encodedKey);
+        if (key == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return key;
+    }
+
+    /**
+     * Store a decoded key for given encoded key bytes. The bytes are copied.
+     *
+     * @param encoded Encoded key bytes.
+     * @param key Decoded key.
+     */
+    public void put(byte[] encoded, T key) {
+        final EncodedKey encodedKey = new EncodedKey(encoded.clone());
+        segmentFor(encodedKey).put(encodedKey, key);
+    }
+
+    /**
+     * Remove all keys from the cache.
+     */
+    public void clear() {
+        for (Segment<T> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Get number of cached keys.
+     *
+     * @return Number of cached keys.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<T> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Get number of lookups of keys which were found in the cache.
+     *
+     * @return Number of cache hits.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Get number of lookups of keys which were not found in the cache.
+     *
+     * @return Number of cache misses.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    private Segment<T> segmentFor(EncodedKey encodedKey) {
+        final int hash = encodedKey.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    /**
+     * Cache segment with least recently used eviction.
+     *
+     * @param <T> Type of the decoded key.
+     */
+    private static final class Segment<T> {
+
+        private final Map<EncodedKey, T> entries;
+
+        Segment(int maximumSize) {
+            entries = new LinkedHashMap<EncodedKey, T>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<EncodedKey, T> eldest) {
+                    return size() > maximumSize;
+                }
+            };
+        }
+
+        synchronized T get(EncodedKey encodedKey) {
+            return entries.get(encodedKey);
+        }
+
+        synchronized void put(EncodedKey encodedKey, T key) {
+            entries.put(encodedKey, key);
+        }
+
+        synchronized void clear() {
+            entries.clear();
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Encoded key bytes with a precomputed hash code.
+     */
+    private static final class EncodedKey {
+
+        private final byte[] encoded;
+        private final int hashCode;
+
+        EncodedKey(byte[] encoded) {
+            this.encoded = encoded;
+            this.hashCode = Arrays.hashCode(encoded);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof EncodedKey && Arrays.equals(encoded, ((EncodedKey) o).encoded);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+}